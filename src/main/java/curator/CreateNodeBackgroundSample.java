@@ -83,6 +83,7 @@ public class CreateNodeBackgroundSample {
 		 * 
 		 * 因此，在上面 inBackground() 方法中，允许用户传入一个 Executor 实例，这样一来，就可以把那些比较复杂的事件处理放到一个专门的
 		 * 线程池中去，如 Executors.newFixedThreadPool(2)。
+		 * 回调中有阻塞操作时，固定大小的线程池很快会被占满；可以改用 curator.async.CallbackExecutor（支持时使用虚拟线程，否则使用有界弹性线程池）。
 		 */
 		try {
 			
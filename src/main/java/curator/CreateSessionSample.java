@@ -29,6 +29,7 @@ public class CreateSessionSample {
 		CuratorFramework client2 = createCuratorFrameworkWithFluentStyle();
 		
 		// 使用“单线程池”作用于各个监听器，以便方便观察输出。
+		// 所有客户端的监听器共用一个线程时，一个慢监听器会拖住全部事件；需要隔离慢监听器时可以使用 curator.event.RingBufferEventBus。
 		ExecutorService exec = Executors.newSingleThreadExecutor();
 		
 		// --- 给 CuratorFramework 的客户端加上连接状态监听器  ---
@@ -141,6 +142,8 @@ public class CreateSessionSample {
 		 * 2、RetryNTimes；
 		 * 3、RetryOneTime；
 		 * 4、RetryUntilElapsed。
+		 * 
+		 * 多个实例在集群抖动时会按相近的节奏同时重试、同时放弃；需要抖动、进程范围的重试预算和熔断时可以使用 curator.retry.AdaptiveRetryPolicy。
 		 */
 		RetryPolicy retryPolicy = new ExponentialBackoffRetry(1000, 3);
 		
@@ -160,6 +163,7 @@ public class CreateSessionSample {
 		 * 2、static CuratorFramework newClient(String connectString, int sessionTimeoutMs, int connectionTimeoutMs, RetryPolicy retryPolicy);
 		 * 参数解释：
 		 * 1、connectString 设置 ZooKeeper 服务器列表。由英文状态逗号分隔的  “host:port,host:port,host:port” 字符串组成。
+		 *    ZooKeeper 客户端会在列表中随机选择服务器；需要按探测到的延迟和负载选择服务器时可以使用 curator.ensemble.LatencyAwareEnsembleProvider。
 		 * 2、sessionTimeoutMs 会话超时，单位为毫秒。默认是 60 000ms；
 		 * 3、connectionTimeoutMs 连接超时，单位为毫秒。默认是 15 000毫秒；
 		 * 4、retryPolicy 重试策略；
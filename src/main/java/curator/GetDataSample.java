@@ -65,6 +65,9 @@ public class GetDataSample {
 		 * client.getData().storingStatIn(stat).forPath(path);
 		 * Curator 通过传入一个旧的 stat 变量的方式来存储服务端返回的最新的节点状态信息。
 		 * 
+		 * 每次调用都会访问一次服务端。对于读多写少的配置类节点，可以使用 curator.recipes.cache.ReadThroughDataCache，
+		 * 它在本地缓存数据和 stat，并通过 watch 在节点变更时作废缓存。
+		 * 
 		 */
 		
 		// --- 创建&删除节点 ---
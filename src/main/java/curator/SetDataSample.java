@@ -64,6 +64,10 @@ public class SetDataSample {
 		 * client.setData().withVersion(version).forPath(path)
 		 * 注意，withVersion 接口就是用来实现 CAS (Compare and Swap) 的，version（版本信息） 通常
 		 * 是从一个旧的 stat 对象中获取到的。 
+		 * 版本不匹配时抛出 BadVersionException，需要“读-改-写”重试的场景可以使用 curator.recipes.atomic.OptimisticUpdater。
+		 * 
+		 * 对同一路径高频写入、只有最新值有意义的场景（如状态上报），可以使用 curator.async.CoalescingWriter，
+		 * 它为每个路径只保留一个在途写入和一个待发送的值，多余的写入会被合并掉。
 		 */
 		
 		// --- 创建&删除节点 ---
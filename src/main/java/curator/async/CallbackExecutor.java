@@ -0,0 +1,229 @@
+package curator.async;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.utils.ThreadUtils;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+
+/**
+ * 执行 BackgroundCallback 和 Watcher 回调的 Executor。
+ * 
+ * CreateNodeBackgroundSample 把一个固定 2 个线程的线程池传给 inBackground()：回调中有阻塞操作（再次同步访问 ZooKeeper、访问数据库等）时，
+ * 两个线程很快被占满，后面的回调在队列中排队；不传线程池时则全部挤在唯一的 EventThread 中。CallbackExecutor 提供两种模式：
+ * 1、虚拟线程：运行在提供虚拟线程的 JDK（21 及以上）上时，每个回调在一个新的虚拟线程中执行，阻塞只挂起虚拟线程，不占用平台线程；
+ *    本项目的编译级别是 1.7，Thread.ofVirtual() 等 API 通过反射调用；
+ * 2、有界弹性线程池：其它 JDK 上，线程数随负载增长到 maxThreads，空闲 60 秒后回收；队列也有上限，队列满时由提交回调的线程
+ *    （通常是 EventThread）自己执行，形成背压，而不是无限堆积。
+ * create() 自动选择，elastic() 强制使用线程池，of() 可以接入任意 ExecutorService。
+ * 
+ * BackgroundCallback 直接把 CallbackExecutor 传给 inBackground(callback, executor)；Watcher 没有可以指定 Executor 的 API，
+ * 用 watcher() 包装之后再传给 usingWatcher()。
+ * 
+ * 用法：
+ * CallbackExecutor callbackExecutor = CallbackExecutor.create("zk-callback");
+ * client.getData().inBackground(callback, callbackExecutor).forPath(path);
+ * client.checkExists().usingWatcher(callbackExecutor.watcher(curatorWatcher)).forPath(path);
+ * ...
+ * callbackExecutor.close();
+ */
+public class CallbackExecutor implements Executor, Closeable {
+	
+	public static final int DEFAULT_MAX_THREADS = Math.max(64, Runtime.getRuntime().availableProcessors() * 10);
+	
+	public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+	
+	private static final long KEEP_ALIVE_SECONDS = 60;
+	
+	private final ExecutorService executorService;
+	
+	private final boolean virtual;
+	
+	private final AtomicLong submitted = new AtomicLong();
+	
+	private final AtomicLong completed = new AtomicLong();
+	
+	private CallbackExecutor(ExecutorService executorService, boolean virtual) {
+		this.executorService = executorService;
+		this.virtual = virtual;
+	}
+	
+	/**
+	 * JDK 提供虚拟线程时每个回调使用一个虚拟线程，否则使用默认大小的有界弹性线程池。
+	 * 
+	 * @param name 线程名称前缀
+	 */
+	public static CallbackExecutor create(String name) {
+		ExecutorService virtualThreads = newVirtualThreadExecutor(name);
+		if (virtualThreads != null) {
+			return new CallbackExecutor(virtualThreads, true);
+		}
+		return elastic(name, DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	/**
+	 * 有界弹性线程池。
+	 * 
+	 * @param name 线程名称前缀
+	 * @param maxThreads 最大线程数
+	 * @param queueCapacity 所有线程都忙时最多排队的回调数，超过后由提交回调的线程执行
+	 */
+	public static CallbackExecutor elastic(String name, int maxThreads, int queueCapacity) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(queueCapacity), ThreadUtils.newThreadFactory(name),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		// 核心线程同样在空闲后回收，线程数随负载在 0 到 maxThreads 之间伸缩
+		pool.allowCoreThreadTimeOut(true);
+		return new CallbackExecutor(pool, false);
+	}
+	
+	/**
+	 * 使用指定的 ExecutorService，close() 时一并关闭。
+	 */
+	public static CallbackExecutor of(ExecutorService executorService) {
+		return new CallbackExecutor(executorService, false);
+	}
+	
+	/**
+	 * @return 当前 JDK 是否提供虚拟线程
+	 */
+	public static boolean isVirtualThreadAvailable() {
+		ExecutorService executorService = newVirtualThreadExecutor("probe");
+		if (executorService == null) {
+			return false;
+		}
+		executorService.shutdown();
+		return true;
+	}
+	
+	/**
+	 * 通过反射调用 Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory())，不支持时返回 null。
+	 */
+	private static ExecutorService newVirtualThreadExecutor(String name) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			
+			Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+		} catch (Exception e) {
+			// JDK 21 以前没有这些 API；JDK 19、20 上没有启用预览特性时抛出 UnsupportedOperationException
+			return null;
+		}
+	}
+	
+	@Override
+	public void execute(final Runnable command) {
+		submitted.incrementAndGet();
+		executorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					command.run();
+				} finally {
+					completed.incrementAndGet();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return 在本 Executor 中执行 watcher 的 CuratorWatcher
+	 */
+	public CuratorWatcher watcher(final CuratorWatcher watcher) {
+		return new CuratorWatcher() {
+			@Override
+			public void process(final WatchedEvent event) throws Exception {
+				execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							watcher.process(event);
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					}
+				});
+			}
+		};
+	}
+	
+	/**
+	 * @return 在本 Executor 中执行 watcher 的 Watcher
+	 */
+	public Watcher watcher(final Watcher watcher) {
+		return new Watcher() {
+			@Override
+			public void process(final WatchedEvent event) {
+				execute(new Runnable() {
+					@Override
+					public void run() {
+						watcher.process(event);
+					}
+				});
+			}
+		};
+	}
+	
+	/**
+	 * @return 是否使用虚拟线程
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+	
+	/**
+	 * @return 提交的回调数
+	 */
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+	
+	/**
+	 * @return 执行完成的回调数
+	 */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+	
+	/**
+	 * @return 线程池模式下当前的线程数，不是 ThreadPoolExecutor（例如虚拟线程）时为 -1
+	 */
+	public int getPoolSize() {
+		return executorService instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executorService).getPoolSize() : -1;
+	}
+	
+	/**
+	 * 不再接受新的回调，已经提交的回调继续执行。
+	 */
+	@Override
+	public void close() {
+		executorService.shutdown();
+	}
+	
+	/**
+	 * 关闭并等待已经提交的回调执行完成。
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		executorService.shutdown();
+		return executorService.awaitTermination(timeout, unit);
+	}
+	
+	@Override
+	public String toString() {
+		return "CallbackExecutor [virtual=" + virtual + ", submitted=" + getSubmittedCount() + ", completed=" + getCompletedCount()
+				+ ", poolSize=" + getPoolSize() + "]";
+	}
+}
\ No newline at end of file
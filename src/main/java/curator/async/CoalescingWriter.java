@@ -0,0 +1,257 @@
+package curator.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * 按路径合并 setData() 的异步写入器。
+ * 
+ * SetDataSample 中的 setData().forPath() 每调用一次就写一次服务端。对于状态上报一类“只有最新值有意义”的写入，
+ * 同一路径每秒被写很多次，绝大部分写入在落盘之前就已经过时了。CoalescingWriter 为每个路径最多保留：
+ * 1、一个在途（已发出、尚未收到响应）的写入；
+ * 2、一个待发送的值：在途写入完成之前到达的新值直接替换它，被替换的写入不会发送到服务端。
+ * 在途写入的回调中，如果有待发送的值，立即异步发出；所以无论调用方写得多快，每个路径同时只有一个请求，写入 QPS 不超过 1 / RTT。
+ * 
+ * 返回的 Future 在“包含该值的写入”完成时完成：被合并的调用共享替换它的那次写入的结果（Stat 或者异常）。
+ * 
+ * 版本（CAS）：setData(path, data, expectedVersion) 以 withVersion(expectedVersion) 发出。待发送值与在途写入基于同一个版本时，
+ * 在途写入成功之后，待发送值的版本会换成在途写入返回的新版本再发出（中间的变更只是自己的写入）；在途写入因 BadVersion 失败时，
+ * 待发送值也以 BadVersionException 失败而不再发送。其它客户端的并发修改因此不会被覆盖。
+ * 
+ * 回调在 ZooKeeper 的 EventThread 中执行。每个写过的路径常驻一个很小的 Slot 对象，适合路径数量有限的状态节点。
+ */
+public class CoalescingWriter implements Closeable {
+	
+	private final CuratorFramework client;
+	
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+	
+	private final AtomicLong submitted = new AtomicLong();
+	
+	private final AtomicLong sent = new AtomicLong();
+	
+	/**
+	 * @param client 已启动的 Curator 客户端
+	 */
+	public CoalescingWriter(CuratorFramework client) {
+		this.client = client;
+	}
+	
+	/**
+	 * 异步更新节点数据，不校验版本。
+	 */
+	public ListenableFuture<Stat> setData(String path, byte[] data) {
+		return setData(path, data, -1);
+	}
+	
+	/**
+	 * 异步更新节点数据，version 为 -1 时不校验版本，否则版本不匹配时 Future 以 BadVersionException 失败。
+	 */
+	public ListenableFuture<Stat> setData(String path, byte[] data, int expectedVersion) {
+		submitted.incrementAndGet();
+		
+		Slot slot = slots.get(path);
+		if (slot == null) {
+			Slot newSlot = new Slot(path);
+			slot = slots.putIfAbsent(path, newSlot);
+			if (slot == null) {
+				slot = newSlot;
+			}
+		}
+		
+		Write write;
+		synchronized (slot) {
+			if (slot.inFlight != null) {
+				if (slot.pending == null) {
+					slot.pending = new Write(data, expectedVersion, SettableFuture.<Stat>create());
+				} else {
+					// 替换待发送的值，被替换的调用者共享同一个 Future
+					slot.pending = new Write(data, expectedVersion, slot.pending.future);
+				}
+				return slot.pending.future;
+			}
+			
+			write = new Write(data, expectedVersion, SettableFuture.<Stat>create());
+			slot.inFlight = write;
+		}
+		
+		send(slot, write);
+		return write.future;
+	}
+	
+	/**
+	 * 等待当前所有在途和待发送的写入完成（不论成功与否）。
+	 */
+	public void flush() throws InterruptedException {
+		try {
+			Futures.successfulAsList(outstanding()).get();
+		} catch (ExecutionException e) {
+			// successfulAsList 不会以失败结束
+		}
+	}
+	
+	/**
+	 * 在指定时间内等待当前所有在途和待发送的写入完成。
+	 * 
+	 * @return 超时返回 false
+	 */
+	public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+		try {
+			Futures.successfulAsList(outstanding()).get(timeout, unit);
+			return true;
+		} catch (ExecutionException e) {
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * @return 调用 setData() 的次数
+	 */
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+	
+	/**
+	 * @return 实际发送到服务端的写入次数
+	 */
+	public long getSentCount() {
+		return sent.get();
+	}
+	
+	/**
+	 * 关闭前等待所有写入完成，不会关闭 CuratorFramework 客户端。
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private List<ListenableFuture<Stat>> outstanding() {
+		List<ListenableFuture<Stat>> futures = new ArrayList<ListenableFuture<Stat>>();
+		for (Slot slot : slots.values()) {
+			synchronized (slot) {
+				if (slot.inFlight != null) {
+					futures.add(slot.inFlight.future);
+				}
+				if (slot.pending != null) {
+					futures.add(slot.pending.future);
+				}
+			}
+		}
+		return futures;
+	}
+	
+	private void send(final Slot slot, final Write write) {
+		sent.incrementAndGet();
+		
+		BackgroundCallback callback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				int resultCode = event.getResultCode();
+				if (resultCode == KeeperException.Code.OK.intValue()) {
+					completed(slot, write, event.getStat(), null);
+				} else {
+					completed(slot, write, null, KeeperException.create(KeeperException.Code.get(resultCode), slot.path));
+				}
+			}
+		};
+		
+		try {
+			client.setData().withVersion(write.expectedVersion).inBackground(callback).forPath(slot.path, write.data);
+		} catch (Exception e) {
+			completed(slot, write, null, e);
+		}
+	}
+	
+	/**
+	 * 完成在途写入，并在同一把锁内决定下一个要发送的值。
+	 */
+	private void completed(Slot slot, Write write, Stat stat, Exception error) {
+		Write next = null;
+		Write rejected = null;
+		
+		synchronized (slot) {
+			Write pending = slot.pending;
+			slot.pending = null;
+			
+			if (pending != null && pending.expectedVersion != -1 && pending.expectedVersion == write.expectedVersion) {
+				if (stat != null) {
+					// 与在途写入基于同一个版本：中间的变更只是自己的写入，换成新版本继续 CAS
+					pending = new Write(pending.data, stat.getVersion(), pending.future);
+				} else if (error instanceof KeeperException.BadVersionException) {
+					rejected = pending;
+					pending = null;
+				}
+			}
+			
+			slot.inFlight = pending;
+			next = pending;
+		}
+		
+		if (stat != null) {
+			write.future.set(stat);
+		} else {
+			write.future.setException(error);
+		}
+		
+		if (rejected != null) {
+			rejected.future.setException(error);
+		}
+		
+		if (next != null) {
+			send(slot, next);
+		}
+	}
+	
+	private static final class Slot {
+		
+		final String path;
+		
+		Write inFlight;
+		
+		Write pending;
+		
+		Slot(String path) {
+			this.path = path;
+		}
+	}
+	
+	private static final class Write {
+		
+		final byte[] data;
+		
+		final int expectedVersion;
+		
+		final SettableFuture<Stat> future;
+		
+		Write(byte[] data, int expectedVersion, SettableFuture<Stat> future) {
+			this.data = data;
+			this.expectedVersion = expectedVersion;
+			this.future = future;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,340 @@
+package curator.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * 有界窗口的流水线异步写入器。
+ * 
+ * CreateNodeBackgroundSample 中直接调用 create().inBackground(callback, exec)，对同时在途（已发出但尚未收到响应）的请求数量没有任何限制，
+ * 批量导入时很容易压垮 ZooKeeper 集群；而同步调用 forPath() 又只能一次一个请求地往返。
+ * 
+ * PipelinedAsyncWriter 为每个客户端维护一个大小为 maxInFlight 的窗口：
+ * 1、每次 create/setData/delete 之前先占用窗口中的一个位置，窗口已满时调用线程阻塞等待（背压）；
+ * 2、请求通过 inBackground(BackgroundCallback) 异步发出，在回调中释放窗口位置，并根据响应码完成返回的 Future。
+ * 
+ * 由于本项目的编译级别是 1.7，返回值使用 Curator 自身依赖的 Guava ListenableFuture，而不是 JDK 8 的 CompletableFuture。
+ * 响应码不为 0 时，Future 以对应的 KeeperException（如 NodeExistsException、BadVersionException）失败。
+ * 
+ * 窗口位置只能由回调释放，因此：
+ * 1、不能在 ZooKeeper 的 EventThread 中（watcher、inBackground 回调、Future 的同线程监听器）等待窗口：回调同样要经过 EventThread，
+ *    等待永远不会结束。在 EventThread 中调用时，窗口已满的 create/setData/delete 和有在途请求的 flush 直接抛出 IllegalStateException；
+ * 2、等待窗口期间客户端被关闭时，在途请求的回调可能永远不会到达，此时抛出 IllegalStateException，而不是一直阻塞；
+ * 3、close() 最多等待 closeTimeoutMs，超时抛出 IOException。
+ * 
+ * 用法：
+ * PipelinedAsyncWriter writer = new PipelinedAsyncWriter(client, 64);
+ * for (...) {
+ *     writer.create(path, data, CreateMode.PERSISTENT);
+ * }
+ * writer.flush();
+ */
+public class PipelinedAsyncWriter implements Closeable {
+	
+	public static final int DEFAULT_CLOSE_TIMEOUT_MS = 10000;
+	
+	/*
+	 * 等待窗口时检查客户端是否已经关闭的间隔。
+	 */
+	private static final long CHECK_INTERVAL_MS = 100;
+	
+	private static final Class<?> EVENT_THREAD_CLASS = eventThreadClass();
+	
+	private final CuratorFramework client;
+	
+	private final int maxInFlight;
+	
+	private final Semaphore window;
+	
+	/*
+	 * 注意，Curator 的 inBackground(callback, executor) 不接受 null，所以没有指定线程池时调用的是 inBackground(callback)。
+	 */
+	private final Executor executor;
+	
+	private volatile int closeTimeoutMs = DEFAULT_CLOSE_TIMEOUT_MS;
+	
+	/**
+	 * 回调在 ZooKeeper 的 EventThread 中执行。
+	 * 
+	 * @param client 已启动的 Curator 客户端
+	 * @param maxInFlight 同时在途的最大请求数
+	 */
+	public PipelinedAsyncWriter(CuratorFramework client, int maxInFlight) {
+		this(client, maxInFlight, null);
+	}
+	
+	/**
+	 * @param client 已启动的 Curator 客户端
+	 * @param maxInFlight 同时在途的最大请求数
+	 * @param executor 执行回调（以及 Future 监听器）的线程池，为 null 时使用 ZooKeeper 的 EventThread
+	 */
+	public PipelinedAsyncWriter(CuratorFramework client, int maxInFlight, Executor executor) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("maxInFlight must be greater than 0: " + maxInFlight);
+		}
+		
+		this.client = client;
+		this.maxInFlight = maxInFlight;
+		this.window = new Semaphore(maxInFlight);
+		this.executor = executor;
+	}
+	
+	/**
+	 * 异步创建节点，窗口已满时阻塞。Future 的结果是实际创建的节点路径（顺序节点会带上序号）。
+	 */
+	public ListenableFuture<String> create(String path, byte[] data, CreateMode mode) throws InterruptedException {
+		acquire();
+		
+		SettableFuture<String> future = SettableFuture.create();
+		try {
+			BackgroundCallback callback = newCallback(future, Operation.CREATE);
+			if (executor != null) {
+				client.create().withMode(mode).inBackground(callback, executor).forPath(path, data);
+			} else {
+				client.create().withMode(mode).inBackground(callback).forPath(path, data);
+			}
+		} catch (Exception e) {
+			failed(future, e);
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * 异步更新节点数据，不校验版本。
+	 */
+	public ListenableFuture<Stat> setData(String path, byte[] data) throws InterruptedException {
+		return setData(path, data, -1);
+	}
+	
+	/**
+	 * 异步更新节点数据，version 为 -1 时不校验版本，否则版本不匹配时 Future 以 BadVersionException 失败。
+	 */
+	public ListenableFuture<Stat> setData(String path, byte[] data, int version) throws InterruptedException {
+		acquire();
+		
+		SettableFuture<Stat> future = SettableFuture.create();
+		try {
+			BackgroundCallback callback = newCallback(future, Operation.SET_DATA);
+			if (executor != null) {
+				client.setData().withVersion(version).inBackground(callback, executor).forPath(path, data);
+			} else {
+				client.setData().withVersion(version).inBackground(callback).forPath(path, data);
+			}
+		} catch (Exception e) {
+			failed(future, e);
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * 异步删除节点，不校验版本。
+	 */
+	public ListenableFuture<Void> delete(String path) throws InterruptedException {
+		return delete(path, -1);
+	}
+	
+	/**
+	 * 异步删除节点，version 为 -1 时不校验版本。
+	 */
+	public ListenableFuture<Void> delete(String path, int version) throws InterruptedException {
+		acquire();
+		
+		SettableFuture<Void> future = SettableFuture.create();
+		try {
+			BackgroundCallback callback = newCallback(future, Operation.DELETE);
+			if (executor != null) {
+				client.delete().withVersion(version).inBackground(callback, executor).forPath(path);
+			} else {
+				client.delete().withVersion(version).inBackground(callback).forPath(path);
+			}
+		} catch (Exception e) {
+			failed(future, e);
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * 等待当前所有在途请求完成。
+	 * 
+	 * @throws IllegalStateException 在 EventThread 中调用并且有在途请求，或者等待期间客户端被关闭
+	 */
+	public void flush() throws InterruptedException {
+		awaitWindow(maxInFlight, -1);
+		window.release(maxInFlight);
+	}
+	
+	/**
+	 * 在指定时间内等待当前所有在途请求完成。
+	 * 
+	 * @return 超时返回 false
+	 * @throws IllegalStateException 在 EventThread 中调用并且有在途请求，或者等待期间客户端被关闭
+	 */
+	public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+		if (!awaitWindow(maxInFlight, System.nanoTime() + unit.toNanos(timeout))) {
+			return false;
+		}
+		
+		window.release(maxInFlight);
+		return true;
+	}
+	
+	/**
+	 * @return 当前在途的请求数
+	 */
+	public int getInFlight() {
+		return maxInFlight - window.availablePermits();
+	}
+	
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+	
+	/**
+	 * @param closeTimeoutMs close() 等待在途请求完成的最长时间
+	 */
+	public void setCloseTimeoutMs(int closeTimeoutMs) {
+		this.closeTimeoutMs = closeTimeoutMs;
+	}
+	
+	/**
+	 * 关闭前最多等待 closeTimeoutMs，让所有在途请求完成，不会关闭 CuratorFramework 客户端。
+	 * 
+	 * @throws IOException 超时、客户端已经关闭或者在 EventThread 中调用时仍有在途请求
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!flush(closeTimeoutMs, TimeUnit.MILLISECONDS)) {
+				throw new IOException("Timed out after " + closeTimeoutMs + "ms with " + getInFlight() + " requests in flight");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IllegalStateException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+	
+	private void acquire() throws InterruptedException {
+		awaitWindow(1, -1);
+	}
+	
+	/**
+	 * 占用窗口中的 permits 个位置。窗口不足时，在 EventThread 中直接失败，否则每隔 CHECK_INTERVAL_MS 检查一次客户端是否已经关闭。
+	 * 
+	 * @param deadlineNanos System.nanoTime() 的截止时间，-1 表示一直等待
+	 * @return 超时返回 false
+	 */
+	private boolean awaitWindow(int permits, long deadlineNanos) throws InterruptedException {
+		if (window.tryAcquire(permits)) {
+			return true;
+		}
+		
+		if (isEventThread()) {
+			throw new IllegalStateException("Waiting for the window on the ZooKeeper EventThread would deadlock: " + getInFlight()
+					+ " requests in flight");
+		}
+		
+		while (true) {
+			long waitNanos = TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL_MS);
+			if (deadlineNanos != -1) {
+				waitNanos = Math.min(waitNanos, deadlineNanos - System.nanoTime());
+				if (waitNanos <= 0) {
+					return false;
+				}
+			}
+			
+			if (window.tryAcquire(permits, waitNanos, TimeUnit.NANOSECONDS)) {
+				return true;
+			}
+			
+			if (client.getState() == CuratorFrameworkState.STOPPED) {
+				throw new IllegalStateException("CuratorFramework has been closed with " + getInFlight() + " requests in flight");
+			}
+		}
+	}
+	
+	private static boolean isEventThread() {
+		return EVENT_THREAD_CLASS != null && EVENT_THREAD_CLASS.isInstance(Thread.currentThread());
+	}
+	
+	/**
+	 * ZooKeeper 3.4 的 EventThread 是 ClientCnxn 的包内私有内部类，只能通过类名找到。
+	 */
+	private static Class<?> eventThreadClass() {
+		try {
+			return Class.forName("org.apache.zookeeper.ClientCnxn$EventThread");
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+	
+	private <T> BackgroundCallback newCallback(final SettableFuture<T> future, final Operation operation) {
+		return new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				window.release();
+				
+				int resultCode = event.getResultCode();
+				if (resultCode != KeeperException.Code.OK.intValue()) {
+					future.setException(KeeperException.create(KeeperException.Code.get(resultCode), event.getPath()));
+					return;
+				}
+				
+				future.set(operation.<T>result(event));
+			}
+		};
+	}
+	
+	private void failed(SettableFuture<?> future, Exception e) {
+		window.release();
+		future.setException(e);
+	}
+	
+	private enum Operation {
+		
+		CREATE {
+			@Override
+			Object value(CuratorEvent event) {
+				return event.getName();
+			}
+		},
+		
+		SET_DATA {
+			@Override
+			Object value(CuratorEvent event) {
+				return event.getStat();
+			}
+		},
+		
+		DELETE {
+			@Override
+			Object value(CuratorEvent event) {
+				return null;
+			}
+		};
+		
+		abstract Object value(CuratorEvent event);
+		
+		@SuppressWarnings("unchecked")
+		<T> T result(CuratorEvent event) {
+			return (T) value(event);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package curator.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.zookeeper.CreateMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.bulk.BulkLoadResult;
+import curator.bulk.BulkNodeLoader;
+
+/**
+ * 对比 CreateNodeSample 中逐个创建节点的方式和 BulkNodeLoader 批量事务导入的耗时，每次调用导入 nodeCount 个节点。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar BulkLoadBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Thread)
+public class BulkLoadBenchmark {
+	
+	private static final String ROOT = "/benchmark/bulk";
+	
+	@Param({"1000", "10000"})
+	public int nodeCount;
+	
+	@Param({"64", "1024"})
+	public int dataSize;
+	
+	private int run;
+	
+	private String parentPath;
+	
+	private Map<String, byte[]> nodes;
+	
+	/**
+	 * 每次调用前准备一个新的父节点以及待导入的节点（不计入测量时间）。
+	 */
+	@Setup(Level.Invocation)
+	public void prepare(TestingServerState state) throws Exception {
+		parentPath = ROOT + "/run-" + (run++);
+		state.client.create().creatingParentsIfNeeded().forPath(parentPath);
+		
+		nodes = new LinkedHashMap<String, byte[]>();
+		byte[] payload = new byte[dataSize];
+		for (int i = 0; i < nodeCount; i++) {
+			nodes.put(parentPath + "/n-" + i, payload);
+		}
+	}
+	
+	/**
+	 * 每次调用后用事务批量删除刚导入的节点，避免 TestingServer 中的节点无限堆积（不计入测量时间）。
+	 */
+	@TearDown(Level.Invocation)
+	public void cleanUp(TestingServerState state) throws Exception {
+		CuratorTransaction transaction = state.client.inTransaction();
+		CuratorTransactionFinal operations = null;
+		int count = 0;
+		
+		for (String path : nodes.keySet()) {
+			operations = transaction.delete().forPath(path).and();
+			transaction = operations;
+			
+			if (++count % BulkNodeLoader.DEFAULT_MAX_BATCH_OPS == 0) {
+				operations.commit();
+				transaction = state.client.inTransaction();
+				operations = null;
+			}
+		}
+		
+		if (operations != null) {
+			operations.commit();
+		}
+		
+		state.client.delete().forPath(parentPath);
+	}
+	
+	@Benchmark
+	public int perNodeLoop(TestingServerState state) throws Exception {
+		CuratorFramework client = state.client;
+		
+		for (Map.Entry<String, byte[]> node : nodes.entrySet()) {
+			client.create().withMode(CreateMode.PERSISTENT).forPath(node.getKey(), node.getValue());
+		}
+		
+		return nodes.size();
+	}
+	
+	@Benchmark
+	public int bulkLoader(TestingServerState state) throws Exception {
+		BulkLoadResult result = new BulkNodeLoader(state.client).createAll(nodes, CreateMode.PERSISTENT);
+		
+		if (!result.isAllSucceeded()) {
+			throw new IllegalStateException(result.toString());
+		}
+		
+		return result.getSucceededCount();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+		.include(BulkLoadBenchmark.class.getSimpleName())
+		.build();
+		
+		new Runner(options).run();
+	}
+}
\ No newline at end of file
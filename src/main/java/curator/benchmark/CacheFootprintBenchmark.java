@@ -0,0 +1,120 @@
+package curator.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.zookeeper.CreateMode;
+
+import curator.bulk.BulkLoadResult;
+import curator.bulk.BulkNodeLoader;
+import curator.recipes.cache.CompactTreeCache;
+
+/**
+ * PathChildrenCache 与 CompactTreeCache 缓存同一批子节点时的常驻内存对比。
+ * 
+ * JMH 测量的是耗时，无法直接反映常驻内存，所以这里单独用一个 main 方法：在 TestingServer 中导入 nodeCount 个子节点，分别启动两种 Cache
+ * 并等待初始化完成，多次 System.gc() 之后比较堆内存的增量；CompactTreeCache 另外给出堆外内存的占用。
+ * 
+ * 运行方式（参数依次为 nodeCount、dataSize，默认 100000、64）：
+ * mvn -P benchmark package
+ * java --add-opens=java.base/java.lang=ALL-UNNAMED -cp target/benchmarks.jar curator.benchmark.CacheFootprintBenchmark 100000 64
+ */
+public class CacheFootprintBenchmark {
+	
+	private static final String PATH = "/benchmark/footprint";
+	
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+	
+	public static void main(String[] args) throws Exception {
+		int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int dataSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		
+		TestingServerState state = new TestingServerState();
+		state.startServer();
+		
+		try {
+			CuratorFramework client = state.client;
+			load(client, nodeCount, dataSize);
+			
+			long baseline = usedHeap();
+			PathChildrenCache pathChildrenCache = new PathChildrenCache(client, PATH, true);
+			pathChildrenCache.start(StartMode.BUILD_INITIAL_CACHE);
+			long pathChildrenCacheHeap = usedHeap() - baseline;
+			int pathChildrenCacheSize = pathChildrenCache.getCurrentData().size();
+			pathChildrenCache.close();
+			pathChildrenCache = null;
+			
+			baseline = usedHeap();
+			CompactTreeCache compactTreeCache = startCompactTreeCache(client);
+			long compactTreeCacheHeap = usedHeap() - baseline;
+			long compactTreeCacheOffHeap = compactTreeCache.getOffHeapBytes();
+			int compactTreeCacheSize = compactTreeCache.size() - 1;
+			compactTreeCache.close();
+			
+			System.out.println(String.format("nodeCount=%d, dataSize=%d", nodeCount, dataSize));
+			System.out.println(String.format("%-18s %10s %14s %14s %12s", "Cache", "nodes", "heap (MB)", "off-heap (MB)", "heap/node"));
+			System.out.println(String.format("%-18s %10d %14.1f %14s %12d", "PathChildrenCache", pathChildrenCacheSize,
+					mb(pathChildrenCacheHeap), "-", pathChildrenCacheHeap / nodeCount));
+			System.out.println(String.format("%-18s %10d %14.1f %14.1f %12d", "CompactTreeCache", compactTreeCacheSize,
+					mb(compactTreeCacheHeap), mb(compactTreeCacheOffHeap), compactTreeCacheHeap / nodeCount));
+		} finally {
+			state.stopServer();
+		}
+	}
+	
+	private static void load(CuratorFramework client, int nodeCount, int dataSize) throws Exception {
+		client.create().creatingParentsIfNeeded().forPath(PATH);
+		
+		Map<String, byte[]> nodes = new LinkedHashMap<String, byte[]>();
+		byte[] payload = new byte[dataSize];
+		for (int i = 0; i < nodeCount; i++) {
+			nodes.put(PATH + "/node-" + i, payload);
+		}
+		
+		BulkLoadResult result = new BulkNodeLoader(client).createAll(nodes, CreateMode.PERSISTENT);
+		if (!result.isAllSucceeded()) {
+			throw new IllegalStateException(result.toString());
+		}
+	}
+	
+	private static CompactTreeCache startCompactTreeCache(CuratorFramework client) throws Exception {
+		final CountDownLatch initialized = new CountDownLatch(1);
+		
+		CompactTreeCache cache = new CompactTreeCache(client, PATH, true);
+		cache.getListenable().addListener(new TreeCacheListener() {
+			@Override
+			public void childEvent(CuratorFramework client, TreeCacheEvent event) throws Exception {
+				if (event.getType() == TreeCacheEvent.Type.INITIALIZED) {
+					initialized.countDown();
+				}
+			}
+		});
+		cache.start();
+		
+		if (!initialized.await(5, TimeUnit.MINUTES)) {
+			throw new IllegalStateException("CompactTreeCache 初始化超时");
+		}
+		return cache;
+	}
+	
+	private static long usedHeap() throws InterruptedException {
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+		return MEMORY.getHeapMemoryUsage().getUsed();
+	}
+	
+	private static double mb(long bytes) {
+		return bytes / 1024.0 / 1024.0;
+	}
+}
\ No newline at end of file
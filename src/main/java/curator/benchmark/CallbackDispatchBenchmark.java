@@ -0,0 +1,137 @@
+package curator.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.async.CallbackExecutor;
+
+/**
+ * 回调中有阻塞操作时，不同回调执行方式的吞吐量对比。
+ * 
+ * 每次调用异步发出 batchSize 个 getData().inBackground(callback, executor)，每个回调阻塞 blockMillis 毫秒，等待所有回调完成：
+ * EVENT_THREAD：不指定 Executor，所有回调在 EventThread 中串行执行；
+ * FIXED_POOL：CreateNodeBackgroundSample 中固定 2 个线程的线程池；
+ * ELASTIC：CallbackExecutor.elastic()，有界弹性线程池；
+ * AUTO：CallbackExecutor.create()，JDK 提供虚拟线程时使用虚拟线程，否则与 ELASTIC 相同。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar CallbackDispatchBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class CallbackDispatchBenchmark {
+	
+	private static final String PATH = "/benchmark/callback";
+	
+	@Param({"EVENT_THREAD", "FIXED_POOL", "ELASTIC", "AUTO"})
+	public String mode;
+	
+	@Param({"100"})
+	public int batchSize;
+	
+	@Param({"1"})
+	public int blockMillis;
+	
+	private CuratorFramework client;
+	
+	private ExecutorService fixedPool;
+	
+	private CallbackExecutor callbackExecutor;
+	
+	private Executor executor;
+	
+	@Setup(Level.Trial)
+	public void setUp(TestingServerState state) throws Exception {
+		client = state.client;
+		if (client.checkExists().forPath(PATH) == null) {
+			client.create().creatingParentsIfNeeded().forPath(PATH);
+		}
+		
+		if ("FIXED_POOL".equals(mode)) {
+			fixedPool = Executors.newFixedThreadPool(2);
+			executor = fixedPool;
+		} else if ("ELASTIC".equals(mode)) {
+			callbackExecutor = CallbackExecutor.elastic("CallbackDispatchBenchmark", CallbackExecutor.DEFAULT_MAX_THREADS,
+					CallbackExecutor.DEFAULT_QUEUE_CAPACITY);
+			executor = callbackExecutor;
+		} else if ("AUTO".equals(mode)) {
+			callbackExecutor = CallbackExecutor.create("CallbackDispatchBenchmark");
+			executor = callbackExecutor;
+			System.out.println("CallbackExecutor.create(): virtual=" + callbackExecutor.isVirtual());
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (fixedPool != null) {
+			fixedPool.shutdownNow();
+		}
+		if (callbackExecutor != null) {
+			callbackExecutor.close();
+		}
+	}
+	
+	/**
+	 * 吞吐量单位为批次/秒，每批次 batchSize 个回调。
+	 */
+	@Benchmark
+	public void blockingCallbacks() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(batchSize);
+		BackgroundCallback callback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				try {
+					TimeUnit.MILLISECONDS.sleep(blockMillis);
+				} finally {
+					latch.countDown();
+				}
+			}
+		};
+		
+		for (int i = 0; i < batchSize; i++) {
+			if (executor == null) {
+				client.getData().inBackground(callback).forPath(PATH);
+			} else {
+				client.getData().inBackground(callback, executor).forPath(PATH);
+			}
+		}
+		latch.await();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+		.include(CallbackDispatchBenchmark.class.getSimpleName())
+		.build();
+		
+		new Runner(options).run();
+	}
+}
\ No newline at end of file
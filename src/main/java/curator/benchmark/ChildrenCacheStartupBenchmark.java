@@ -0,0 +1,190 @@
+package curator.benchmark;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.zookeeper.CreateMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.bulk.BulkLoadResult;
+import curator.bulk.BulkNodeLoader;
+import curator.recipes.cache.PipelinedChildrenCache;
+
+/**
+ * 对比 PathChildrenCache 与 PipelinedChildrenCache 的启动耗时：从 start() 到初始数据全部可用。
+ * 
+ * pipelinedChildrenCacheWarmStart 从本地快照热启动，测量的是从 start() 到对账完成（INITIALIZED 事件）的耗时，
+ * 其间服务端数据没有变化，所以只需要对每个子节点调用 checkExists()。
+ * 
+ * 每轮测试开始前在 TestingServer 中导入 childCount 个子节点并写好快照；每次调用使用一个新的客户端（不计入测量时间），
+ * 避免前一次调用注册的 watch 在客户端中堆积。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar ChildrenCacheStartupBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Thread)
+public class ChildrenCacheStartupBenchmark {
+	
+	private static final String PATH = "/benchmark/startup";
+	
+	@Param({"1000", "10000"})
+	public int childCount;
+	
+	@Param({"256"})
+	public int dataSize;
+	
+	private CuratorFramework client;
+	
+	private File snapshotFile;
+	
+	@Setup(Level.Trial)
+	public void load(TestingServerState state) throws Exception {
+		if (state.client.checkExists().forPath(PATH) != null) {
+			state.client.delete().deletingChildrenIfNeeded().forPath(PATH);
+		}
+		state.client.create().creatingParentsIfNeeded().forPath(PATH);
+		
+		Map<String, byte[]> nodes = new LinkedHashMap<String, byte[]>();
+		byte[] payload = new byte[dataSize];
+		for (int i = 0; i < childCount; i++) {
+			nodes.put(PATH + "/node-" + i, payload);
+		}
+		
+		BulkLoadResult result = new BulkNodeLoader(state.client).createAll(nodes, CreateMode.PERSISTENT);
+		if (!result.isAllSucceeded()) {
+			throw new IllegalStateException(result.toString());
+		}
+		
+		snapshotFile = File.createTempFile("children-cache-", ".snapshot");
+		snapshotFile.deleteOnExit();
+		PipelinedChildrenCache cache = new PipelinedChildrenCache(state.client, PATH, PipelinedChildrenCache.DEFAULT_MAX_IN_FLIGHT, snapshotFile);
+		cache.start();
+		cache.close();
+	}
+	
+	@Setup(Level.Invocation)
+	public void connect(TestingServerState state) throws Exception {
+		client = state.newClient();
+	}
+	
+	@TearDown(Level.Invocation)
+	public void disconnect() {
+		client.close();
+	}
+	
+	/**
+	 * BUILD_INITIAL_CACHE：start() 逐个同步读取子节点数据。
+	 */
+	@Benchmark
+	public int pathChildrenCacheBuildInitial() throws Exception {
+		PathChildrenCache cache = new PathChildrenCache(client, PATH, true);
+		try {
+			cache.start(StartMode.BUILD_INITIAL_CACHE);
+			return cache.getCurrentData().size();
+		} finally {
+			cache.close();
+		}
+	}
+	
+	/**
+	 * POST_INITIALIZED_EVENT：等待 INITIALIZED 事件。
+	 */
+	@Benchmark
+	public int pathChildrenCachePostInitialized() throws Exception {
+		final CountDownLatch initialized = new CountDownLatch(1);
+		
+		PathChildrenCache cache = new PathChildrenCache(client, PATH, true);
+		cache.getListenable().addListener(new PathChildrenCacheListener() {
+			@Override
+			public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+				if (event.getType() == PathChildrenCacheEvent.Type.INITIALIZED) {
+					initialized.countDown();
+				}
+			}
+		});
+		
+		try {
+			cache.start(StartMode.POST_INITIALIZED_EVENT);
+			if (!initialized.await(1, TimeUnit.MINUTES)) {
+				throw new IllegalStateException("PathChildrenCache 初始化超时");
+			}
+			return cache.getCurrentData().size();
+		} finally {
+			cache.close();
+		}
+	}
+	
+	@Benchmark
+	public int pipelinedChildrenCache() throws Exception {
+		PipelinedChildrenCache cache = new PipelinedChildrenCache(client, PATH);
+		try {
+			cache.start();
+			return cache.getCurrentData().size();
+		} finally {
+			cache.close();
+		}
+	}
+	
+	@Benchmark
+	public int pipelinedChildrenCacheWarmStart() throws Exception {
+		final CountDownLatch initialized = new CountDownLatch(1);
+		
+		PipelinedChildrenCache cache = new PipelinedChildrenCache(client, PATH, PipelinedChildrenCache.DEFAULT_MAX_IN_FLIGHT, snapshotFile);
+		cache.getListenable().addListener(new PathChildrenCacheListener() {
+			@Override
+			public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+				if (event.getType() == PathChildrenCacheEvent.Type.INITIALIZED) {
+					initialized.countDown();
+				}
+			}
+		});
+		
+		try {
+			cache.start();
+			if (!initialized.await(1, TimeUnit.MINUTES)) {
+				throw new IllegalStateException("PipelinedChildrenCache 对账超时");
+			}
+			return cache.getCurrentData().size();
+		} finally {
+			cache.close();
+		}
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+		.include(ChildrenCacheStartupBenchmark.class.getSimpleName())
+		.build();
+		
+		new Runner(options).run();
+	}
+}
\ No newline at end of file
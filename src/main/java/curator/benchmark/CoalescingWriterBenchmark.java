@@ -0,0 +1,121 @@
+package curator.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.data.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import curator.async.CoalescingWriter;
+
+/**
+ * 多个线程反复更新少量状态节点时，SetDataSample 中同步 setData() 与 CoalescingWriter 的对比。
+ * 
+ * 对 CoalescingWriter 而言，吞吐量衡量的是调用方提交状态的速度，实际写入服务端的次数在每轮迭代结束时打印（sent/submitted）。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar CoalescingWriterBenchmark -t 16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class CoalescingWriterBenchmark {
+	
+	private static final String ROOT = "/benchmark/status";
+	
+	@Param({"4"})
+	public int paths;
+	
+	private TestingServerState state;
+	
+	private String[] statusPaths;
+	
+	private byte[] payload;
+	
+	private CoalescingWriter writer;
+	
+	private long submitted;
+	
+	private long sent;
+	
+	@Setup(Level.Trial)
+	public void setUp(TestingServerState state) throws Exception {
+		this.state = state;
+		
+		statusPaths = new String[paths];
+		for (int i = 0; i < paths; i++) {
+			statusPaths[i] = ROOT + "/status-" + i;
+			if (state.client.checkExists().forPath(statusPaths[i]) == null) {
+				state.client.create().creatingParentsIfNeeded().forPath(statusPaths[i]);
+			}
+		}
+		
+		payload = new byte[128];
+		writer = new CoalescingWriter(state.client);
+	}
+	
+	/**
+	 * 每轮迭代结束时等待待发送的写入完成，并打印本轮实际写入服务端的比例。
+	 */
+	@TearDown(Level.Iteration)
+	public void report() throws Exception {
+		writer.flush();
+		
+		long submittedDelta = writer.getSubmittedCount() - submitted;
+		long sentDelta = writer.getSentCount() - sent;
+		submitted = writer.getSubmittedCount();
+		sent = writer.getSentCount();
+		
+		if (submittedDelta > 0) {
+			System.out.println(String.format("CoalescingWriter: submitted=%d, sent=%d (%.2f%%)", submittedDelta, sentDelta,
+					sentDelta * 100.0 / submittedDelta));
+		}
+	}
+	
+	@Benchmark
+	public Stat syncSetData() throws Exception {
+		return state.client.setData().forPath(nextPath(), payload);
+	}
+	
+	@Benchmark
+	public ListenableFuture<Stat> coalescingSetData() {
+		return writer.setData(nextPath(), payload);
+	}
+	
+	private String nextPath() {
+		return statusPaths[ThreadLocalRandom.current().nextInt(statusPaths.length)];
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : new int[] {1, 4, 16}) {
+			Options options = new OptionsBuilder()
+			.include(CoalescingWriterBenchmark.class.getSimpleName())
+			.threads(threads)
+			.build();
+			
+			new Runner(options).run();
+		}
+	}
+}
\ No newline at end of file
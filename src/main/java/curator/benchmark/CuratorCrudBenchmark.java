@@ -0,0 +1,211 @@
+package curator.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * CreateNodeSample、GetDataSample、SetDataSample 和 DeleteNodeSample 中 create/getData/setData/delete 操作的基准测试。
+ * 
+ * 测试参数：
+ * dataSize：节点数据的字节数；
+ * mode：sync 表示同步调用 forPath()，background 表示通过 inBackground(callback) 异步调用，并在回调中等待结果返回；
+ * 线程数：通过 JMH 的 -t 参数指定，main() 方法中依次使用 1、4、16 个线程运行。
+ * 
+ * BenchmarkMode 同时使用了 Throughput（吞吐量）和 SampleTime（采样延迟，结果中包含 p0.50、p0.99 等百分位数）。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar CuratorCrudBenchmark -t 4
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+public class CuratorCrudBenchmark {
+	
+	private static final String ROOT = "/benchmark/crud";
+	
+	private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+	
+	/**
+	 * 每个线程独占的测试节点：getData/setData 作用在 basePath 上，create/delete 作用在 basePath + "/n" 上。
+	 * 测试结束后 TestingServer 连同其临时 dataDir 一起被销毁，所以这里不再单独清理节点。
+	 */
+	@State(Scope.Thread)
+	public static class ThreadNode {
+		
+		@Param({"16", "1024", "8192"})
+		public int dataSize;
+		
+		@Param({"sync", "background"})
+		public String mode;
+		
+		String basePath;
+		
+		String childPath;
+		
+		byte[] payload;
+		
+		boolean background;
+		
+		final WaitingCallback callback = new WaitingCallback();
+		
+		@Setup(Level.Trial)
+		public void createNode(TestingServerState state) throws Exception {
+			basePath = ROOT + "/t-" + THREAD_IDS.incrementAndGet();
+			childPath = basePath + "/n";
+			payload = new byte[dataSize];
+			background = "background".equals(mode);
+			
+			state.client.create().creatingParentsIfNeeded().forPath(basePath, payload);
+		}
+	}
+	
+	/**
+	 * create 测试使用：每次调用结束后删除刚创建的节点（不计入测量时间），避免节点在服务端无限堆积。
+	 * 
+	 * 注意，这里采用继承而不是在 @TearDown 方法中注入 ThreadNode 参数，因为 JMH 会为注入的 Thread 级别 State 另外创建一个实例。
+	 */
+	@State(Scope.Thread)
+	public static class CreatedNode extends ThreadNode {
+		
+		@TearDown(Level.Invocation)
+		public void deleteCreated(TestingServerState state) throws Exception {
+			state.client.delete().forPath(childPath);
+		}
+	}
+	
+	/**
+	 * delete 测试使用：每次调用之前先创建待删除的节点（不计入测量时间）。
+	 */
+	@State(Scope.Thread)
+	public static class ExistingNode extends ThreadNode {
+		
+		@Setup(Level.Invocation)
+		public void createExisting(TestingServerState state) throws Exception {
+			state.client.create().forPath(childPath, payload);
+		}
+	}
+	
+	@Benchmark
+	public String create(TestingServerState state, CreatedNode node) throws Exception {
+		CuratorFramework client = state.client;
+		
+		if (node.background) {
+			node.callback.reset();
+			client.create().inBackground(node.callback).forPath(node.childPath, node.payload);
+			node.callback.await(node.childPath);
+			return node.childPath;
+		}
+		
+		return client.create().forPath(node.childPath, node.payload);
+	}
+	
+	@Benchmark
+	public byte[] getData(TestingServerState state, ThreadNode node) throws Exception {
+		CuratorFramework client = state.client;
+		
+		if (node.background) {
+			node.callback.reset();
+			client.getData().inBackground(node.callback).forPath(node.basePath);
+			return node.callback.await(node.basePath).getData();
+		}
+		
+		return client.getData().forPath(node.basePath);
+	}
+	
+	@Benchmark
+	public Stat setData(TestingServerState state, ThreadNode node) throws Exception {
+		CuratorFramework client = state.client;
+		
+		if (node.background) {
+			node.callback.reset();
+			client.setData().inBackground(node.callback).forPath(node.basePath, node.payload);
+			return node.callback.await(node.basePath).getStat();
+		}
+		
+		return client.setData().forPath(node.basePath, node.payload);
+	}
+	
+	@Benchmark
+	public void delete(TestingServerState state, ExistingNode node) throws Exception {
+		CuratorFramework client = state.client;
+		
+		if (node.background) {
+			node.callback.reset();
+			client.delete().inBackground(node.callback).forPath(node.childPath);
+			node.callback.await(node.childPath);
+			return;
+		}
+		
+		client.delete().forPath(node.childPath);
+	}
+	
+	/**
+	 * 在 background 模式下等待 BackgroundCallback 返回的回调，每个线程复用同一个实例。
+	 */
+	static class WaitingCallback implements BackgroundCallback {
+		
+		private volatile CountDownLatch latch;
+		
+		private volatile CuratorEvent event;
+		
+		void reset() {
+			event = null;
+			latch = new CountDownLatch(1);
+		}
+		
+		@Override
+		public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+			this.event = event;
+			latch.countDown();
+		}
+		
+		CuratorEvent await(String path) throws Exception {
+			latch.await();
+			
+			int resultCode = event.getResultCode();
+			if (resultCode != KeeperException.Code.OK.intValue()) {
+				throw KeeperException.create(KeeperException.Code.get(resultCode), path);
+			}
+			
+			return event;
+		}
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : new int[] {1, 4, 16}) {
+			Options options = new OptionsBuilder()
+			.include(CuratorCrudBenchmark.class.getSimpleName())
+			.threads(threads)
+			.build();
+			
+			new Runner(options).run();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package curator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.ensemble.EnsembleProvider;
+import org.apache.curator.ensemble.fixed.FixedEnsembleProvider;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.InstanceSpec;
+import org.apache.curator.test.TestingCluster;
+import org.apache.curator.test.TestingZooKeeperServer;
+import org.apache.zookeeper.data.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.ensemble.LatencyAwareEnsembleProvider;
+
+/**
+ * 在 TestingCluster（3 个实例）上对比 FixedEnsembleProvider（ZooKeeper 随机选择服务器）与 LatencyAwareEnsembleProvider 的连接耗时和读延迟。
+ * 
+ * connect：新建客户端、连接、读一次根节点再关闭，LatencyAwareEnsembleProvider 的耗时包括并行探测；
+ * read：已连接的客户端反复 getData。
+ * scenario 为 ONE_DOWN 时，启动集群后停掉一个 follower：ZooKeeper 随机选中它时要等连接失败、随机 sleep 后再尝试下一台，
+ * 而 LatencyAwareEnsembleProvider 在探测时就已经把它排除了。
+ * 
+ * 所有实例都运行在同一台机器上，往返时间几乎相同，read 的差异主要来自是否避开了 leader。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar EnsembleSelectionBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class EnsembleSelectionBenchmark {
+	
+	@Param({"FIXED", "LATENCY_AWARE"})
+	public String provider;
+	
+	@Param({"ALL_UP", "ONE_DOWN"})
+	public String scenario;
+	
+	private TestingCluster cluster;
+	
+	private CuratorFramework client;
+	
+	private final Stat stat = new Stat();
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		cluster = new TestingCluster(3);
+		cluster.start();
+		
+		CuratorFramework probe = newClient();
+		probe.close();
+		
+		if ("ONE_DOWN".equals(scenario)) {
+			for (TestingZooKeeperServer server : cluster.getServers()) {
+				if (!"leading".equals(server.getQuorumPeer().getServerState())) {
+					InstanceSpec instance = server.getInstanceSpec();
+					cluster.killServer(instance);
+					System.out.println("Killed " + instance.getConnectString());
+					break;
+				}
+			}
+		}
+		
+		client = newClient();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (client != null) {
+			client.close();
+		}
+		if (cluster != null) {
+			cluster.close();
+		}
+	}
+	
+	@Benchmark
+	public Stat connect() throws Exception {
+		CuratorFramework newClient = newClient();
+		try {
+			return newClient.checkExists().forPath("/");
+		} finally {
+			newClient.close();
+		}
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public byte[] read() throws Exception {
+		return client.getData().storingStatIn(stat).forPath("/");
+	}
+	
+	private CuratorFramework newClient() throws Exception {
+		EnsembleProvider ensembleProvider;
+		if ("LATENCY_AWARE".equals(provider)) {
+			ensembleProvider = new LatencyAwareEnsembleProvider(cluster.getConnectString(), 500, 0,
+					LatencyAwareEnsembleProvider.DEFAULT_TOLERANCE, LatencyAwareEnsembleProvider.DEFAULT_CONNECTIONS_PER_DOUBLING);
+		} else {
+			ensembleProvider = new FixedEnsembleProvider(cluster.getConnectString());
+		}
+		
+		CuratorFramework newClient = CuratorFrameworkFactory.builder()
+		.ensembleProvider(ensembleProvider)
+		.sessionTimeoutMs(5000)
+		.connectionTimeoutMs(3000)
+		.retryPolicy(new ExponentialBackoffRetry(1000, 3))
+		.build();
+		
+		newClient.start();
+		if (!newClient.blockUntilConnected(10, TimeUnit.SECONDS)) {
+			newClient.close();
+			throw new IllegalStateException("无法连接 TestingCluster: " + cluster.getConnectString());
+		}
+		return newClient;
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+		.include(EnsembleSelectionBenchmark.class.getSimpleName())
+		.build();
+		
+		new Runner(options).run();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package curator.benchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.recipes.atomic.RangeIdAllocator;
+
+/**
+ * 对比 RecipesLock 中“分布式锁 + SimpleDateFormat”生成订单号的方式和 RangeIdAllocator 按号段分配 ID 的吞吐量。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar IdAllocatorBenchmark -t 16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class IdAllocatorBenchmark {
+	
+	private static final String LOCK_PATH = "/benchmark/id/lock";
+	
+	private static final String COUNTER_PATH = "/benchmark/id/counter";
+	
+	private InterProcessMutex lock;
+	
+	private RangeIdAllocator allocator;
+	
+	@Setup(Level.Trial)
+	public void setUp(TestingServerState state) {
+		lock = new InterProcessMutex(state.client, LOCK_PATH);
+		allocator = new RangeIdAllocator(state.client, COUNTER_PATH);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		allocator.close();
+	}
+	
+	@Benchmark
+	public String lockedOrderNo() throws Exception {
+		lock.acquire();
+		try {
+			SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss | SSS");
+			return sdf.format(new Date());
+		} finally {
+			lock.release();
+		}
+	}
+	
+	@Benchmark
+	public long rangeAllocator() throws Exception {
+		return allocator.nextId();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : new int[] {1, 4, 16}) {
+			Options options = new OptionsBuilder()
+			.include(IdAllocatorBenchmark.class.getSimpleName())
+			.threads(threads)
+			.build();
+			
+			new Runner(options).run();
+		}
+	}
+}
\ No newline at end of file
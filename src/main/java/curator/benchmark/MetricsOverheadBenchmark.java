@@ -0,0 +1,81 @@
+package curator.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.metrics.CuratorMetrics;
+import curator.metrics.Operation;
+
+/**
+ * CuratorMetrics 每次记录耗时的开销，不访问 ZooKeeper。
+ * 
+ * record 包括路径前缀的计算、直方图的查找和记录；timedRecord 额外包括调用方的两次 System.nanoTime()，即 InstrumentedClient
+ * 在每个操作上增加的全部开销。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar MetricsOverheadBenchmark -t 16
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+	
+	private CuratorMetrics metrics;
+	
+	private String[] paths;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		metrics = new CuratorMetrics("benchmark");
+		metrics.registerMBeans();
+		
+		paths = new String[64];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = "/benchmark/metrics-" + (i % 8) + "/node-" + i;
+		}
+	}
+	
+	@Benchmark
+	public void record() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		metrics.record(Operation.GET_DATA, paths[random.nextInt(paths.length)], random.nextInt(1000000), true);
+	}
+	
+	@Benchmark
+	public void timedRecord() {
+		String path = paths[ThreadLocalRandom.current().nextInt(paths.length)];
+		long start = System.nanoTime();
+		metrics.record(Operation.GET_DATA, path, System.nanoTime() - start, true);
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : new int[] {1, 4, 16}) {
+			Options options = new OptionsBuilder()
+			.include(MetricsOverheadBenchmark.class.getSimpleName())
+			.threads(threads)
+			.build();
+			
+			new Runner(options).run();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package curator.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.base.Function;
+
+import curator.recipes.atomic.OptimisticUpdater;
+import curator.recipes.atomic.UpdateResult;
+
+/**
+ * 多个编辑者并发修改同一个节点时，“失败就立刻重读重写”的循环与 OptimisticUpdater 的吞吐量对比（每次调用完成一次成功的修改）。
+ * 
+ * 每轮迭代结束时打印 OptimisticUpdater 统计到的冲突率。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar OptimisticUpdateBenchmark -t 16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class OptimisticUpdateBenchmark {
+	
+	private static final String NAIVE_PATH = "/benchmark/optimistic/naive";
+	
+	private static final String UPDATER_PATH = "/benchmark/optimistic/updater";
+	
+	/*
+	 * 把节点中的 8 字节 long 加 1。
+	 */
+	private static final Function<byte[], byte[]> INCREMENT = new Function<byte[], byte[]>() {
+		@Override
+		public byte[] apply(byte[] data) {
+			long value = data.length == 8 ? ByteBuffer.wrap(data).getLong() : 0;
+			return ByteBuffer.allocate(8).putLong(value + 1).array();
+		}
+	};
+	
+	private CuratorFramework client;
+	
+	private OptimisticUpdater updater;
+	
+	@Setup(Level.Trial)
+	public void setUp(TestingServerState state) throws Exception {
+		client = state.client;
+		for (String path : new String[] {NAIVE_PATH, UPDATER_PATH}) {
+			if (client.checkExists().forPath(path) == null) {
+				client.create().creatingParentsIfNeeded().forPath(path, INCREMENT.apply(new byte[0]));
+			}
+		}
+		
+		updater = new OptimisticUpdater(client);
+	}
+	
+	@TearDown(Level.Iteration)
+	public void report() {
+		if (updater.getMetrics(UPDATER_PATH) != null) {
+			System.out.println(updater.getMetrics(UPDATER_PATH));
+		}
+	}
+	
+	@Benchmark
+	public Stat naiveRetryLoop() throws Exception {
+		Stat stat = new Stat();
+		while (true) {
+			byte[] data = client.getData().storingStatIn(stat).forPath(NAIVE_PATH);
+			try {
+				return client.setData().withVersion(stat.getVersion()).forPath(NAIVE_PATH, INCREMENT.apply(data));
+			} catch (KeeperException.BadVersionException e) {
+				// 立即重试
+			}
+		}
+	}
+	
+	@Benchmark
+	public boolean optimisticUpdater() throws Exception {
+		UpdateResult result = updater.update(UPDATER_PATH, INCREMENT);
+		if (!result.succeeded()) {
+			throw new IllegalStateException(result.toString());
+		}
+		return result.succeeded();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : new int[] {1, 4, 16}) {
+			Options options = new OptionsBuilder()
+			.include(OptimisticUpdateBenchmark.class.getSimpleName())
+			.threads(threads)
+			.build();
+			
+			new Runner(options).run();
+		}
+	}
+}
\ No newline at end of file
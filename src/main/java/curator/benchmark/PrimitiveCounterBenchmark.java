@@ -0,0 +1,84 @@
+package curator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.recipes.atomic.AtomicValue;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicInteger;
+import org.apache.curator.retry.RetryNTimes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.recipes.atomic.DistributedLongCounter;
+import curator.recipes.atomic.MutableLongValue;
+
+/**
+ * DistributedAtomicInteger 与 DistributedLongCounter 单线程累加的耗时和内存分配对比。
+ * 
+ * 需要配合 GC profiler 运行，重点关注结果中的 gc.alloc.rate.norm（每次调用分配的字节数）。GC profiler 统计的是整个 JVM 的分配，
+ * 两者都包含 ZooKeeper 客户端收发请求以及同一 JVM 中 TestingServer 处理请求的分配，差值即 DistributedAtomicInteger 的 AtomicValue、
+ * 装箱和编解码所产生的垃圾。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar PrimitiveCounterBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Thread)
+public class PrimitiveCounterBenchmark {
+	
+	private static final String ROOT = "/benchmark/primitive";
+	
+	private DistributedAtomicInteger atomicInteger;
+	
+	private DistributedLongCounter longCounter;
+	
+	private final MutableLongValue result = new MutableLongValue();
+	
+	@Setup(Level.Trial)
+	public void setUp(TestingServerState state) throws Exception {
+		atomicInteger = new DistributedAtomicInteger(state.client, ROOT + "/atomic", new RetryNTimes(100, 1));
+		atomicInteger.initialize(0);
+		
+		longCounter = new DistributedLongCounter(state.client, ROOT + "/long");
+		longCounter.add(0, result);
+	}
+	
+	@Benchmark
+	public int atomicInteger() throws Exception {
+		AtomicValue<Integer> value = atomicInteger.add(1);
+		return value.postValue();
+	}
+	
+	@Benchmark
+	public long longCounter() throws Exception {
+		longCounter.add(1, result);
+		return result.postValue();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+		.include(PrimitiveCounterBenchmark.class.getSimpleName())
+		.addProfiler(GCProfiler.class)
+		.build();
+		
+		new Runner(options).run();
+	}
+}
\ No newline at end of file
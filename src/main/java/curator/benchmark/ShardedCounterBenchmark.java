@@ -0,0 +1,80 @@
+package curator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicInteger;
+import org.apache.curator.retry.RetryNTimes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.recipes.atomic.ShardedDistributedCounter;
+
+/**
+ * 多线程并发累加时，RecipesDistAtomicInt 中的 DistributedAtomicInteger 与 ShardedDistributedCounter 的吞吐量对比。
+ * 
+ * DistributedAtomicInteger 的重试策略为 RetryNTimes(100, 1)，重试次数用尽时 add() 返回 succeeded() == false，这样的调用同样计入吞吐量。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar ShardedCounterBenchmark -t 16
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class ShardedCounterBenchmark {
+	
+	private static final String ROOT = "/benchmark/counter";
+	
+	@Param({"4", "16"})
+	public int shards;
+	
+	private DistributedAtomicInteger atomicInteger;
+	
+	private ShardedDistributedCounter shardedCounter;
+	
+	@Setup(Level.Trial)
+	public void setUp(TestingServerState state) throws Exception {
+		atomicInteger = new DistributedAtomicInteger(state.client, ROOT + "/atomic-" + shards, new RetryNTimes(100, 1));
+		atomicInteger.initialize(0);
+		
+		shardedCounter = new ShardedDistributedCounter(state.client, ROOT + "/sharded-" + shards, shards);
+	}
+	
+	@Benchmark
+	public boolean atomicInteger() throws Exception {
+		return atomicInteger.add(1).succeeded();
+	}
+	
+	@Benchmark
+	public void shardedCounter() throws Exception {
+		shardedCounter.increment();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : new int[] {1, 4, 16}) {
+			Options options = new OptionsBuilder()
+			.include(ShardedCounterBenchmark.class.getSimpleName())
+			.threads(threads)
+			.build();
+			
+			new Runner(options).run();
+		}
+	}
+}
\ No newline at end of file
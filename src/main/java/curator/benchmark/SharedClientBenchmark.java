@@ -0,0 +1,148 @@
+package curator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import curator.client.CuratorClientPool;
+import curator.client.SharedClient;
+import curator.client.SharedClientRegistry;
+import curator.ensemble.ServerProbe;
+
+/**
+ * 一个 recipe 实例从获取客户端到完成一次操作（InterProcessMutex 加锁再解锁）的耗时：
+ * FRESH：与 RecipesBarrier 等示例的 getClient() 相同，每次新建客户端、等待连接，用完关闭；
+ * SHARED：从 SharedClientRegistry 获取租约，会话一直由其它租约持有，用完归还；
+ * POOLED：从 CuratorClientPool 借用，用完归还。
+ * 
+ * 每个线程使用自己的锁路径，测量的只是客户端获取的差异，而不是锁竞争。每轮测试结束时打印服务器上的连接数和创建过的会话数。
+ * 
+ * 运行方式：
+ * mvn -P benchmark package
+ * java -jar target/benchmarks.jar SharedClientBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {TestingServerState.IGNORE_UNRECOGNIZED_VM_OPTIONS, TestingServerState.OPEN_JAVA_LANG})
+@State(Scope.Benchmark)
+public class SharedClientBenchmark {
+	
+	private static final String PATH = "/benchmark/shared";
+	
+	@Param({"FRESH", "SHARED", "POOLED"})
+	public String mode;
+	
+	private TestingServerState state;
+	
+	private SharedClientRegistry registry;
+	
+	private SharedClient holder;
+	
+	private CuratorClientPool pool;
+	
+	private final AtomicInteger freshClients = new AtomicInteger();
+	
+	@State(Scope.Thread)
+	public static class LockPath {
+		
+		private static final AtomicInteger SEQUENCE = new AtomicInteger();
+		
+		public String path;
+		
+		@Setup(Level.Trial)
+		public void setUp() {
+			path = PATH + "/lock-" + SEQUENCE.incrementAndGet();
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setUp(TestingServerState state) throws Exception {
+		this.state = state;
+		String connectString = state.server.getConnectString();
+		
+		registry = new SharedClientRegistry(SharedClientRegistry.DEFAULT_SESSION_TIMEOUT_MS, SharedClientRegistry.DEFAULT_CONNECTION_TIMEOUT_MS,
+				new ExponentialBackoffRetry(1000, 3));
+		// 模拟进程中其它一直存在的 recipe，共享会话不会因为引用计数归零而被反复关闭
+		holder = registry.acquire(connectString, null);
+		holder.getClient().blockUntilConnected(3, TimeUnit.SECONDS);
+		
+		pool = new CuratorClientPool(connectString, 16);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.println();
+		System.out.println(mode + ": " + ServerProbe.probe(state.server.getConnectString(), 1000) + ", fresh clients=" + freshClients.get()
+				+ ", shared sessions=" + registry.getSessionCount() + ", pooled sessions=" + pool.getCreatedCount());
+		
+		holder.close();
+		registry.close();
+		pool.close();
+	}
+	
+	@Benchmark
+	public void recipeStartup(LockPath lockPath) throws Exception {
+		if ("FRESH".equals(mode)) {
+			CuratorFramework client = state.newClient();
+			freshClients.incrementAndGet();
+			try {
+				lockAndUnlock(client, lockPath.path);
+			} finally {
+				client.close();
+			}
+		} else if ("SHARED".equals(mode)) {
+			SharedClient shared = registry.acquire(state.server.getConnectString(), null);
+			try {
+				lockAndUnlock(shared.getClient(), lockPath.path);
+			} finally {
+				shared.close();
+			}
+		} else {
+			CuratorFramework client = pool.borrow();
+			try {
+				lockAndUnlock(client, lockPath.path);
+			} finally {
+				pool.release(client);
+			}
+		}
+	}
+	
+	private static void lockAndUnlock(CuratorFramework client, String path) throws Exception {
+		InterProcessMutex lock = new InterProcessMutex(client, path);
+		lock.acquire();
+		lock.release();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : new int[] {1, 4, 16}) {
+			Options options = new OptionsBuilder()
+			.include(SharedClientBenchmark.class.getSimpleName())
+			.threads(threads)
+			.build();
+			
+			new Runner(options).run();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package curator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JMH 基准测试共享的 ZooKeeper 环境。
+ * 
+ * 和 TestingServerSample 一样，借助 curator-test 的 TestingServer 在当前 JVM 中启动一个 ZooKeeper 服务（随机端口、临时 dataDir），
+ * 并创建一个已连接的 CuratorFramework 客户端。该 State 的作用域是 Scope.Benchmark，即同一轮测试中的所有线程共用同一个服务和客户端。
+ */
+@State(Scope.Benchmark)
+public class TestingServerState {
+	
+	/*
+	 * curator-test 的 TestingServer 在类加载时会用 javassist 改写 ZooKeeper 的字节码，在 JDK 9 以上需要开放 java.lang 包，
+	 * 各基准测试类通过 @Fork(jvmArgsAppend = {...}) 引用下面两个参数。IgnoreUnrecognizedVMOptions 保证 JDK 7/8 忽略 --add-opens。
+	 */
+	public static final String IGNORE_UNRECOGNIZED_VM_OPTIONS = "-XX:+IgnoreUnrecognizedVMOptions";
+	
+	public static final String OPEN_JAVA_LANG = "--add-opens=java.base/java.lang=ALL-UNNAMED";
+	
+	public TestingServer server;
+	
+	public CuratorFramework client;
+	
+	@Setup(Level.Trial)
+	public void startServer() throws Exception {
+		server = new TestingServer();
+		
+		client = CuratorFrameworkFactory.builder()
+		.connectString(server.getConnectString())
+		.sessionTimeoutMs(5000)
+		.connectionTimeoutMs(3000)
+		.retryPolicy(new ExponentialBackoffRetry(1000, 3))
+		.build();
+		
+		client.start();
+		
+		if (!client.getZookeeperClient().blockUntilConnectedOrTimedOut()) {
+			throw new IllegalStateException("无法连接 TestingServer: " + server.getConnectString());
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void stopServer() throws Exception {
+		if (client != null) {
+			client.close();
+		}
+		
+		if (server != null) {
+			server.close();
+		}
+	}
+	
+	/**
+	 * 创建一个新的客户端（需要多个会话的基准测试使用），调用者负责关闭。
+	 * 
+	 * @return CuratorFramework
+	 * @throws InterruptedException
+	 */
+	public CuratorFramework newClient() throws InterruptedException {
+		CuratorFramework newClient = CuratorFrameworkFactory.builder()
+		.connectString(server.getConnectString())
+		.sessionTimeoutMs(5000)
+		.connectionTimeoutMs(3000)
+		.retryPolicy(new ExponentialBackoffRetry(1000, 3))
+		.build();
+		
+		newClient.start();
+		newClient.blockUntilConnected(3, TimeUnit.SECONDS);
+		
+		return newClient;
+	}
+}
\ No newline at end of file
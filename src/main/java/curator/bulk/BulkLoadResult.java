@@ -0,0 +1,123 @@
+package curator.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * BulkNodeLoader 的执行结果，按批次记录成功提交的节点以及失败的节点（失败节点 -> 响应码）。
+ */
+public class BulkLoadResult {
+	
+	private final List<BatchResult> batches = new ArrayList<BatchResult>();
+	
+	BatchResult newBatch(int size) {
+		BatchResult batch = new BatchResult(batches.size(), size);
+		batches.add(batch);
+		return batch;
+	}
+	
+	public List<BatchResult> getBatches() {
+		return Collections.unmodifiableList(batches);
+	}
+	
+	/**
+	 * @return 所有成功提交的节点数
+	 */
+	public int getSucceededCount() {
+		int count = 0;
+		for (BatchResult batch : batches) {
+			count += batch.succeeded.size();
+		}
+		return count;
+	}
+	
+	/**
+	 * @return 所有批次中失败的节点及其响应码
+	 */
+	public Map<String, KeeperException.Code> getFailures() {
+		Map<String, KeeperException.Code> failures = new LinkedHashMap<String, KeeperException.Code>();
+		for (BatchResult batch : batches) {
+			failures.putAll(batch.failures);
+		}
+		return failures;
+	}
+	
+	public boolean isAllSucceeded() {
+		for (BatchResult batch : batches) {
+			if (!batch.failures.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return "BulkLoadResult[batches: " + batches.size() + ", succeeded: " + getSucceededCount() + ", failures: " + getFailures() + "]";
+	}
+	
+	/**
+	 * 单个批次的结果。一个批次在出现失败节点时可能会被提交多次（剔除失败节点后重新提交剩余节点，多次被拒绝后逐个提交），
+	 * commits 记录了实际的提交次数。
+	 */
+	public static class BatchResult {
+		
+		private final int index;
+		
+		private final int size;
+		
+		private int commits;
+		
+		private final List<String> succeeded = new ArrayList<String>();
+		
+		private final Map<String, KeeperException.Code> failures = new LinkedHashMap<String, KeeperException.Code>();
+		
+		BatchResult(int index, int size) {
+			this.index = index;
+			this.size = size;
+		}
+		
+		void committed(List<String> paths) {
+			commits++;
+			succeeded.addAll(paths);
+		}
+		
+		void rejected() {
+			commits++;
+		}
+		
+		void failed(String path, KeeperException.Code code) {
+			failures.put(path, code);
+		}
+		
+		public int getIndex() {
+			return index;
+		}
+		
+		public int getSize() {
+			return size;
+		}
+		
+		public int getCommits() {
+			return commits;
+		}
+		
+		public List<String> getSucceeded() {
+			return Collections.unmodifiableList(succeeded);
+		}
+		
+		public Map<String, KeeperException.Code> getFailures() {
+			return Collections.unmodifiableMap(failures);
+		}
+		
+		@Override
+		public String toString() {
+			return "BatchResult[index: " + index + ", size: " + size + ", commits: " + commits + ", succeeded: " + succeeded.size() + ", failures: " + failures + "]";
+		}
+	}
+}
\ No newline at end of file
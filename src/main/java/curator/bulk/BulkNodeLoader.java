@@ -0,0 +1,299 @@
+package curator.bulk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.OpResult;
+
+/**
+ * 基于 multi 事务（CuratorFramework#inTransaction()）的批量节点导入工具。
+ * 
+ * CreateNodeSample 中每创建一个节点就需要和服务端往返一次，导入十万级别的节点需要数分钟。BulkNodeLoader 把多个 create/setData 操作
+ * 合并到一个事务中一次提交，并自动分批：
+ * 1、每批的估算序列化大小不超过 jute.maxbuffer（默认读取系统属性 jute.maxbuffer，未设置时为 ZooKeeper 的默认值 0xfffff）；
+ * 2、每批的操作数不超过 maxBatchOps。
+ * 
+ * multi 事务是原子的，一个操作失败会导致整批回滚。此时 BulkNodeLoader 会从 KeeperException#getResults() 中找出失败的那个操作，
+ * 记录其路径和响应码，然后剔除它并重新提交该批次中剩余的操作，所以一个失败节点不会影响其它节点的导入。为了避免大量失败时
+ * 每剔除一个操作就重新提交整批（O(n²) 的传输量和往返次数）：
+ * 1、create 因 NODEEXISTS 以外的原因失败时，该节点不存在，同时剔除它在本批次和后续批次中的所有子孙节点，记为 NONODE；
+ * 2、同一批次连续被拒绝 MAX_REJECTIONS 次后（例如重复导入时大部分节点已经存在），剩余的操作改为逐个提交。
+ * 无法定位到具体操作的错误（如 ConnectionLoss、SessionExpired）直接抛出，此时该批次是否已经生效是不确定的。
+ * 
+ * 注意，createAll 按照 Map 的迭代顺序提交，父节点必须排在子节点前面（使用 LinkedHashMap 或 TreeMap），同一批次中的后续操作可以依赖
+ * 前面操作创建的节点。
+ */
+public class BulkNodeLoader {
+	
+	public static final int DEFAULT_MAX_BATCH_OPS = 1000;
+	
+	/*
+	 * 请求头、multi 头以及每个操作自身的头信息、ACL、flags 等字段的保守估算值。
+	 */
+	private static final int REQUEST_OVERHEAD = 1024;
+	
+	private static final int OPERATION_OVERHEAD = 128;
+	
+	/*
+	 * 同一批次连续被拒绝这么多次后改为逐个提交。
+	 */
+	private static final int MAX_REJECTIONS = 3;
+	
+	private final CuratorFramework client;
+	
+	private final int maxBatchBytes;
+	
+	private final int maxBatchOps;
+	
+	public BulkNodeLoader(CuratorFramework client) {
+		this(client, Integer.getInteger("jute.maxbuffer", 0xfffff), DEFAULT_MAX_BATCH_OPS);
+	}
+	
+	/**
+	 * @param client 已启动的 Curator 客户端
+	 * @param maxBufferBytes 服务端的 jute.maxbuffer
+	 * @param maxBatchOps 每批最多包含的操作数
+	 */
+	public BulkNodeLoader(CuratorFramework client, int maxBufferBytes, int maxBatchOps) {
+		if (maxBufferBytes <= REQUEST_OVERHEAD) {
+			throw new IllegalArgumentException("maxBufferBytes is too small: " + maxBufferBytes);
+		}
+		
+		if (maxBatchOps <= 0) {
+			throw new IllegalArgumentException("maxBatchOps must be greater than 0: " + maxBatchOps);
+		}
+		
+		this.client = client;
+		this.maxBatchBytes = maxBufferBytes - REQUEST_OVERHEAD;
+		this.maxBatchOps = maxBatchOps;
+	}
+	
+	/**
+	 * 批量创建节点。
+	 * 
+	 * @param nodes 节点路径 -> 节点数据（可以为 null）
+	 * @param mode 节点类型
+	 * @return BulkLoadResult
+	 * @throws Exception 连接类错误
+	 */
+	public BulkLoadResult createAll(Map<String, byte[]> nodes, CreateMode mode) throws Exception {
+		return load(nodes, mode);
+	}
+	
+	/**
+	 * 批量更新节点数据（不校验版本）。
+	 * 
+	 * @param nodes 节点路径 -> 节点数据
+	 * @return BulkLoadResult
+	 * @throws Exception 连接类错误
+	 */
+	public BulkLoadResult setDataAll(Map<String, byte[]> nodes) throws Exception {
+		return load(nodes, null);
+	}
+	
+	/**
+	 * @param mode 为 null 时表示 setData，否则表示以该模式 create
+	 */
+	private BulkLoadResult load(Map<String, byte[]> nodes, CreateMode mode) throws Exception {
+		BulkLoadResult result = new BulkLoadResult();
+		// 创建失败、确定不存在的节点，其子孙节点不再提交
+		Set<String> missing = new HashSet<String>();
+		
+		List<Map.Entry<String, byte[]>> batch = new ArrayList<Map.Entry<String, byte[]>>();
+		int batchBytes = 0;
+		
+		for (Map.Entry<String, byte[]> node : nodes.entrySet()) {
+			int size = estimateSize(node.getKey(), node.getValue());
+			
+			// 单个节点就超过了上限，服务端必然拒绝，直接记为失败。
+			if (size > maxBatchBytes) {
+				result.newBatch(1).failed(node.getKey(), KeeperException.Code.MARSHALLINGERROR);
+				continue;
+			}
+			
+			if (!batch.isEmpty() && (batchBytes + size > maxBatchBytes || batch.size() >= maxBatchOps)) {
+				commit(batch, mode, missing, result.newBatch(batch.size()));
+				
+				batch = new ArrayList<Map.Entry<String, byte[]>>();
+				batchBytes = 0;
+			}
+			
+			batch.add(node);
+			batchBytes += size;
+		}
+		
+		if (!batch.isEmpty()) {
+			commit(batch, mode, missing, result.newBatch(batch.size()));
+		}
+		
+		return result;
+	}
+	
+	private void commit(List<Map.Entry<String, byte[]>> batch, CreateMode mode, Set<String> missing, BulkLoadResult.BatchResult batchResult)
+			throws Exception {
+		List<Map.Entry<String, byte[]>> pending = new ArrayList<Map.Entry<String, byte[]>>(batch);
+		dropDescendants(pending, missing, batchResult);
+		
+		int rejections = 0;
+		while (!pending.isEmpty()) {
+			if (rejections >= MAX_REJECTIONS) {
+				commitEach(pending, mode, missing, batchResult);
+				return;
+			}
+			
+			CuratorTransaction transaction = client.inTransaction();
+			CuratorTransactionFinal operations = null;
+			
+			for (Map.Entry<String, byte[]> node : pending) {
+				if (mode != null) {
+					operations = transaction.create().withMode(mode).forPath(node.getKey(), node.getValue()).and();
+				} else {
+					operations = transaction.setData().forPath(node.getKey(), node.getValue()).and();
+				}
+				
+				transaction = operations;
+			}
+			
+			try {
+				operations.commit();
+				batchResult.committed(paths(pending));
+				return;
+			} catch (KeeperException e) {
+				batchResult.rejected();
+				rejections++;
+				
+				int failedIndex = failedIndex(e);
+				if (failedIndex < 0) {
+					throw e;
+				}
+				
+				Map.Entry<String, byte[]> failed = pending.remove(failedIndex);
+				OpResult.ErrorResult error = (OpResult.ErrorResult) e.getResults().get(failedIndex);
+				KeeperException.Code code = KeeperException.Code.get(error.getErr());
+				batchResult.failed(failed.getKey(), code);
+				
+				if (mode != null && code != KeeperException.Code.NODEEXISTS) {
+					missing.add(failed.getKey());
+					dropDescendants(pending, missing, batchResult);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 逐个提交 pending 中的操作，每个操作一次往返，失败的操作不影响其它操作。
+	 */
+	private void commitEach(List<Map.Entry<String, byte[]>> pending, CreateMode mode, Set<String> missing, BulkLoadResult.BatchResult batchResult)
+			throws Exception {
+		for (Map.Entry<String, byte[]> node : pending) {
+			String path = node.getKey();
+			if (mode != null && hasMissingAncestor(path, missing)) {
+				batchResult.failed(path, KeeperException.Code.NONODE);
+				continue;
+			}
+			
+			try {
+				if (mode != null) {
+					client.create().withMode(mode).forPath(path, node.getValue());
+				} else {
+					client.setData().forPath(path, node.getValue());
+				}
+				batchResult.committed(Collections.singletonList(path));
+			} catch (KeeperException e) {
+				if (isConnectionError(e.code())) {
+					throw e;
+				}
+				
+				batchResult.rejected();
+				batchResult.failed(path, e.code());
+				if (mode != null && e.code() != KeeperException.Code.NODEEXISTS) {
+					missing.add(path);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 从 pending 中剔除祖先节点创建失败的节点，记为 NONODE。
+	 */
+	private static void dropDescendants(List<Map.Entry<String, byte[]>> pending, Set<String> missing, BulkLoadResult.BatchResult batchResult) {
+		if (missing.isEmpty()) {
+			return;
+		}
+		
+		for (Iterator<Map.Entry<String, byte[]>> iterator = pending.iterator(); iterator.hasNext();) {
+			String path = iterator.next().getKey();
+			if (hasMissingAncestor(path, missing)) {
+				iterator.remove();
+				batchResult.failed(path, KeeperException.Code.NONODE);
+			}
+		}
+	}
+	
+	private static boolean hasMissingAncestor(String path, Set<String> missing) {
+		for (int end = path.lastIndexOf('/'); end > 0; end = path.lastIndexOf('/', end - 1)) {
+			if (missing.contains(path.substring(0, end))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean isConnectionError(KeeperException.Code code) {
+		return code == KeeperException.Code.CONNECTIONLOSS || code == KeeperException.Code.SESSIONEXPIRED
+				|| code == KeeperException.Code.OPERATIONTIMEOUT || code == KeeperException.Code.SESSIONMOVED;
+	}
+	
+	/**
+	 * multi 失败时，失败操作之前的结果为 OK，之后的结果为 RUNTIMEINCONSISTENCY，失败操作本身带有真正的错误码。
+	 * 
+	 * @return 失败操作的下标，无法定位时返回 -1
+	 */
+	private int failedIndex(KeeperException e) {
+		List<OpResult> results = e.getResults();
+		if (results == null) {
+			return -1;
+		}
+		
+		for (int i = 0; i < results.size(); i++) {
+			OpResult opResult = results.get(i);
+			if (!(opResult instanceof OpResult.ErrorResult)) {
+				continue;
+			}
+			
+			int err = ((OpResult.ErrorResult) opResult).getErr();
+			if (err != KeeperException.Code.OK.intValue() && err != KeeperException.Code.RUNTIMEINCONSISTENCY.intValue()) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private int estimateSize(String path, byte[] data) {
+		String namespace = client.getNamespace();
+		String fullPath = namespace != null ? ZKPaths.fixForNamespace(namespace, path) : path;
+		
+		return OPERATION_OVERHEAD + fullPath.getBytes(StandardCharsets.UTF_8).length + (data != null ? data.length : 0);
+	}
+	
+	private static List<String> paths(List<Map.Entry<String, byte[]>> nodes) {
+		List<String> paths = new ArrayList<String>(nodes.size());
+		for (Map.Entry<String, byte[]> node : nodes) {
+			paths.add(node.getKey());
+		}
+		return paths;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,247 @@
+package curator.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import curator.async.PipelinedAsyncWriter;
+
+/**
+ * 并行删除整棵子树。
+ * 
+ * DeleteNodeSample 中的 delete().deletingChildrenIfNeeded() 和 ZKPathsSample 中的 ZKPaths.deleteChildren() 都是顺序遍历整棵树，
+ * 每个节点都要阻塞地和服务端往返一次，删除 20 万个节点的子树需要很长时间。ParallelSubtreeDeleter 把删除分为两个阶段：
+ * 1、发现：在 ForkJoinPool 中并行地对每个节点调用 getChildren()，按深度记录所有子孙节点；
+ * 2、删除：从最深的一层开始，自底向上逐层通过 PipelinedAsyncWriter 流水线式地异步删除，一层全部完成后再删除上一层。
+ * 
+ * 最后删除根节点本身，并且和 delete().deletingChildrenIfNeeded().withVersion(version) 一样对根节点做版本校验。
+ * 
+ * 删除期间如果有其它客户端并发修改子树：已经被删除的节点（NoNode）直接忽略；新增了子节点的节点（NotEmpty）在本层结束后
+ * 退回到 deletingChildrenIfNeeded() 顺序删除。
+ */
+public class ParallelSubtreeDeleter {
+	
+	public static final int DEFAULT_PARALLELISM = 16;
+	
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+	
+	private final CuratorFramework client;
+	
+	private final int parallelism;
+	
+	private final int maxInFlight;
+	
+	public ParallelSubtreeDeleter(CuratorFramework client) {
+		this(client, DEFAULT_PARALLELISM, DEFAULT_MAX_IN_FLIGHT);
+	}
+	
+	/**
+	 * @param client 已启动的 Curator 客户端
+	 * @param parallelism 发现阶段并发执行 getChildren() 的线程数
+	 * @param maxInFlight 删除阶段同时在途的 delete 请求数
+	 */
+	public ParallelSubtreeDeleter(CuratorFramework client, int parallelism, int maxInFlight) {
+		this.client = client;
+		this.parallelism = parallelism;
+		this.maxInFlight = maxInFlight;
+	}
+	
+	/**
+	 * 删除 path 及其所有子孙节点，不校验根节点版本。
+	 * 
+	 * @return 删除的节点数（包括根节点）
+	 */
+	public int delete(String path) throws Exception {
+		return delete(path, -1);
+	}
+	
+	/**
+	 * 删除 path 及其所有子孙节点。
+	 * 
+	 * @param path 子树的根节点
+	 * @param version 根节点的版本，-1 表示不校验；版本不匹配时抛出 BadVersionException
+	 * @return 删除的节点数（包括根节点）
+	 */
+	public int delete(String path, int version) throws Exception {
+		/*
+		 * 先校验一次根节点的版本，避免版本已经不匹配时仍然删除整棵子树；删除根节点时会再校验一次。
+		 */
+		if (version != -1) {
+			Stat stat = client.checkExists().forPath(path);
+			if (stat == null) {
+				throw new KeeperException.NoNodeException(path);
+			}
+			
+			if (stat.getVersion() != version) {
+				throw new KeeperException.BadVersionException(path);
+			}
+		}
+		
+		List<Queue<String>> levels = discover(path);
+		int deleted = 0;
+		
+		PipelinedAsyncWriter writer = new PipelinedAsyncWriter(client, maxInFlight);
+		for (int depth = levels.size() - 1; depth >= 0; depth--) {
+			deleted += deleteLevel(writer, levels.get(depth));
+		}
+		
+		client.delete().withVersion(version).forPath(path);
+		
+		return deleted + 1;
+	}
+	
+	/**
+	 * @return 按深度分组的子孙节点，下标 0 是根节点的直接子节点
+	 */
+	private List<Queue<String>> discover(String path) throws Exception {
+		ConcurrentMap<Integer, Queue<String>> levels = new ConcurrentHashMap<Integer, Queue<String>>();
+		AtomicInteger maxDepth = new AtomicInteger(-1);
+		
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new DiscoverTask(path, -1, levels, maxDepth));
+		} catch (DiscoverException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+		
+		List<Queue<String>> result = new ArrayList<Queue<String>>();
+		for (int depth = 0; depth <= maxDepth.get(); depth++) {
+			result.add(levels.get(depth));
+		}
+		return result;
+	}
+	
+	private int deleteLevel(PipelinedAsyncWriter writer, Queue<String> paths) throws Exception {
+		List<String> submitted = new ArrayList<String>(paths.size());
+		List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>(paths.size());
+		
+		for (String path : paths) {
+			submitted.add(path);
+			futures.add(writer.delete(path));
+		}
+		writer.flush();
+		
+		int deleted = 0;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+				deleted++;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof KeeperException.NoNodeException) {
+					continue;
+				}
+				
+				if (e.getCause() instanceof KeeperException.NotEmptyException) {
+					// 发现阶段之后又新增了子节点，退回到顺序删除。
+					client.delete().deletingChildrenIfNeeded().forPath(submitted.get(i));
+					deleted++;
+					continue;
+				}
+				
+				throw (Exception) e.getCause();
+			}
+		}
+		
+		return deleted;
+	}
+	
+	private class DiscoverTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final String path;
+		
+		private final int depth;
+		
+		private final ConcurrentMap<Integer, Queue<String>> levels;
+		
+		private final AtomicInteger maxDepth;
+		
+		DiscoverTask(String path, int depth, ConcurrentMap<Integer, Queue<String>> levels, AtomicInteger maxDepth) {
+			this.path = path;
+			this.depth = depth;
+			this.levels = levels;
+			this.maxDepth = maxDepth;
+		}
+		
+		@Override
+		protected void compute() {
+			List<String> children;
+			try {
+				children = client.getChildren().forPath(path);
+			} catch (KeeperException.NoNodeException e) {
+				// 根节点不存在时交给最后的 delete() 抛出 NoNodeException；子节点不存在说明已被其它客户端删除。
+				return;
+			} catch (Exception e) {
+				throw new DiscoverException(e);
+			}
+			
+			if (children.isEmpty()) {
+				return;
+			}
+			
+			int childDepth = depth + 1;
+			Queue<String> level = level(childDepth);
+			
+			List<DiscoverTask> tasks = new ArrayList<DiscoverTask>(children.size());
+			for (String child : children) {
+				String childPath = ZKPaths.makePath(path, child);
+				level.add(childPath);
+				tasks.add(new DiscoverTask(childPath, childDepth, levels, maxDepth));
+			}
+			
+			invokeAll(tasks);
+		}
+		
+		private Queue<String> level(int depth) {
+			Queue<String> level = levels.get(depth);
+			if (level == null) {
+				Queue<String> newLevel = new ConcurrentLinkedQueue<String>();
+				level = levels.putIfAbsent(depth, newLevel);
+				if (level == null) {
+					level = newLevel;
+				}
+			}
+			
+			int current;
+			while ((current = maxDepth.get()) < depth && !maxDepth.compareAndSet(current, depth)) {
+				// 重试直到 maxDepth 不小于 depth
+			}
+			
+			return level;
+		}
+	}
+	
+	/**
+	 * 用于把 getChildren() 抛出的受检异常带出 ForkJoinPool。
+	 */
+	private static class DiscoverException extends RuntimeException {
+		
+		private static final long serialVersionUID = 1L;
+		
+		DiscoverException(Exception cause) {
+			super(cause);
+		}
+		
+		@Override
+		public synchronized Exception getCause() {
+			return (Exception) super.getCause();
+		}
+	}
+}
\ No newline at end of file
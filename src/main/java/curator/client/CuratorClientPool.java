@@ -0,0 +1,185 @@
+package curator.client;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+
+/**
+ * 基于 commons-pool2 的 CuratorFramework 连接池，用于需要彼此隔离会话的场景。
+ * 
+ * SharedClientRegistry 让所有租约共用一个会话，会话过期时所有 recipe 一起受影响。RecipesMasterSelect 这样的选举中，
+ * 每个候选者应该有自己的会话，一个会话过期只让对应的候选者退出；但每个任务都新建客户端又要反复建立会话。CuratorClientPool：
+ * 1、最多 maxSessions 个已连接的客户端，borrow() 优先复用空闲的客户端，全部被借出时等待；
+ * 2、借出前检查客户端是否已经启动并处于连接状态，不可用的客户端被销毁并重新创建；
+ * 3、release() 归还，invalidate() 销毁（例如发现会话已经过期）。
+ * 
+ * 连接池只在借用者频繁借出、归还时才能复用会话（例如短时任务各自参与一轮选举后退出）；每个借用者一直持有会话时，会话数与各自新建客户端相同。
+ * 
+ * 客户端上的临时节点和 watch 属于会话而不是借用者：归还之前必须关闭在该客户端上创建的 recipe（LeaderSelector.close() 等），
+ * 否则下一个借用者会继承它们。借出的客户端不能调用 close()，应该调用 invalidate()。
+ */
+public class CuratorClientPool implements Closeable {
+	
+	private final String connectString;
+	
+	private final GenericObjectPool<CuratorFramework> pool;
+	
+	/**
+	 * 会话超时 5000ms、连接超时 3000ms、ExponentialBackoffRetry(1000, 3)，最多 maxSessions 个会话。
+	 */
+	public CuratorClientPool(String connectString, int maxSessions) {
+		this(connectString, SharedClientRegistry.DEFAULT_SESSION_TIMEOUT_MS, SharedClientRegistry.DEFAULT_CONNECTION_TIMEOUT_MS,
+				new ExponentialBackoffRetry(1000, 3), newConfig(maxSessions));
+	}
+	
+	/**
+	 * @param connectString ZooKeeper 服务器列表
+	 * @param sessionTimeoutMs 会话超时时间
+	 * @param connectionTimeoutMs 连接超时时间，创建客户端时最多等待这么久
+	 * @param retryPolicy 重试策略
+	 * @param config 连接池配置，maxTotal 即最大会话数
+	 */
+	public CuratorClientPool(String connectString, int sessionTimeoutMs, int connectionTimeoutMs, RetryPolicy retryPolicy,
+			GenericObjectPoolConfig config) {
+		this.connectString = connectString;
+		this.pool = new GenericObjectPool<CuratorFramework>(new ClientFactory(connectString, sessionTimeoutMs, connectionTimeoutMs,
+				retryPolicy), config);
+	}
+	
+	/**
+	 * @return 默认配置：最多 maxSessions 个会话、空闲客户端不主动回收、借出时检查连接状态、连接池耗尽时等待
+	 */
+	public static GenericObjectPoolConfig newConfig(int maxSessions) {
+		GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+		config.setMaxTotal(maxSessions);
+		config.setMaxIdle(maxSessions);
+		config.setMinIdle(0);
+		config.setTestOnBorrow(true);
+		config.setBlockWhenExhausted(true);
+		return config;
+	}
+	
+	/**
+	 * 借出一个已连接的客户端。
+	 * 
+	 * @throws Exception 无法创建客户端（连接超时）或者等待被中断
+	 */
+	public CuratorFramework borrow() throws Exception {
+		return pool.borrowObject();
+	}
+	
+	/**
+	 * 归还 borrow() 借出的客户端。
+	 */
+	public void release(CuratorFramework client) {
+		pool.returnObject(client);
+	}
+	
+	/**
+	 * 销毁 borrow() 借出的客户端，下一次 borrow() 时重新创建。
+	 */
+	public void invalidate(CuratorFramework client) throws Exception {
+		pool.invalidateObject(client);
+	}
+	
+	/**
+	 * @return 借出中的客户端数
+	 */
+	public int getNumActive() {
+		return pool.getNumActive();
+	}
+	
+	/**
+	 * @return 空闲的客户端数
+	 */
+	public int getNumIdle() {
+		return pool.getNumIdle();
+	}
+	
+	/**
+	 * @return 累计创建的客户端（会话）数
+	 */
+	public long getCreatedCount() {
+		return pool.getCreatedCount();
+	}
+	
+	public String getConnectString() {
+		return connectString;
+	}
+	
+	/**
+	 * 关闭连接池和所有空闲的客户端；借出中的客户端在归还时关闭。
+	 */
+	@Override
+	public void close() {
+		pool.close();
+	}
+	
+	@Override
+	public String toString() {
+		return "CuratorClientPool [connectString=" + connectString + ", active=" + getNumActive() + ", idle=" + getNumIdle() + ", created="
+				+ getCreatedCount() + "]";
+	}
+	
+	private static class ClientFactory extends BasePooledObjectFactory<CuratorFramework> {
+		
+		private final String connectString;
+		
+		private final int sessionTimeoutMs;
+		
+		private final int connectionTimeoutMs;
+		
+		private final RetryPolicy retryPolicy;
+		
+		ClientFactory(String connectString, int sessionTimeoutMs, int connectionTimeoutMs, RetryPolicy retryPolicy) {
+			this.connectString = connectString;
+			this.sessionTimeoutMs = sessionTimeoutMs;
+			this.connectionTimeoutMs = connectionTimeoutMs;
+			this.retryPolicy = retryPolicy;
+		}
+		
+		@Override
+		public CuratorFramework create() throws Exception {
+			CuratorFramework client = CuratorFrameworkFactory.builder()
+			.connectString(connectString)
+			.sessionTimeoutMs(sessionTimeoutMs)
+			.connectionTimeoutMs(connectionTimeoutMs)
+			.retryPolicy(retryPolicy)
+			.build();
+			
+			client.start();
+			
+			if (!client.blockUntilConnected(connectionTimeoutMs, TimeUnit.MILLISECONDS)) {
+				client.close();
+				throw new IllegalStateException("无法连接 ZooKeeper: " + connectString);
+			}
+			return client;
+		}
+		
+		@Override
+		public PooledObject<CuratorFramework> wrap(CuratorFramework client) {
+			return new DefaultPooledObject<CuratorFramework>(client);
+		}
+		
+		@Override
+		public boolean validateObject(PooledObject<CuratorFramework> pooledObject) {
+			CuratorFramework client = pooledObject.getObject();
+			return client.getState() == CuratorFrameworkState.STARTED && client.getZookeeperClient().isConnected();
+		}
+		
+		@Override
+		public void destroyObject(PooledObject<CuratorFramework> pooledObject) throws Exception {
+			pooledObject.getObject().close();
+		}
+	}
+}
\ No newline at end of file
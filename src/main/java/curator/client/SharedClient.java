@@ -0,0 +1,63 @@
+package curator.client;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.curator.framework.CuratorFramework;
+
+/**
+ * SharedClientRegistry 发放的共享客户端租约。close() 只归还租约，最后一个租约归还时才关闭底层的客户端；重复调用 close() 没有影响。
+ */
+public class SharedClient implements Closeable {
+	
+	private final SharedClientRegistry registry;
+	
+	private final SharedClientRegistry.Entry entry;
+	
+	private final String connectString;
+	
+	private final String namespace;
+	
+	private final CuratorFramework client;
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	SharedClient(SharedClientRegistry registry, SharedClientRegistry.Entry entry, String connectString, String namespace,
+			CuratorFramework client) {
+		this.registry = registry;
+		this.entry = entry;
+		this.connectString = connectString;
+		this.namespace = namespace;
+		this.client = client;
+	}
+	
+	/**
+	 * @return 共享的客户端，已经启动，不能调用 start() 和 close()；namespace 不为 null 时是 NamespaceFacade，不能调用 getCuratorListenable()
+	 */
+	public CuratorFramework getClient() {
+		if (closed.get()) {
+			throw new IllegalStateException("SharedClient is closed");
+		}
+		return client;
+	}
+	
+	public String getConnectString() {
+		return connectString;
+	}
+	
+	public String getNamespace() {
+		return namespace;
+	}
+	
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			registry.release(entry);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "SharedClient [connectString=" + connectString + ", namespace=" + namespace + ", closed=" + closed.get() + "]";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+package curator.client;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+
+/**
+ * 按连接串共享 CuratorFramework 的引用计数注册表。
+ * 
+ * RecipesBarrier、RecipesBarrier2、RecipesMasterSelect 等示例在每个线程或任务中新建一个客户端，
+ * 每个客户端都有自己的 TCP 连接、会话、EventThread 和后台线程，而且要等一次完整的会话建立之后才能开始使用 recipe。
+ * Curator 的 recipe 本身不依赖独占的会话（每个 DistributedBarrier、DistributedDoubleBarrier、LeaderSelector 实例都创建自己的节点），
+ * 同一个 JVM 中的大量 recipe 实例完全可以共用少数几个会话。SharedClientRegistry：
+ * 1、acquire(connectString, namespace) 返回一个 SharedClient 租约，同一个连接串的第一次 acquire 创建并启动客户端，之后只增加引用计数；
+ * 2、namespace 不为 null 时，租约中的客户端是 usingNamespace(namespace) 得到的 NamespaceFacade，不同 namespace 共用同一个会话；
+ *    NamespaceFacade 的 start()、close() 和 getCuratorListenable() 都会抛出 UnsupportedOperationException，
+ *    所以这类租约不能使用 CuratorListener 风格的回调（CreateNodeSample 等示例中的写法），只能使用 inBackground(callback)；
+ *    namespace 为 null 时，租约中的客户端直接委托给共享的客户端，只有 start() 和 close() 抛出 UnsupportedOperationException，
+ *    getCuratorListenable() 可以正常使用；两种情况下使用者都无法误关共享的会话；
+ * 3、SharedClient.close() 减少引用计数，最后一个租约关闭时关闭客户端。
+ * 
+ * 共用会话意味着会话过期会同时影响所有租约上的 recipe；需要彼此隔离的会话（例如参与选举的多个候选者不能同时失去会话）时使用 CuratorClientPool。
+ * 通过租约添加的 CuratorListener、ConnectionStateListener 注册在共享的客户端上，归还租约之前需要自行移除。
+ * 
+ * 用法：
+ * SharedClient shared = SharedClientRegistry.global().acquire("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183", null);
+ * try {
+ *     new DistributedBarrier(shared.getClient(), path).waitOnBarrier();
+ * } finally {
+ *     shared.close();
+ * }
+ */
+public class SharedClientRegistry implements Closeable {
+	
+	public static final int DEFAULT_SESSION_TIMEOUT_MS = 5000;
+	
+	public static final int DEFAULT_CONNECTION_TIMEOUT_MS = 3000;
+	
+	private static final SharedClientRegistry GLOBAL = new SharedClientRegistry(DEFAULT_SESSION_TIMEOUT_MS, DEFAULT_CONNECTION_TIMEOUT_MS,
+			new ExponentialBackoffRetry(1000, 3));
+	
+	private final int sessionTimeoutMs;
+	
+	private final int connectionTimeoutMs;
+	
+	private final RetryPolicy retryPolicy;
+	
+	// 连接串 -> 共享的客户端，由 this 保护
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	
+	private boolean closed;
+	
+	/**
+	 * @param sessionTimeoutMs 共享客户端的会话超时时间
+	 * @param connectionTimeoutMs 共享客户端的连接超时时间
+	 * @param retryPolicy 共享客户端的重试策略
+	 */
+	public SharedClientRegistry(int sessionTimeoutMs, int connectionTimeoutMs, RetryPolicy retryPolicy) {
+		this.sessionTimeoutMs = sessionTimeoutMs;
+		this.connectionTimeoutMs = connectionTimeoutMs;
+		this.retryPolicy = retryPolicy;
+	}
+	
+	/**
+	 * @return 进程范围共享的注册表，会话超时 5000ms、连接超时 3000ms、ExponentialBackoffRetry(1000, 3)，与示例中的 getClient() 相同
+	 */
+	public static SharedClientRegistry global() {
+		return GLOBAL;
+	}
+	
+	/**
+	 * 获取连接到 connectString 的共享客户端，没有时创建并启动。返回时不保证已经连接上，需要时调用 getClient().blockUntilConnected()。
+	 * 
+	 * @param connectString ZooKeeper 服务器列表
+	 * @param namespace 客户端的 namespace，null 表示不使用
+	 */
+	public synchronized SharedClient acquire(String connectString, String namespace) {
+		if (closed) {
+			throw new IllegalStateException("SharedClientRegistry is closed");
+		}
+		
+		Entry entry = entries.get(connectString);
+		if (entry == null) {
+			CuratorFramework client = CuratorFrameworkFactory.builder()
+			.connectString(connectString)
+			.sessionTimeoutMs(sessionTimeoutMs)
+			.connectionTimeoutMs(connectionTimeoutMs)
+			.retryPolicy(retryPolicy)
+			.build();
+			
+			client.start();
+			
+			entry = new Entry(connectString, client);
+			entries.put(connectString, entry);
+		}
+		
+		entry.references++;
+		return new SharedClient(this, entry, connectString, namespace, namespace == null ? entry.guarded : entry.client.usingNamespace(namespace));
+	}
+	
+	/**
+	 * 由 SharedClient.close() 调用。
+	 */
+	synchronized void release(Entry entry) {
+		entry.references--;
+		if (entry.references == 0 && entries.get(entry.connectString) == entry) {
+			entries.remove(entry.connectString);
+			entry.client.close();
+		}
+	}
+	
+	/**
+	 * @return 当前打开的会话数，即不同连接串的个数
+	 */
+	public synchronized int getSessionCount() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return connectString 上未关闭的租约数
+	 */
+	public synchronized int getReferenceCount(String connectString) {
+		Entry entry = entries.get(connectString);
+		return entry == null ? 0 : entry.references;
+	}
+	
+	/**
+	 * 关闭所有共享客户端，不论是否还有未关闭的租约。之后的 acquire() 抛出 IllegalStateException。
+	 */
+	@Override
+	public void close() {
+		List<Entry> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<Entry>(entries.values());
+			entries.clear();
+		}
+		
+		for (Entry entry : toClose) {
+			entry.client.close();
+		}
+	}
+	
+	/**
+	 * @return 委托给 client 的 CuratorFramework，start() 和 close() 抛出 UnsupportedOperationException
+	 */
+	private static CuratorFramework guard(final CuratorFramework client) {
+		return (CuratorFramework) Proxy.newProxyInstance(CuratorFramework.class.getClassLoader(), new Class<?>[] {CuratorFramework.class},
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String name = method.getName();
+						if (method.getParameterTypes().length == 0 && (name.equals("start") || name.equals("close"))) {
+							throw new UnsupportedOperationException("The shared client is closed by SharedClient.close()");
+						}
+						if (name.equals("equals") && method.getParameterTypes().length == 1) {
+							return proxy == args[0];
+						}
+						if (name.equals("hashCode") && method.getParameterTypes().length == 0) {
+							return System.identityHashCode(proxy);
+						}
+						
+						try {
+							return method.invoke(client, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+	
+	static class Entry {
+		
+		final String connectString;
+		
+		final CuratorFramework client;
+		
+		/*
+		 * namespace 为 null 的租约共用的受保护客户端
+		 */
+		final CuratorFramework guarded;
+		
+		int references;
+		
+		Entry(String connectString, CuratorFramework client) {
+			this.connectString = connectString;
+			this.client = client;
+			this.guarded = guard(client);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,282 @@
+package curator.ensemble;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.curator.ensemble.EnsembleProvider;
+import org.apache.curator.utils.ThreadUtils;
+
+/**
+ * 按探测到的延迟和负载选择服务器的 EnsembleProvider。
+ * 
+ * 示例中的客户端都使用 “192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183”，ZooKeeper 客户端会把列表打乱后随机连接其中一台，
+ * 会话可能落在负载最重或者最远的服务器上。LatencyAwareEnsembleProvider：
+ * 1、start() 时并行地向所有服务器发送 srvr 探测，记录往返时间、连接数、排队请求数和角色，没有响应或者不在提供服务的服务器被排除；
+ * 2、每台服务器的得分 = 往返时间 × (1 + (连接数 + 10 × 排队请求数) / connectionsPerDoubling)，leader 的得分再乘以 2
+ *    （leader 要处理所有写请求的提交，客户端尽量连接 follower）；
+ * 3、得分不超过最低得分 tolerance 倍的服务器都是候选，不足 2 台时按得分补足到 2 台（可用的服务器足够时）；
+ * 4、getConnectionString() 返回所有候选（按原连接串中的顺序），ZooKeeper 客户端在候选中随机连接，同时启动的大量客户端因此分散到各个候选上；
+ *    候选服务器宕机时 ZooKeeper 在同一个会话内切换到其它候选，不需要重建会话。所有服务器都不可用时返回完整的连接串，交给 ZooKeeper 自己选择；
+ * 5、probeInterval 大于 0 时定期重新探测，只有当前所有候选都不再可用时才重新选择（粘滞），避免连接串频繁变化。
+ * 
+ * 连接串变化后，Curator（HandleHolder.hasNewConnectionString()）会在下一次连接超时检查时用新的连接串重新创建 ZooKeeper 连接，
+ * 这会产生一个新的会话，临时节点和 watch 需要由上层恢复（与 Exhibitor 等动态 EnsembleProvider 的行为相同）。
+ * 
+ * probeInterval 为 0 时候选只在 start() 时确定一次，之后不再变化：客户端只能在这些候选之间切换，所有候选都宕机后无法连接到其它服务器。
+ * 长期运行的客户端应该使用大于 0 的 probeInterval；0 只适合短生命周期的客户端（例如 EnsembleSelectionBenchmark）。
+ * 
+ * 用法：
+ * CuratorFramework client = CuratorFrameworkFactory.builder()
+ * .ensembleProvider(new LatencyAwareEnsembleProvider("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183"))
+ * .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+ * .build();
+ */
+public class LatencyAwareEnsembleProvider implements EnsembleProvider {
+	
+	public static final int DEFAULT_PROBE_TIMEOUT_MS = 1000;
+	
+	public static final long DEFAULT_PROBE_INTERVAL_MS = 30000;
+	
+	public static final double DEFAULT_TOLERANCE = 1.5;
+	
+	public static final int DEFAULT_CONNECTIONS_PER_DOUBLING = 100;
+	
+	private static final double LEADER_PENALTY = 2.0;
+	
+	private static final int OUTSTANDING_WEIGHT = 10;
+	
+	private static final int MIN_CANDIDATES = 2;
+	
+	private final String connectString;
+	
+	private final List<String> servers;
+	
+	private final int probeTimeoutMs;
+	
+	private final long probeIntervalMs;
+	
+	private final double tolerance;
+	
+	private final int connectionsPerDoubling;
+	
+	private final AtomicBoolean started = new AtomicBoolean();
+	
+	private ScheduledExecutorService probeThreads;
+	
+	private volatile List<ServerProbe> probes = Collections.emptyList();
+	
+	private volatile List<ServerProbe> candidates = Collections.emptyList();
+	
+	public LatencyAwareEnsembleProvider(String connectString) {
+		this(connectString, DEFAULT_PROBE_TIMEOUT_MS, DEFAULT_PROBE_INTERVAL_MS, DEFAULT_TOLERANCE, DEFAULT_CONNECTIONS_PER_DOUBLING);
+	}
+	
+	/**
+	 * @param connectString 所有服务器，host:port,host:port,...，可以带 chroot（/path）
+	 * @param probeTimeoutMs 单次探测的超时时间
+	 * @param probeIntervalMs 重新探测的间隔，0 表示只在 start() 时探测一次，之后候选不再变化（见类注释）
+	 * @param tolerance 候选服务器的得分与最低得分的最大倍数
+	 * @param connectionsPerDoubling 连接数每增加多少，得分翻一倍
+	 */
+	public LatencyAwareEnsembleProvider(String connectString, int probeTimeoutMs, long probeIntervalMs, double tolerance,
+			int connectionsPerDoubling) {
+		if (probeTimeoutMs <= 0 || probeIntervalMs < 0 || tolerance < 1 || connectionsPerDoubling <= 0) {
+			throw new IllegalArgumentException("Illegal arguments: probeTimeoutMs=" + probeTimeoutMs + ", probeIntervalMs=" + probeIntervalMs
+					+ ", tolerance=" + tolerance + ", connectionsPerDoubling=" + connectionsPerDoubling);
+		}
+		
+		this.connectString = connectString;
+		this.probeTimeoutMs = probeTimeoutMs;
+		this.probeIntervalMs = probeIntervalMs;
+		this.tolerance = tolerance;
+		this.connectionsPerDoubling = connectionsPerDoubling;
+		
+		int chroot = connectString.indexOf('/');
+		String hosts = chroot < 0 ? connectString : connectString.substring(0, chroot);
+		List<String> serverList = new ArrayList<String>();
+		for (String server : hosts.split(",")) {
+			if (server.trim().length() > 0) {
+				serverList.add(server.trim());
+			}
+		}
+		if (serverList.isEmpty()) {
+			throw new IllegalArgumentException("No server in connectString: " + connectString);
+		}
+		this.servers = Collections.unmodifiableList(serverList);
+	}
+	
+	/**
+	 * 并行探测所有服务器并选出候选。Curator 在客户端启动时调用。
+	 */
+	@Override
+	public void start() throws Exception {
+		if (!started.compareAndSet(false, true)) {
+			return;
+		}
+		
+		// 一个线程执行定期探测，其余线程并行探测各个服务器
+		probeThreads = ThreadUtils.newFixedThreadScheduledPool(servers.size() + 1, "LatencyAwareEnsembleProvider");
+		reprobe(true);
+		
+		if (probeIntervalMs > 0) {
+			probeThreads.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						reprobe(false);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			}, probeIntervalMs, probeIntervalMs, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (probeThreads != null) {
+			probeThreads.shutdownNow();
+		}
+	}
+	
+	@Override
+	public String getConnectionString() {
+		List<ServerProbe> current = candidates;
+		if (current.isEmpty()) {
+			return connectString;
+		}
+		
+		StringBuilder hosts = new StringBuilder();
+		for (ServerProbe candidate : current) {
+			if (hosts.length() > 0) {
+				hosts.append(',');
+			}
+			hosts.append(candidate.getHostPort());
+		}
+		
+		int chroot = connectString.indexOf('/');
+		return chroot < 0 ? hosts.toString() : hosts + connectString.substring(chroot);
+	}
+	
+	/**
+	 * 重新探测所有服务器。
+	 * 
+	 * @param reselect true 时总是重新选择；false 时只有当前所有候选都不可用时才重新选择
+	 */
+	public void reprobe(boolean reselect) throws InterruptedException {
+		List<Future<ServerProbe>> futures = new ArrayList<Future<ServerProbe>>();
+		for (final String server : servers) {
+			futures.add(probeThreads.submit(new Callable<ServerProbe>() {
+				@Override
+				public ServerProbe call() throws Exception {
+					return ServerProbe.probe(server, probeTimeoutMs);
+				}
+			}));
+		}
+		
+		List<ServerProbe> results = new ArrayList<ServerProbe>();
+		for (Future<ServerProbe> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		probes = Collections.unmodifiableList(results);
+		
+		if (!reselect) {
+			// 只要还有一个候选可用，ZooKeeper 就能在同一个会话内切换到它，连接串保持不变
+			for (ServerProbe candidate : candidates) {
+				for (ServerProbe probe : results) {
+					if (probe.getHostPort().equals(candidate.getHostPort()) && probe.isHealthy()) {
+						return;
+					}
+				}
+			}
+		}
+		
+		candidates = select(results);
+	}
+	
+	/**
+	 * 选出得分不超过最低得分 tolerance 倍的服务器，不足 MIN_CANDIDATES 台时按得分补足。
+	 * 
+	 * @return 候选，按 results 中的顺序排列；没有可用的服务器时为空
+	 */
+	List<ServerProbe> select(List<ServerProbe> results) {
+		List<ServerProbe> healthy = new ArrayList<ServerProbe>();
+		for (ServerProbe probe : results) {
+			if (probe.isHealthy()) {
+				healthy.add(probe);
+			}
+		}
+		if (healthy.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		List<ServerProbe> byScore = new ArrayList<ServerProbe>(healthy);
+		Collections.sort(byScore, new Comparator<ServerProbe>() {
+			@Override
+			public int compare(ServerProbe a, ServerProbe b) {
+				return Double.compare(score(a), score(b));
+			}
+		});
+		
+		double limit = score(byScore.get(0)) * tolerance;
+		Set<ServerProbe> chosen = new HashSet<ServerProbe>();
+		for (ServerProbe probe : byScore) {
+			if (score(probe) <= limit || chosen.size() < MIN_CANDIDATES) {
+				chosen.add(probe);
+			}
+		}
+		
+		// 保持原连接串中的顺序，相同的候选总是得到相同的连接串
+		List<ServerProbe> selected = new ArrayList<ServerProbe>();
+		for (ServerProbe probe : healthy) {
+			if (chosen.contains(probe)) {
+				selected.add(probe);
+			}
+		}
+		return Collections.unmodifiableList(selected);
+	}
+	
+	/**
+	 * @return 得分，越低越好
+	 */
+	double score(ServerProbe probe) {
+		double load = probe.getConnections() + OUTSTANDING_WEIGHT * probe.getOutstanding();
+		double score = Math.max(1, probe.getRttMicros()) * (1 + load / connectionsPerDoubling);
+		return probe.isLeader() ? score * LEADER_PENALTY : score;
+	}
+	
+	/**
+	 * @return 最近一次探测的结果
+	 */
+	public List<ServerProbe> getProbes() {
+		return probes;
+	}
+	
+	/**
+	 * @return 当前的候选服务器，没有可用的服务器时为空
+	 */
+	public List<ServerProbe> getCandidates() {
+		return candidates;
+	}
+	
+	public List<String> getServers() {
+		return servers;
+	}
+}
\ No newline at end of file
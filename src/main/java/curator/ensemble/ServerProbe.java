@@ -0,0 +1,161 @@
+package curator.ensemble;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * 对单个 ZooKeeper 服务器的一次 srvr 探测结果。
+ * 
+ * srvr 是 ZooKeeper 的四字命令，返回版本、延迟统计、连接数、排队请求数和角色（leader / follower / standalone）等信息；
+ * 服务器没有加入法定人数时返回 “This ZooKeeper instance is not currently serving requests”。
+ * 探测的往返时间包括建立 TCP 连接，近似于客户端连接到该服务器的开销。
+ */
+public class ServerProbe {
+	
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	
+	private final String hostPort;
+	
+	private final boolean healthy;
+	
+	private final long rttMicros;
+	
+	private final int connections;
+	
+	private final int outstanding;
+	
+	private final String mode;
+	
+	private final String error;
+	
+	private ServerProbe(String hostPort, boolean healthy, long rttMicros, int connections, int outstanding, String mode, String error) {
+		this.hostPort = hostPort;
+		this.healthy = healthy;
+		this.rttMicros = rttMicros;
+		this.connections = connections;
+		this.outstanding = outstanding;
+		this.mode = mode;
+		this.error = error;
+	}
+	
+	/**
+	 * 向 hostPort 发送 srvr 并解析结果，不会抛出异常：连接失败、超时或者服务器不可用时返回 isHealthy() == false 的结果。
+	 * 
+	 * @param hostPort host:port
+	 * @param timeoutMs 连接和读取的超时时间
+	 */
+	public static ServerProbe probe(String hostPort, int timeoutMs) {
+		int colon = hostPort.lastIndexOf(':');
+		String host = colon < 0 ? hostPort : hostPort.substring(0, colon);
+		int port = colon < 0 ? 2181 : Integer.parseInt(hostPort.substring(colon + 1).trim());
+		
+		long start = System.nanoTime();
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host.trim(), port), timeoutMs);
+			socket.setSoTimeout(timeoutMs);
+			
+			OutputStream out = socket.getOutputStream();
+			out.write("srvr".getBytes(ASCII));
+			out.flush();
+			
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ASCII));
+			int connections = -1;
+			int outstanding = 0;
+			String mode = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("Connections:")) {
+					connections = parseInt(line);
+				} else if (line.startsWith("Outstanding:")) {
+					outstanding = parseInt(line);
+				} else if (line.startsWith("Mode:")) {
+					mode = line.substring("Mode:".length()).trim();
+				}
+			}
+			long rttMicros = (System.nanoTime() - start) / 1000;
+			
+			if (mode == null) {
+				return new ServerProbe(hostPort, false, rttMicros, connections, outstanding, null, "not serving requests");
+			}
+			return new ServerProbe(hostPort, true, rttMicros, Math.max(0, connections), outstanding, mode, null);
+		} catch (IOException e) {
+			return new ServerProbe(hostPort, false, (System.nanoTime() - start) / 1000, -1, 0, null, e.toString());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	private static int parseInt(String line) {
+		try {
+			return Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	public String getHostPort() {
+		return hostPort;
+	}
+	
+	public boolean isHealthy() {
+		return healthy;
+	}
+	
+	/**
+	 * @return 探测的往返时间（微秒），包括建立连接
+	 */
+	public long getRttMicros() {
+		return rttMicros;
+	}
+	
+	/**
+	 * @return 服务器当前的客户端连接数（包括本次探测的连接），未知时为 -1
+	 */
+	public int getConnections() {
+		return connections;
+	}
+	
+	/**
+	 * @return 服务器排队中的请求数
+	 */
+	public int getOutstanding() {
+		return outstanding;
+	}
+	
+	/**
+	 * @return leader、follower、observer 或 standalone，不可用时为 null
+	 */
+	public String getMode() {
+		return mode;
+	}
+	
+	public boolean isLeader() {
+		return "leader".equals(mode);
+	}
+	
+	/**
+	 * @return 不可用的原因
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	@Override
+	public String toString() {
+		if (!healthy) {
+			return "ServerProbe [" + hostPort + ", unhealthy: " + error + "]";
+		}
+		return "ServerProbe [" + hostPort + ", mode=" + mode + ", rtt=" + rttMicros + "us, connections=" + connections + ", outstanding="
+				+ outstanding + "]";
+	}
+}
\ No newline at end of file
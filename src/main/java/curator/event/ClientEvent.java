@@ -0,0 +1,55 @@
+package curator.event;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.state.ConnectionState;
+
+/**
+ * RingBufferEventBus 中的一个事件：CuratorListener 收到的 CuratorEvent，或者 ConnectionStateListener 收到的 ConnectionState，
+ * 两者只有一个不为 null。
+ */
+public final class ClientEvent {
+	
+	private final CuratorFramework client;
+	
+	private final CuratorEvent curatorEvent;
+	
+	private final ConnectionState connectionState;
+	
+	private ClientEvent(CuratorFramework client, CuratorEvent curatorEvent, ConnectionState connectionState) {
+		this.client = client;
+		this.curatorEvent = curatorEvent;
+		this.connectionState = connectionState;
+	}
+	
+	public static ClientEvent of(CuratorFramework client, CuratorEvent event) {
+		return new ClientEvent(client, event, null);
+	}
+	
+	public static ClientEvent of(CuratorFramework client, ConnectionState newState) {
+		return new ClientEvent(client, null, newState);
+	}
+	
+	public CuratorFramework getClient() {
+		return client;
+	}
+	
+	/**
+	 * @return CuratorEvent，连接状态事件时为 null
+	 */
+	public CuratorEvent getCuratorEvent() {
+		return curatorEvent;
+	}
+	
+	/**
+	 * @return 新的连接状态，CuratorEvent 事件时为 null
+	 */
+	public ConnectionState getConnectionState() {
+		return connectionState;
+	}
+	
+	@Override
+	public String toString() {
+		return "ClientEvent [" + (curatorEvent != null ? curatorEvent : connectionState) + "]";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,515 @@
+package curator.event;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ThreadUtils;
+
+/**
+ * 基于环形缓冲区的 CuratorListener / ConnectionStateListener 事件总线。
+ * 
+ * CreateSessionSample 把两个客户端的所有监听器都交给同一个 Executors.newSingleThreadExecutor()，一个慢监听器（例如阻塞在 System.out 上）
+ * 会拖住所有客户端的事件投递，而且无界队列会无限增长。RingBufferEventBus：
+ * 1、attach(client) 在客户端上注册一个只做发布的 CuratorListener 和 ConnectionStateListener（在 Curator 的事件线程中同步执行），
+ *    发布只是在固定大小的环形缓冲区中领取一个序号、写入槽位，不加锁、不阻塞；
+ * 2、每个订阅者有自己的消费线程和自己的序号，各自按顺序读取环形缓冲区，一次最多取 maxBatchSize 个事件批量投递；
+ * 3、发布者从不等待消费者：慢订阅者落后超过一圈时，被覆盖的事件直接跳过并计入该订阅者的 dropped，
+ *    不会阻塞发布者，也不会影响其它订阅者；跳过时先调用 Handler.onGap() 通知被跳过的序号范围，
+ *    再补发每个客户端在被跳过的范围内最新的连接状态，订阅者不会在不知情的情况下错过 LOST/RECONNECTED；
+ * 4、没有事件时消费线程按 WaitStrategy 等待（空转、yield、park 或阻塞）；
+ * 5、getQueueDepth() 返回最慢订阅者积压的事件数，Subscription 提供每个订阅者的积压、投递数、丢弃数、批次数和发布到投递的延迟。
+ * 
+ * 用法：
+ * RingBufferEventBus bus = new RingBufferEventBus(4096);
+ * bus.subscribe("client-state", connectionStateListener);
+ * bus.subscribe("client-events", curatorListener);
+ * bus.attach(client1);
+ * bus.attach(client2);
+ * ...
+ * bus.close();
+ */
+public class RingBufferEventBus implements Closeable {
+	
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+	
+	public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+	
+	/**
+	 * 订阅者的事件处理接口。
+	 */
+	public interface Handler {
+		
+		/**
+		 * @param event 事件
+		 * @param sequence 事件的序号
+		 * @param endOfBatch 是否为本批次的最后一个事件，可以在这里批量刷新输出
+		 */
+		void onEvent(ClientEvent event, long sequence, boolean endOfBatch) throws Exception;
+		
+		/**
+		 * 落后超过一圈、[fromSequence, toSequence) 范围内的事件被跳过时调用。之后会先补发各客户端在这个范围内最新的连接状态事件，
+		 * 其序号位于该范围内，再继续投递 toSequence 及之后的事件。
+		 */
+		void onGap(long fromSequence, long toSequence) throws Exception;
+	}
+	
+	private final int bufferSize;
+	
+	private final int mask;
+	
+	private final int maxBatchSize;
+	
+	private final WaitStrategy waitStrategy;
+	
+	private final AtomicReferenceArray<Slot> slots;
+	
+	/*
+	 * 下一个待领取的序号。
+	 */
+	private final AtomicLong cursor = new AtomicLong();
+	
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	
+	/*
+	 * 每个客户端最新的连接状态事件，订阅者跳过事件后据此补发。
+	 */
+	private final ConcurrentMap<CuratorFramework, Slot> latestStates = new ConcurrentHashMap<CuratorFramework, Slot>();
+	
+	private volatile boolean closed;
+	
+	private final CuratorListener publishingCuratorListener = new CuratorListener() {
+		@Override
+		public void eventReceived(CuratorFramework client, CuratorEvent event) throws Exception {
+			publish(ClientEvent.of(client, event));
+		}
+	};
+	
+	private final ConnectionStateListener publishingConnectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			publish(ClientEvent.of(client, newState));
+		}
+	};
+	
+	public RingBufferEventBus() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+	
+	public RingBufferEventBus(int bufferSize) {
+		this(bufferSize, DEFAULT_MAX_BATCH_SIZE, WaitStrategy.sleeping());
+	}
+	
+	/**
+	 * @param bufferSize 环形缓冲区的槽位数，必须是 2 的幂
+	 * @param maxBatchSize 每批次最多投递的事件数
+	 * @param waitStrategy 消费线程没有事件时的等待方式
+	 */
+	public RingBufferEventBus(int bufferSize, int maxBatchSize, WaitStrategy waitStrategy) {
+		if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+			throw new IllegalArgumentException("bufferSize must be a power of 2: " + bufferSize);
+		}
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be greater than 0: " + maxBatchSize);
+		}
+		
+		this.bufferSize = bufferSize;
+		this.mask = bufferSize - 1;
+		this.maxBatchSize = maxBatchSize;
+		this.waitStrategy = waitStrategy;
+		this.slots = new AtomicReferenceArray<Slot>(bufferSize);
+	}
+	
+	/**
+	 * 把 client 的 CuratorEvent 和连接状态变化发布到总线。
+	 */
+	public void attach(CuratorFramework client) {
+		client.getCuratorListenable().addListener(publishingCuratorListener);
+		client.getConnectionStateListenable().addListener(publishingConnectionStateListener);
+	}
+	
+	public void detach(CuratorFramework client) {
+		client.getCuratorListenable().removeListener(publishingCuratorListener);
+		client.getConnectionStateListenable().removeListener(publishingConnectionStateListener);
+		latestStates.remove(client);
+	}
+	
+	/**
+	 * 发布一个事件，不会阻塞。
+	 * 
+	 * @return 事件的序号，总线已经关闭时返回 -1
+	 */
+	public long publish(ClientEvent event) {
+		if (closed) {
+			return -1;
+		}
+		
+		long sequence = cursor.getAndIncrement();
+		int index = (int) (sequence & mask);
+		Slot slot = new Slot(sequence, event, System.nanoTime());
+		if (event.getConnectionState() != null) {
+			// 同一个客户端的连接状态只在 Curator 的连接状态线程中发布，不会乱序
+			latestStates.put(event.getClient(), slot);
+		}
+		for (;;) {
+			Slot current = slots.get(index);
+			// 多个发布者同时绕过一圈时，不能用旧事件覆盖新事件
+			if (current != null && current.sequence > sequence) {
+				break;
+			}
+			if (slots.compareAndSet(index, current, slot)) {
+				break;
+			}
+		}
+		
+		waitStrategy.signal();
+		return sequence;
+	}
+	
+	/**
+	 * 订阅之后发布的所有事件。
+	 * 
+	 * @param name 订阅者名称，同时作为消费线程的名称
+	 */
+	public Subscription subscribe(String name, Handler handler) {
+		if (closed) {
+			throw new IllegalStateException("RingBufferEventBus has been closed");
+		}
+		
+		Subscription subscription = new Subscription(name, handler, cursor.get());
+		subscriptions.add(subscription);
+		subscription.start();
+		return subscription;
+	}
+	
+	/**
+	 * 只订阅 CuratorEvent。
+	 */
+	public Subscription subscribe(String name, final CuratorListener listener) {
+		return subscribe(name, new Handler() {
+			@Override
+			public void onEvent(ClientEvent event, long sequence, boolean endOfBatch) throws Exception {
+				if (event.getCuratorEvent() != null) {
+					listener.eventReceived(event.getClient(), event.getCuratorEvent());
+				}
+			}
+			
+			@Override
+			public void onGap(long fromSequence, long toSequence) {
+				// CuratorListener 无法表达丢失的事件，只能通过 getDroppedCount() 查看
+			}
+		});
+	}
+	
+	/**
+	 * 只订阅连接状态变化。
+	 */
+	public Subscription subscribe(String name, final ConnectionStateListener listener) {
+		return subscribe(name, new Handler() {
+			@Override
+			public void onEvent(ClientEvent event, long sequence, boolean endOfBatch) throws Exception {
+				if (event.getConnectionState() != null) {
+					listener.stateChanged(event.getClient(), event.getConnectionState());
+				}
+			}
+			
+			@Override
+			public void onGap(long fromSequence, long toSequence) {
+				// 被跳过的连接状态中，每个客户端最新的一个会随后补发
+			}
+		});
+	}
+	
+	/**
+	 * 停止订阅者的消费线程，尚未投递的事件被丢弃。
+	 */
+	public void unsubscribe(Subscription subscription) {
+		if (subscriptions.remove(subscription)) {
+			subscription.stop();
+		}
+	}
+	
+	/**
+	 * @return 已经发布的事件数
+	 */
+	public long getPublishedCount() {
+		return cursor.get();
+	}
+	
+	/**
+	 * @return 最慢订阅者积压的事件数
+	 */
+	public long getQueueDepth() {
+		long depth = 0;
+		for (Subscription subscription : subscriptions) {
+			depth = Math.max(depth, subscription.getQueueDepth());
+		}
+		return depth;
+	}
+	
+	public List<Subscription> getSubscriptions() {
+		return Collections.unmodifiableList(subscriptions);
+	}
+	
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+		for (Subscription subscription : subscriptions) {
+			subscription.stop();
+		}
+		subscriptions.clear();
+	}
+	
+	/**
+	 * 一个订阅者：自己的消费线程、自己的序号和统计。
+	 */
+	public final class Subscription {
+		
+		private final String name;
+		
+		private final Handler handler;
+		
+		private final ExecutorService consumerThread;
+		
+		/*
+		 * 下一个待投递的序号，投递完一个批次后更新。
+		 */
+		private final AtomicLong sequence;
+		
+		private final AtomicLong delivered = new AtomicLong();
+		
+		private final AtomicLong dropped = new AtomicLong();
+		
+		private final AtomicLong batches = new AtomicLong();
+		
+		private final AtomicLong totalLatencyNanos = new AtomicLong();
+		
+		private final AtomicLong maxLatencyNanos = new AtomicLong();
+		
+		private volatile boolean running = true;
+		
+		Subscription(String name, Handler handler, long startSequence) {
+			this.name = name;
+			this.handler = handler;
+			this.sequence = new AtomicLong(startSequence);
+			this.consumerThread = ThreadUtils.newSingleThreadExecutor(name);
+		}
+		
+		void start() {
+			consumerThread.submit(new Runnable() {
+				@Override
+				public void run() {
+					consume();
+				}
+			});
+		}
+		
+		void stop() {
+			running = false;
+			consumerThread.shutdownNow();
+		}
+		
+		private void consume() {
+			Slot[] batch = new Slot[maxBatchSize];
+			long next = sequence.get();
+			int idleCount = 0;
+			
+			while (running) {
+				int size = 0;
+				while (size < maxBatchSize) {
+					Slot slot = slots.get((int) (next & mask));
+					if (slot == null || slot.sequence < next) {
+						// 尚未发布
+						break;
+					}
+					
+					if (slot.sequence > next) {
+						if (size > 0) {
+							// 先投递跳过之前的事件，下一轮再处理跳过
+							break;
+						}
+						
+						// 落后超过一圈，跳到缓冲区中最旧的可能仍然有效的序号
+						long oldest = Math.max(next + 1, cursor.get() - bufferSize);
+						dropped.addAndGet(oldest - next);
+						if (!deliverGap(next, oldest)) {
+							return;
+						}
+						next = oldest;
+						sequence.lazySet(next);
+						continue;
+					}
+					
+					batch[size++] = slot;
+					next++;
+				}
+				
+				if (size == 0) {
+					try {
+						waitStrategy.idle(idleCount++);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					continue;
+				}
+				
+				idleCount = 0;
+				long now = System.nanoTime();
+				for (int i = 0; i < size; i++) {
+					Slot slot = batch[i];
+					batch[i] = null;
+					recordLatency(now - slot.publishNanos);
+					try {
+						handler.onEvent(slot.event, slot.sequence, i == size - 1);
+					} catch (InterruptedException e) {
+						// unsubscribe() 或 close()
+						Thread.currentThread().interrupt();
+						return;
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+				
+				delivered.addAndGet(size);
+				batches.incrementAndGet();
+				sequence.lazySet(next);
+			}
+		}
+		
+		/**
+		 * 通知订阅者 [from, to) 被跳过，并补发各客户端在这个范围内最新的连接状态。
+		 * 
+		 * @return 被 unsubscribe() 或 close() 中断时返回 false
+		 */
+		private boolean deliverGap(long from, long to) {
+			try {
+				handler.onGap(from, to);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			
+			for (Slot state : latestStates.values()) {
+				if (state.sequence < from || state.sequence >= to) {
+					continue;
+				}
+				
+				try {
+					handler.onEvent(state.event, state.sequence, true);
+					delivered.incrementAndGet();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			return true;
+		}
+		
+		private void recordLatency(long latencyNanos) {
+			totalLatencyNanos.addAndGet(latencyNanos);
+			long max = maxLatencyNanos.get();
+			while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+				max = maxLatencyNanos.get();
+			}
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * @return 已发布、尚未投递的事件数（包括即将被跳过的事件）
+		 */
+		public long getQueueDepth() {
+			return Math.max(0, cursor.get() - sequence.get());
+		}
+		
+		/**
+		 * @return 投递的事件数
+		 */
+		public long getDeliveredCount() {
+			return delivered.get();
+		}
+		
+		/**
+		 * @return 落后超过一圈而被跳过的事件数（包括随后补发的连接状态事件）
+		 */
+		public long getDroppedCount() {
+			return dropped.get();
+		}
+		
+		/**
+		 * @return 投递的批次数
+		 */
+		public long getBatchCount() {
+			return batches.get();
+		}
+		
+		/**
+		 * @return 每批次平均投递的事件数
+		 */
+		public double getMeanBatchSize() {
+			long batchCount = batches.get();
+			return batchCount == 0 ? 0 : (double) delivered.get() / batchCount;
+		}
+		
+		/**
+		 * @return 从发布到开始投递的平均延迟（微秒）
+		 */
+		public double getMeanLatencyMicros() {
+			long count = delivered.get();
+			return count == 0 ? 0 : totalLatencyNanos.get() / 1000.0 / count;
+		}
+		
+		/**
+		 * @return 从发布到开始投递的最大延迟（微秒）
+		 */
+		public double getMaxLatencyMicros() {
+			return maxLatencyNanos.get() / 1000.0;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Subscription [name=%s, queueDepth=%d, delivered=%d, dropped=%d, meanBatchSize=%.1f, meanLatency=%.1fus, maxLatency=%.1fus]",
+					name, getQueueDepth(), getDeliveredCount(), getDroppedCount(), getMeanBatchSize(), getMeanLatencyMicros(), getMaxLatencyMicros());
+		}
+	}
+	
+	/*
+	 * 槽位中的事件，序号和事件一起替换，消费者不会读到序号和事件不一致的槽位。
+	 */
+	private static final class Slot {
+		
+		final long sequence;
+		
+		final ClientEvent event;
+		
+		final long publishNanos;
+		
+		Slot(long sequence, ClientEvent event, long publishNanos) {
+			this.sequence = sequence;
+			this.event = event;
+			this.publishNanos = publishNanos;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package curator.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RingBufferEventBus 的消费线程在没有可消费事件时的等待方式。
+ * 
+ * 1、busySpin()：空转，延迟最低，每个订阅者独占一个 CPU 核；
+ * 2、yielding()：先空转若干次，再 Thread.yield()；
+ * 3、sleeping()：先空转、再 yield，最后每次 park 一小段时间，空闲时几乎不占 CPU（默认）；
+ * 4、blocking()：在 Condition 上等待，由发布者唤醒，空闲时不占 CPU，但每次发布都要检查是否有等待者。
+ */
+public abstract class WaitStrategy {
+	
+	private static final int SPIN_TRIES = 100;
+	
+	private static final int YIELD_TRIES = 100;
+	
+	/**
+	 * 没有可消费的事件时由消费线程调用。
+	 * 
+	 * @param idleCount 连续没有消费到事件的次数，从 0 开始
+	 */
+	public abstract void idle(int idleCount) throws InterruptedException;
+	
+	/**
+	 * 发布事件之后由发布者调用。
+	 */
+	public void signal() {
+	}
+	
+	public static WaitStrategy busySpin() {
+		return new WaitStrategy() {
+			@Override
+			public void idle(int idleCount) {
+			}
+		};
+	}
+	
+	public static WaitStrategy yielding() {
+		return new WaitStrategy() {
+			@Override
+			public void idle(int idleCount) {
+				if (idleCount >= SPIN_TRIES) {
+					Thread.yield();
+				}
+			}
+		};
+	}
+	
+	public static WaitStrategy sleeping() {
+		return sleeping(100, TimeUnit.MICROSECONDS);
+	}
+	
+	/**
+	 * @param park 空转和 yield 之后每次 park 的时间
+	 */
+	public static WaitStrategy sleeping(long park, TimeUnit unit) {
+		final long parkNanos = unit.toNanos(park);
+		return new WaitStrategy() {
+			@Override
+			public void idle(int idleCount) throws InterruptedException {
+				if (idleCount < SPIN_TRIES) {
+					return;
+				}
+				
+				if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+					Thread.yield();
+				} else {
+					LockSupport.parkNanos(parkNanos);
+				}
+				
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		};
+	}
+	
+	public static WaitStrategy blocking() {
+		return new BlockingWaitStrategy();
+	}
+	
+	private static final class BlockingWaitStrategy extends WaitStrategy {
+		
+		private final Lock lock = new ReentrantLock();
+		
+		private final Condition published = lock.newCondition();
+		
+		private final AtomicInteger waiters = new AtomicInteger();
+		
+		@Override
+		public void idle(int idleCount) throws InterruptedException {
+			waiters.incrementAndGet();
+			lock.lock();
+			try {
+				// 带超时地等待：检查可消费事件和进入等待之间发布的事件最多延迟 1ms
+				published.await(1, TimeUnit.MILLISECONDS);
+			} finally {
+				lock.unlock();
+				waiters.decrementAndGet();
+			}
+		}
+		
+		@Override
+		public void signal() {
+			if (waiters.get() == 0) {
+				return;
+			}
+			
+			lock.lock();
+			try {
+				published.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
\ No newline at end of file
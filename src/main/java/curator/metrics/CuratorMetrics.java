@@ -0,0 +1,349 @@
+package curator.metrics;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+
+/**
+ * CuratorFramework 操作的耗时、重试和连接状态统计，可以通过 JMX 查看。
+ * 
+ * 从 CreateNodeSample 到 RecipesLock，示例只打印 CuratorEvent 的各个字段，从不记录操作花了多长时间。CuratorMetrics：
+ * 1、按“操作类型 + 路径前缀”分别维护一个 LatencyHistogram（无锁的对数-线性直方图），路径前缀取父路径的前 prefixDepth 级，
+ *    例如 prefixDepth 为 2 时，/zk-book/nodecache/a 和 /zk-book/nodecache/b 计入同一个前缀 /zk-book/nodecache，
+ *    /zk-book/node-1 和 /zk-book/node-2 计入 /zk-book，节点名本身不会成为前缀；
+ *    每种操作最多 maxPrefixes 个前缀，之后出现的新前缀（例如路径中带有 UUID、会话 ID）都计入 OVERFLOW_PREFIX，直方图和 MBean 的数量不会无限增长；
+ * 2、instrument(client) 用计数的 RetryPolicy 包装客户端原有的重试策略，并监听连接状态的变化；
+ * 3、registerMBeans() 之后，自身和每个直方图都注册到平台 MBeanServer（curator.metrics:name=<name>,...），
+ *    之后新出现的前缀同样会被注册；close() 时注销。
+ * 
+ * 耗时通过 InstrumentedClient 记录，也可以自己调用 record()：
+ * long start = System.nanoTime();
+ * ...
+ * metrics.record(Operation.GET_DATA, path, System.nanoTime() - start, true);
+ * 
+ * record() 只有一次路径前缀的计算、一次 ConcurrentHashMap 查找和直方图的两次原子加。
+ */
+public class CuratorMetrics implements CuratorMetricsMBean, Closeable {
+	
+	public static final String JMX_DOMAIN = "curator.metrics";
+	
+	public static final int DEFAULT_PREFIX_DEPTH = 2;
+	
+	public static final int DEFAULT_MAX_PREFIXES = 64;
+	
+	/**
+	 * 超出 maxPrefixes 的前缀共用的直方图前缀。不以 / 开头，不会和真实的路径冲突。
+	 */
+	public static final String OVERFLOW_PREFIX = "(other)";
+	
+	private final String name;
+	
+	private final int prefixDepth;
+	
+	private final int maxPrefixes;
+	
+	private final Map<Operation, ConcurrentMap<String, LatencyHistogram>> histograms = new EnumMap<Operation, ConcurrentMap<String, LatencyHistogram>>(Operation.class);
+	
+	private final AtomicLong retries = new AtomicLong();
+	
+	private final AtomicLong retriesExhausted = new AtomicLong();
+	
+	private final AtomicLongArray connectionStates = new AtomicLongArray(ConnectionState.values().length);
+	
+	private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+	
+	private volatile MBeanServer mBeanServer;
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			connectionStates.incrementAndGet(newState.ordinal());
+		}
+	};
+	
+	public CuratorMetrics(String name) {
+		this(name, DEFAULT_PREFIX_DEPTH);
+	}
+	
+	/**
+	 * @param name 名称，用于区分同一 JVM 中的多个 CuratorMetrics
+	 * @param prefixDepth 路径前缀的级数，0 表示所有路径计入同一个前缀 /
+	 */
+	public CuratorMetrics(String name, int prefixDepth) {
+		this(name, prefixDepth, DEFAULT_MAX_PREFIXES);
+	}
+	
+	/**
+	 * @param name 名称，用于区分同一 JVM 中的多个 CuratorMetrics
+	 * @param prefixDepth 路径前缀的级数，0 表示所有路径计入同一个前缀 /
+	 * @param maxPrefixes 每种操作最多的前缀个数，超出的路径计入 OVERFLOW_PREFIX
+	 */
+	public CuratorMetrics(String name, int prefixDepth, int maxPrefixes) {
+		if (prefixDepth < 0) {
+			throw new IllegalArgumentException("prefixDepth must not be negative: " + prefixDepth);
+		}
+		if (maxPrefixes < 1) {
+			throw new IllegalArgumentException("maxPrefixes must be positive: " + maxPrefixes);
+		}
+		
+		this.name = name;
+		this.prefixDepth = prefixDepth;
+		this.maxPrefixes = maxPrefixes;
+		for (Operation operation : Operation.values()) {
+			histograms.put(operation, new ConcurrentHashMap<String, LatencyHistogram>());
+		}
+	}
+	
+	/**
+	 * 统计 client 的重试次数和连接状态变化。
+	 */
+	public void instrument(CuratorFramework client) {
+		RetryPolicy retryPolicy = client.getZookeeperClient().getRetryPolicy();
+		client.getZookeeperClient().setRetryPolicy(countRetries(retryPolicy));
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+	}
+	
+	/**
+	 * @return 统计重试次数的 RetryPolicy，重试行为与 retryPolicy 相同
+	 */
+	public RetryPolicy countRetries(RetryPolicy retryPolicy) {
+		if (retryPolicy instanceof CountingRetryPolicy && ((CountingRetryPolicy) retryPolicy).metrics() == this) {
+			return retryPolicy;
+		}
+		return new CountingRetryPolicy(retryPolicy);
+	}
+	
+	/**
+	 * 记录一次操作的耗时。
+	 */
+	public void record(Operation operation, String path, long nanos, boolean success) {
+		histogram(operation, path).record(nanos, success);
+	}
+	
+	/**
+	 * @return operation 在 path 所属前缀上的直方图，不存在时创建；前缀个数已经达到 maxPrefixes 时返回 OVERFLOW_PREFIX 的直方图
+	 */
+	public LatencyHistogram histogram(Operation operation, String path) {
+		String prefix = prefixOf(path);
+		ConcurrentMap<String, LatencyHistogram> byPrefix = histograms.get(operation);
+		LatencyHistogram histogram = byPrefix.get(prefix);
+		if (histogram == null) {
+			if (byPrefix.size() >= maxPrefixes) {
+				// 溢出之后的路径直接查找共用的直方图，不进入下面的同步方法
+				histogram = byPrefix.get(OVERFLOW_PREFIX);
+			}
+			if (histogram == null) {
+				histogram = newHistogram(operation, byPrefix, prefix);
+			}
+		}
+		return histogram;
+	}
+	
+	/**
+	 * 新建直方图只在第一次遇到某个前缀时发生，在锁内检查前缀个数，保证每种操作最多 maxPrefixes 个前缀加一个 OVERFLOW_PREFIX。
+	 */
+	private synchronized LatencyHistogram newHistogram(Operation operation, ConcurrentMap<String, LatencyHistogram> byPrefix, String prefix) {
+		LatencyHistogram histogram = byPrefix.get(prefix);
+		if (histogram != null) {
+			return histogram;
+		}
+		
+		if (byPrefix.size() >= maxPrefixes) {
+			prefix = OVERFLOW_PREFIX;
+			histogram = byPrefix.get(prefix);
+			if (histogram != null) {
+				return histogram;
+			}
+		}
+		
+		histogram = new LatencyHistogram(operation, prefix);
+		byPrefix.put(prefix, histogram);
+		register(histogram);
+		return histogram;
+	}
+	
+	/**
+	 * @return 所有直方图
+	 */
+	public List<LatencyHistogram> getHistograms() {
+		List<LatencyHistogram> result = new ArrayList<LatencyHistogram>();
+		for (ConcurrentMap<String, LatencyHistogram> byPrefix : histograms.values()) {
+			result.addAll(byPrefix.values());
+		}
+		return result;
+	}
+	
+	/**
+	 * @return path 的父路径的前 prefixDepth 级。路径不超过 prefixDepth 级时返回父路径，叶子节点名（通常是顺序节点或业务 ID）不会成为前缀
+	 */
+	String prefixOf(String path) {
+		if (path == null || prefixDepth == 0) {
+			return "/";
+		}
+		
+		int end = 0;
+		for (int depth = 0; depth < prefixDepth; depth++) {
+			int next = path.indexOf('/', end + 1);
+			if (next < 0) {
+				break;
+			}
+			end = next;
+		}
+		return end == 0 ? "/" : path.substring(0, end);
+	}
+	
+	/**
+	 * 把自身和所有直方图注册到平台 MBeanServer。
+	 */
+	public synchronized void registerMBeans() throws JMException {
+		if (mBeanServer != null) {
+			return;
+		}
+		
+		mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		registerMBean(this, new ObjectName(JMX_DOMAIN + ":name=" + ObjectName.quote(name) + ",type=Client"));
+		for (LatencyHistogram histogram : getHistograms()) {
+			register(histogram);
+		}
+	}
+	
+	/**
+	 * 注销所有 MBean，统计不受影响。
+	 */
+	@Override
+	public synchronized void close() {
+		if (mBeanServer == null) {
+			return;
+		}
+		
+		for (ObjectName objectName : registeredNames) {
+			try {
+				mBeanServer.unregisterMBean(objectName);
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		}
+		registeredNames.clear();
+		mBeanServer = null;
+	}
+	
+	/**
+	 * 停止统计 client 的连接状态。客户端的重试策略保持不变。
+	 */
+	public void detach(CuratorFramework client) {
+		client.getConnectionStateListenable().removeListener(connectionStateListener);
+	}
+	
+	private synchronized void register(LatencyHistogram histogram) {
+		if (mBeanServer == null) {
+			return;
+		}
+		
+		try {
+			registerMBean(histogram, new ObjectName(JMX_DOMAIN + ":name=" + ObjectName.quote(name) + ",type=Operation,operation="
+					+ histogram.getOperation() + ",prefix=" + ObjectName.quote(histogram.getPathPrefix())));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void registerMBean(Object mBean, ObjectName objectName) throws JMException {
+		if (registeredNames.contains(objectName)) {
+			return;
+		}
+		mBeanServer.registerMBean(mBean, objectName);
+		registeredNames.add(objectName);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public long getRetries() {
+		return retries.get();
+	}
+	
+	@Override
+	public long getRetriesExhausted() {
+		return retriesExhausted.get();
+	}
+	
+	@Override
+	public long getConnectedCount() {
+		return connectionStates.get(ConnectionState.CONNECTED.ordinal());
+	}
+	
+	@Override
+	public long getSuspendedCount() {
+		return connectionStates.get(ConnectionState.SUSPENDED.ordinal());
+	}
+	
+	@Override
+	public long getReconnectedCount() {
+		return connectionStates.get(ConnectionState.RECONNECTED.ordinal());
+	}
+	
+	@Override
+	public long getLostCount() {
+		return connectionStates.get(ConnectionState.LOST.ordinal());
+	}
+	
+	@Override
+	public long getReadOnlyCount() {
+		return connectionStates.get(ConnectionState.READ_ONLY.ordinal());
+	}
+	
+	@Override
+	public int getHistogramCount() {
+		int count = 0;
+		for (ConcurrentMap<String, LatencyHistogram> byPrefix : histograms.values()) {
+			count += byPrefix.size();
+		}
+		return count;
+	}
+	
+	/**
+	 * 委托给原有的 RetryPolicy，统计允许和拒绝重试的次数。
+	 */
+	private final class CountingRetryPolicy implements RetryPolicy {
+		
+		private final RetryPolicy delegate;
+		
+		CountingRetryPolicy(RetryPolicy delegate) {
+			this.delegate = delegate;
+		}
+		
+		CuratorMetrics metrics() {
+			return CuratorMetrics.this;
+		}
+		
+		@Override
+		public boolean allowRetry(int retryCount, long elapsedTimeMs, RetrySleeper sleeper) {
+			boolean allowed = delegate.allowRetry(retryCount, elapsedTimeMs, sleeper);
+			if (allowed) {
+				retries.incrementAndGet();
+			} else {
+				retriesExhausted.incrementAndGet();
+			}
+			return allowed;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package curator.metrics;
+
+/**
+ * CuratorMetrics 的 JMX 接口：重试次数和连接状态变化次数。每个操作类型和路径前缀的耗时分别注册为 LatencyHistogramMBean。
+ */
+public interface CuratorMetricsMBean {
+	
+	/**
+	 * @return RetryPolicy 允许的重试次数
+	 */
+	long getRetries();
+	
+	/**
+	 * @return RetryPolicy 拒绝重试（放弃）的次数
+	 */
+	long getRetriesExhausted();
+	
+	long getConnectedCount();
+	
+	long getSuspendedCount();
+	
+	long getReconnectedCount();
+	
+	long getLostCount();
+	
+	long getReadOnlyCount();
+	
+	/**
+	 * @return 耗时直方图的个数（操作类型 × 路径前缀）
+	 */
+	int getHistogramCount();
+}
\ No newline at end of file
@@ -0,0 +1,187 @@
+package curator.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.barriers.DistributedBarrier;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * 记录耗时的 CuratorFramework 常用操作，耗时计入 CuratorMetrics 中对应操作类型和路径前缀的直方图，抛出异常的操作计为失败。
+ * 
+ * 用法：
+ * CuratorMetrics metrics = new CuratorMetrics("zk-book");
+ * metrics.instrument(client);
+ * metrics.registerMBeans();
+ * InstrumentedClient instrumented = new InstrumentedClient(client, metrics);
+ * instrumented.create(path, data, CreateMode.EPHEMERAL);
+ * byte[] data = instrumented.getData(path, stat);
+ * 
+ * 其它操作可以直接使用 getClient()，自己调用 CuratorMetrics.record() 记录耗时。
+ */
+public class InstrumentedClient {
+	
+	private final CuratorFramework client;
+	
+	private final CuratorMetrics metrics;
+	
+	public InstrumentedClient(CuratorFramework client, CuratorMetrics metrics) {
+		this.client = client;
+		this.metrics = metrics;
+	}
+	
+	public CuratorFramework getClient() {
+		return client;
+	}
+	
+	public CuratorMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * create().creatingParentsIfNeeded().withMode(mode).forPath(path, data)
+	 */
+	public String create(String path, byte[] data, CreateMode mode) throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			String createdPath = client.create().creatingParentsIfNeeded().withMode(mode).forPath(path, data);
+			success = true;
+			return createdPath;
+		} finally {
+			metrics.record(Operation.CREATE, path, System.nanoTime() - start, success);
+		}
+	}
+	
+	/**
+	 * getData().storingStatIn(stat).forPath(path)
+	 * 
+	 * @param stat 存放节点的 Stat，可以为 null
+	 */
+	public byte[] getData(String path, Stat stat) throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			byte[] data = stat != null ? client.getData().storingStatIn(stat).forPath(path) : client.getData().forPath(path);
+			success = true;
+			return data;
+		} finally {
+			metrics.record(Operation.GET_DATA, path, System.nanoTime() - start, success);
+		}
+	}
+	
+	/**
+	 * setData().withVersion(version).forPath(path, data)
+	 * 
+	 * @param version 期望的版本，-1 表示不检查
+	 */
+	public Stat setData(String path, byte[] data, int version) throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			Stat stat = client.setData().withVersion(version).forPath(path, data);
+			success = true;
+			return stat;
+		} finally {
+			metrics.record(Operation.SET_DATA, path, System.nanoTime() - start, success);
+		}
+	}
+	
+	/**
+	 * delete().withVersion(version).forPath(path)
+	 * 
+	 * @param version 期望的版本，-1 表示不检查
+	 */
+	public void delete(String path, int version) throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			client.delete().withVersion(version).forPath(path);
+			success = true;
+		} finally {
+			metrics.record(Operation.DELETE, path, System.nanoTime() - start, success);
+		}
+	}
+	
+	/**
+	 * getChildren().forPath(path)
+	 */
+	public List<String> getChildren(String path) throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			List<String> children = client.getChildren().forPath(path);
+			success = true;
+			return children;
+		} finally {
+			metrics.record(Operation.GET_CHILDREN, path, System.nanoTime() - start, success);
+		}
+	}
+	
+	/**
+	 * 获取锁，超时没有获取到同样计为失败。
+	 * 
+	 * @param path 锁的路径，只用于统计
+	 */
+	public boolean acquire(InterProcessLock lock, String path, long time, TimeUnit unit) throws Exception {
+		long start = System.nanoTime();
+		boolean acquired = false;
+		try {
+			acquired = lock.acquire(time, unit);
+			return acquired;
+		} finally {
+			metrics.record(Operation.LOCK_ACQUIRE, path, System.nanoTime() - start, acquired);
+		}
+	}
+	
+	/**
+	 * 没有超时地获取锁。
+	 * 
+	 * @param path 锁的路径，只用于统计
+	 */
+	public void acquire(InterProcessLock lock, String path) throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			lock.acquire();
+			success = true;
+		} finally {
+			metrics.record(Operation.LOCK_ACQUIRE, path, System.nanoTime() - start, success);
+		}
+	}
+	
+	/**
+	 * 等待 Barrier 被移除，超时同样计为失败。
+	 * 
+	 * @param path Barrier 的路径，只用于统计
+	 */
+	public boolean waitOnBarrier(DistributedBarrier barrier, String path, long time, TimeUnit unit) throws Exception {
+		long start = System.nanoTime();
+		boolean released = false;
+		try {
+			released = barrier.waitOnBarrier(time, unit);
+			return released;
+		} finally {
+			metrics.record(Operation.BARRIER_WAIT, path, System.nanoTime() - start, released);
+		}
+	}
+	
+	/**
+	 * 没有超时地等待 Barrier 被移除。
+	 * 
+	 * @param path Barrier 的路径，只用于统计
+	 */
+	public void waitOnBarrier(DistributedBarrier barrier, String path) throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			barrier.waitOnBarrier();
+			success = true;
+		} finally {
+			metrics.record(Operation.BARRIER_WAIT, path, System.nanoTime() - start, success);
+		}
+	}
+}
\ No newline at end of file
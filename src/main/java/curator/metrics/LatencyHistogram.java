@@ -0,0 +1,190 @@
+package curator.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的对数-线性耗时直方图。
+ * 
+ * 每个 2 的幂区间再等分为 16 个桶，相对误差不超过 1/16（约 6%），可以记录 1ns 到约 73 分钟的耗时，超出的计入最后一个桶。
+ * record() 只做两次原子加（桶计数和总耗时），最大值只在刷新时 CAS，不加锁、不分配对象；
+ * 百分位数在读取时遍历所有桶计算，读取远比记录少。
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+	
+	private static final int SUB_BUCKET_BITS = 4;
+	
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	
+	private static final int MAX_EXPONENT = 42;
+	
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+	
+	private final Operation operation;
+	
+	private final String pathPrefix;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	
+	private final AtomicLong totalNanos = new AtomicLong();
+	
+	private final AtomicLong maxNanos = new AtomicLong();
+	
+	private final AtomicLong errors = new AtomicLong();
+	
+	LatencyHistogram(Operation operation, String pathPrefix) {
+		this.operation = operation;
+		this.pathPrefix = pathPrefix;
+	}
+	
+	/**
+	 * @param nanos 耗时（纳秒）
+	 * @param success 操作是否成功，失败的操作同样计入耗时
+	 */
+	public void record(long nanos, boolean success) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		
+		buckets.incrementAndGet(bucketIndex(nanos));
+		totalNanos.addAndGet(nanos);
+		
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+		
+		if (!success) {
+			errors.incrementAndGet();
+		}
+	}
+	
+	static int bucketIndex(long nanos) {
+		if (nanos < SUB_BUCKET_COUNT) {
+			return (int) nanos;
+		}
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+		
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+	
+	/**
+	 * @return 桶内的最大值
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		return ((SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+	
+	/**
+	 * @param quantile 0 到 1 之间的分位
+	 * @return 对应的耗时（纳秒），以所在桶的上界近似，不超过记录到的最大值
+	 */
+	public long getPercentileNanos(double quantile) {
+		long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = buckets.get(i);
+			count += counts[i];
+		}
+		
+		if (count == 0) {
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+	
+	@Override
+	public String getOperation() {
+		return operation.name();
+	}
+	
+	@Override
+	public String getPathPrefix() {
+		return pathPrefix;
+	}
+	
+	@Override
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+	
+	@Override
+	public long getErrors() {
+		return errors.get();
+	}
+	
+	@Override
+	public double getMeanMicros() {
+		long count = getCount();
+		return count == 0 ? 0 : totalNanos.get() / 1000.0 / count;
+	}
+	
+	@Override
+	public double getMaxMicros() {
+		return maxNanos.get() / 1000.0;
+	}
+	
+	@Override
+	public double get50thPercentileMicros() {
+		return getPercentileNanos(0.5) / 1000.0;
+	}
+	
+	@Override
+	public double get90thPercentileMicros() {
+		return getPercentileNanos(0.9) / 1000.0;
+	}
+	
+	@Override
+	public double get99thPercentileMicros() {
+		return getPercentileNanos(0.99) / 1000.0;
+	}
+	
+	@Override
+	public double get999thPercentileMicros() {
+		return getPercentileNanos(0.999) / 1000.0;
+	}
+	
+	/**
+	 * 清零。与 record() 并发时可能丢失少量记录。
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		totalNanos.set(0);
+		maxNanos.set(0);
+		errors.set(0);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s %s [count=%d, errors=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, p999=%.1fus, max=%.1fus]", operation,
+				pathPrefix, getCount(), getErrors(), getMeanMicros(), get50thPercentileMicros(), get99thPercentileMicros(),
+				get999thPercentileMicros(), getMaxMicros());
+	}
+}
\ No newline at end of file
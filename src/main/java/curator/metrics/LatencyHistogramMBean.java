@@ -0,0 +1,29 @@
+package curator.metrics;
+
+/**
+ * LatencyHistogram 的 JMX 接口，耗时的单位都是微秒。
+ */
+public interface LatencyHistogramMBean {
+	
+	String getOperation();
+	
+	String getPathPrefix();
+	
+	long getCount();
+	
+	long getErrors();
+	
+	double getMeanMicros();
+	
+	double getMaxMicros();
+	
+	double get50thPercentileMicros();
+	
+	double get90thPercentileMicros();
+	
+	double get99thPercentileMicros();
+	
+	double get999thPercentileMicros();
+	
+	void reset();
+}
\ No newline at end of file
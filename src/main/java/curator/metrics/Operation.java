@@ -0,0 +1,27 @@
+package curator.metrics;
+
+/**
+ * CuratorMetrics 分别统计耗时的操作类型。
+ */
+public enum Operation {
+	
+	CREATE,
+	
+	GET_DATA,
+	
+	SET_DATA,
+	
+	DELETE,
+	
+	GET_CHILDREN,
+	
+	/**
+	 * 分布式锁的获取，包括等待其它持有者释放的时间。
+	 */
+	LOCK_ACQUIRE,
+	
+	/**
+	 * 等待 Barrier 被移除的时间。
+	 */
+	BARRIER_WAIT
+}
\ No newline at end of file
@@ -4,6 +4,8 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 
+import curator.utils.EnsurePathCache;
+
 public class EnsurePathDemo {
 	
 	private static String path = "/zk-book/c1";
@@ -29,6 +31,27 @@ public class EnsurePathDemo {
 		 * 注意：在 2.9.0 版本中 EnsurePath 类已经被废弃了，作者是这么描述的：
 		 * 
 		 * @deprecated Since 2.9.0 - Prefer CuratorFramework.create().creatingParentContainersIfNeeded() or CuratorFramework.exists().creatingParentContainersIfNeeded()
+		 * 
+		 * 不过无论是 EnsurePath 还是 creatingParentsIfNeeded()，每次调用都会到服务端检查一遍父节点。EnsurePathCache 会记住当前 JVM 已经确认存在的路径，
+		 * 第二次 ensure 同一路径时不再产生任何网络请求；当被记录的节点被删除或会话过期时，缓存自动失效。
 		 */
+		client.start();
+		
+		try {
+			EnsurePathCache cache = EnsurePathCache.forClient(client);
+			
+			cache.ensure(path);
+			cache.ensure(path);
+			
+			System.out.println("hits: " + cache.getHits() + ", misses: " + cache.getMisses());    // hits: 1, misses: 1
+			
+			cache.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if (client != null) {
+				client.close();
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -62,6 +62,9 @@ public class NodeCacheSample {
 			 * 
 			 * 注意，在调用 NodeCache#start(boolean) 方法时，如果设置为 false ，虽然 NodeCache 不会一启动就从 ZooKeeper 上读取对应节点的数据内容，
 			 * 但如果注册了 NodeCacheListener ，就会在启动后触发该 NodeCacheListener 从而读出对应节点上的数据内容。
+			 * 
+			 * NodeCacheListener 在 Curator 的事件线程中执行。节点更新非常频繁而监听器处理较慢时，可以用
+			 * curator.recipes.cache.DebouncedNodeCacheListener 按时间窗口或最大频率合并通知，只处理最新的数据。
 			 */
 			final NodeCache cache = new NodeCache(client, path, false);
 			cache.start(false);
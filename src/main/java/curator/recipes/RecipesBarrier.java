@@ -3,9 +3,10 @@ package curator.recipes;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.recipes.barriers.DistributedBarrier;
-import org.apache.curator.retry.ExponentialBackoffRetry;
+
+import curator.client.SharedClient;
+import curator.client.SharedClientRegistry;
 
 public class RecipesBarrier {
 	
@@ -24,10 +25,9 @@ public class RecipesBarrier {
 				new Thread(new Runnable() {
 					@Override
 					public void run() {
+						SharedClient shared = getClient();
 						try {
-							CuratorFramework client = getClient();
-							
-							client.start();
+							CuratorFramework client = shared.getClient();
 							
 							DistributedBarrier barrier = new DistributedBarrier(client, path);
 							
@@ -39,6 +39,8 @@ public class RecipesBarrier {
 							System.out.println("启动...");
 						} catch (Exception e) {
 							e.printStackTrace();
+						} finally {
+							shared.close();
 						}
 					}
 				}).start();
@@ -46,23 +48,22 @@ public class RecipesBarrier {
 			
 			TimeUnit.SECONDS.sleep(2);
 			
-			CuratorFramework client = getClient();
-			client.start();
-			new DistributedBarrier(client, path).removeBarrier();
+			SharedClient shared = getClient();
+			try {
+				new DistributedBarrier(shared.getClient(), path).removeBarrier();
+			} finally {
+				shared.close();
+			}
 			
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
-	private static CuratorFramework getClient() {
-		CuratorFramework client = CuratorFrameworkFactory.builder()
-		.connectString("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183")
-		.sessionTimeoutMs(5000)
-		.connectionTimeoutMs(3000)
-		.retryPolicy(new ExponentialBackoffRetry(1000, 3))
-		.build();
-		
-		return client;
+	/**
+	 * 从 SharedClientRegistry 获取共享客户端的租约：所有线程共用同一个会话，用完后调用 SharedClient#close() 归还。
+	 */
+	private static SharedClient getClient() {
+		return SharedClientRegistry.global().acquire("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183", null);
 	}
 }
\ No newline at end of file
@@ -1,9 +1,10 @@
 package curator.recipes;
 
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.recipes.barriers.DistributedDoubleBarrier;
-import org.apache.curator.retry.ExponentialBackoffRetry;
+
+import curator.client.SharedClient;
+import curator.client.SharedClientRegistry;
 
 public class RecipesBarrier2 {
 	
@@ -24,10 +25,9 @@ public class RecipesBarrier2 {
 				new Thread(new Runnable() {
 					@Override
 					public void run() {
+						SharedClient shared = getClient();
 						try {
-							CuratorFramework client = getClient();
-							
-							client.start();
+							CuratorFramework client = shared.getClient();
 							
 							DistributedDoubleBarrier barrier = new DistributedDoubleBarrier(client, path, 5);
 							
@@ -46,6 +46,8 @@ public class RecipesBarrier2 {
 							System.out.println("退出");
 						} catch (Exception e) {
 							e.printStackTrace();
+						} finally {
+							shared.close();
 						}
 					}
 				}).start();
@@ -55,14 +57,10 @@ public class RecipesBarrier2 {
 		}
 	}
 	
-	private static CuratorFramework getClient() {
-		CuratorFramework client = CuratorFrameworkFactory.builder()
-		.connectString("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183")
-		.sessionTimeoutMs(5000)
-		.connectionTimeoutMs(3000)
-		.retryPolicy(new ExponentialBackoffRetry(1000, 3))
-		.build();
-		
-		return client;
+	/**
+	 * 从 SharedClientRegistry 获取共享客户端的租约：所有线程共用同一个会话，用完后调用 SharedClient#close() 归还。
+	 */
+	private static SharedClient getClient() {
+		return SharedClientRegistry.global().acquire("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183", null);
 	}
 }
\ No newline at end of file
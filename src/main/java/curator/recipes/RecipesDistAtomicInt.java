@@ -25,6 +25,9 @@ public class RecipesDistAtomicInt {
 		
 		/*
 		 * 指定一个 ZooKeeper 数据节点作为计数器，多个应用实例在分布式锁的控制下，通过更新该数据节点的内容来实现计数功能。
+		 * 
+		 * 每次 add() 都是一次独立的 CAS 往返。对于允许少量延迟的统计类计数，可以使用 curator.recipes.atomic.WriteBehindCounter
+		 * 在本地合并增量，再定期一次性写入同一个节点。
 		 */
 		try {
 			DistributedAtomicInteger atomicInteger = new DistributedAtomicInteger(client, path, new RetryNTimes(3, 1000));
@@ -0,0 +1,63 @@
+package curator.recipes;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+
+import curator.recipes.atomic.RangeIdAllocator;
+
+public class RecipesIdAllocator {
+	
+	private static String path = "/curator_recipes_id_allocator_path";
+	
+	private static CuratorFramework client = CuratorFrameworkFactory.builder()
+	.connectString("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183")
+	.sessionTimeoutMs(5000)
+	.connectionTimeoutMs(3000)
+	.retryPolicy(new ExponentialBackoffRetry(1000, 3))
+	.build();
+	
+	public static void main(String[] args) {
+		client.start();
+		
+		/*
+		 * RecipesLock 中借助分布式锁和 SimpleDateFormat 生成订单号：每个订单号都要在 ZooKeeper 上创建、删除一个临时顺序节点，
+		 * 并且不同 JVM 在同一毫秒内生成的订单号会重复。
+		 * 
+		 * RangeIdAllocator 每次通过一次 CAS 从计数器节点预留一段 ID，再在本地无锁地逐个分配，生成的订单号在所有 JVM 之间都不会重复。
+		 */
+		final RangeIdAllocator allocator = new RangeIdAllocator(client, path);
+		final CountDownLatch down = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(300);
+		
+		for (int i = 0; i < 300; i++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						down.await();
+						long orderNo = allocator.nextId();
+						System.out.println("生成的订单号是：" + orderNo);
+					} catch (Exception e) {
+						e.printStackTrace();
+					} finally {
+						finished.countDown();
+					}
+				}
+			}, "ThreadName_" + i).start();
+		}
+		down.countDown();
+		
+		try {
+			finished.await();
+			System.out.println("预留号段次数：" + allocator.getReservations() + "，当前号段大小：" + allocator.getBlockSize());
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			allocator.close();
+			client.close();
+		}
+	}
+}
\ No newline at end of file
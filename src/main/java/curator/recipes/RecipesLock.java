@@ -32,6 +32,9 @@ public class RecipesLock {
 		 * 
 		 * 当使用 InterProcessMutex#acquire() 方法时会在 path 下建立一个 “临时、顺序型的节点”。
 		 * 经测试发现，当执行线程越多时，该程序的性能越差，所以该程序使用分布式锁的场景可能不对。
+		 * 同一个 JVM 中的大量线程竞争同一把锁时，可以改用 curator.recipes.locks.TwoLevelMutex：线程先在本地排队，
+		 * 只有队首线程去竞争 ZooKeeper 锁，并且可以把锁直接移交给本地的下一个线程。
+		 * 获取锁的耗时分布（而不只是总耗时）可以用 curator.metrics.InstrumentedClient#acquire() 记录，并通过 JMX 查看。
 		 */
 		try {
 			final InterProcessMutex lock = new InterProcessMutex(client, path);
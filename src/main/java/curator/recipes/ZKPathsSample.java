@@ -1,20 +1,21 @@
 package curator.recipes;
 
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.curator.utils.ZKPaths.PathAndNode;
 import org.apache.zookeeper.ZooKeeper;
 
+import curator.client.SharedClient;
+import curator.client.SharedClientRegistry;
+
 public class ZKPathsSample {
 	
 	private static String path = "/curator_zkpath_sample";
 	
 	public static void main(String[] args) {
 		
-		CuratorFramework client = getClient();
-		client.start();
+		SharedClient shared = getClient();
+		CuratorFramework client = shared.getClient();
 		
 		try {
 			
@@ -43,21 +44,15 @@ public class ZKPathsSample {
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
-			if (client != null) {
-				client.close();
-			}
+			shared.close();
 		}
 	}
 	
-	private static CuratorFramework getClient() {
-		CuratorFramework client = CuratorFrameworkFactory.builder()
-		.connectString("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183")
-		.sessionTimeoutMs(5000)
-		.connectionTimeoutMs(3000)
-		.retryPolicy(new ExponentialBackoffRetry(1000, 3))
-		.build();
-		
-		return client;
+	/**
+	 * 从 SharedClientRegistry 获取共享客户端的租约，用完后调用 SharedClient#close() 归还。
+	 */
+	private static SharedClient getClient() {
+		return SharedClientRegistry.global().acquire("192.168.56.101:2181,192.168.56.101:2182,192.168.56.101:2183", null);
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package curator.recipes.atomic;
+
+/**
+ * 计数器节点的数据格式，与 DistributedAtomicLong 相同：8 字节大端 long，空节点视为 0。
+ * 
+ * 编解码都直接按位运算完成，不创建 ByteBuffer，供 DistributedLongCounter 等对分配敏感的场景复用缓冲区。
+ */
+final class CounterBytes {
+	
+	static final int SIZE = 8;
+	
+	private CounterBytes() {
+	}
+	
+	static byte[] encode(long value) {
+		return encode(value, new byte[SIZE]);
+	}
+	
+	/**
+	 * 把 value 写入 buffer 的前 8 个字节。
+	 * 
+	 * @return buffer
+	 */
+	static byte[] encode(long value, byte[] buffer) {
+		for (int i = SIZE - 1; i >= 0; i--) {
+			buffer[i] = (byte) value;
+			value >>>= 8;
+		}
+		return buffer;
+	}
+	
+	static long decode(byte[] data) {
+		if (data == null || data.length == 0) {
+			return 0;
+		}
+		
+		long value = 0;
+		for (int i = 0; i < SIZE; i++) {
+			value = (value << 8) | (data[i] & 0xff);
+		}
+		return value;
+	}
+}
\ No newline at end of file
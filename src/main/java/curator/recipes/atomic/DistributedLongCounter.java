@@ -0,0 +1,139 @@
+package curator.recipes.atomic;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * 基于 long 原始类型、热路径上不分配对象的分布式计数器。
+ * 
+ * DistributedAtomicInteger 每次调用都会返回一个新的 AtomicValue&lt;Integer&gt;（连同装箱的 Integer 和 AtomicStats），每次尝试都会
+ * 通过 ByteBuffer 编解码并创建新的 byte[]，在频繁累加的指标统计中会产生大量短命对象。DistributedLongCounter 的做法是：
+ * 1、所有操作都使用 long，结果写入调用者传入的 MutableLongValue，而不是返回新对象；
+ * 2、CAS 所需的 Stat 和编码缓冲区都保存在 MutableLongValue 中，在多次调用之间复用；
+ * 3、绕过 Curator 的 Builder 链，直接调用底层 ZooKeeper 的同步 getData/setData，路径的命名空间前缀在构造时计算一次。
+ * 
+ * 计数器节点的数据格式与 DistributedAtomicLong 相同，两者可以作用在同一个节点上。
+ * 
+ * 注意：
+ * 1、“不分配”指的是本类自身；ZooKeeper 客户端在发送请求、接收响应时仍会创建请求包和返回的 byte[]，这部分无法避免；
+ * 2、直接使用底层 ZooKeeper 意味着没有 Curator 的 RetryLoop，ConnectionLoss 等连接类异常直接抛给调用者，只有版本冲突会在
+ *    maxAttempts 次以内重试。
+ */
+public class DistributedLongCounter {
+	
+	public static final int DEFAULT_MAX_ATTEMPTS = 100;
+	
+	private final CuratorFramework client;
+	
+	private final String path;
+	
+	private final String fullPath;
+	
+	private final int maxAttempts;
+	
+	public DistributedLongCounter(CuratorFramework client, String path) {
+		this(client, path, DEFAULT_MAX_ATTEMPTS);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 计数器节点路径，不存在时自动创建
+	 * @param maxAttempts 版本冲突时最多尝试 CAS 的次数
+	 */
+	public DistributedLongCounter(CuratorFramework client, String path, int maxAttempts) {
+		if (maxAttempts <= 0) {
+			throw new IllegalArgumentException("maxAttempts must be greater than 0: " + maxAttempts);
+		}
+		
+		this.client = client;
+		this.path = path;
+		this.fullPath = ZKPaths.fixForNamespace(client.getNamespace(), path);
+		this.maxAttempts = maxAttempts;
+	}
+	
+	/**
+	 * 读取当前值，结果中 preValue 与 postValue 相同。
+	 */
+	public void get(MutableLongValue result) throws Exception {
+		result.reset();
+		result.attempts = 1;
+		
+		long value = read(zooKeeper(), result);
+		result.preValue = value;
+		result.postValue = value;
+		result.succeeded = true;
+	}
+	
+	public boolean increment(MutableLongValue result) throws Exception {
+		return add(1, result);
+	}
+	
+	public boolean decrement(MutableLongValue result) throws Exception {
+		return add(-1, result);
+	}
+	
+	/**
+	 * 把计数器加上 delta。
+	 * 
+	 * @return result.succeeded()
+	 */
+	public boolean add(long delta, MutableLongValue result) throws Exception {
+		result.reset();
+		ZooKeeper zooKeeper = zooKeeper();
+		
+		while (result.attempts < maxAttempts) {
+			result.attempts++;
+			
+			long value;
+			try {
+				value = read(zooKeeper, result);
+			} catch (KeeperException.NoNodeException e) {
+				if (create(delta, result)) {
+					result.preValue = 0;
+					result.postValue = delta;
+					result.succeeded = true;
+					return true;
+				}
+				continue;
+			}
+			
+			long newValue = value + delta;
+			try {
+				zooKeeper.setData(fullPath, CounterBytes.encode(newValue, result.buffer), result.stat.getVersion());
+			} catch (KeeperException.BadVersionException e) {
+				continue;
+			}
+			
+			result.preValue = value;
+			result.postValue = newValue;
+			result.succeeded = true;
+			return true;
+		}
+		
+		return false;
+	}
+	
+	private long read(ZooKeeper zooKeeper, MutableLongValue result) throws Exception {
+		return CounterBytes.decode(zooKeeper.getData(fullPath, false, result.stat));
+	}
+	
+	/**
+	 * 节点不存在时创建（只在第一次写入时发生，走 Curator 以便自动创建父节点）。
+	 * 
+	 * @return 是否由本次调用创建
+	 */
+	private boolean create(long value, MutableLongValue result) throws Exception {
+		try {
+			client.create().creatingParentsIfNeeded().forPath(path, CounterBytes.encode(value, result.buffer));
+			return true;
+		} catch (KeeperException.NodeExistsException e) {
+			return false;
+		}
+	}
+	
+	private ZooKeeper zooKeeper() throws Exception {
+		return client.getZookeeperClient().getZooKeeper();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+package curator.recipes.atomic;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * DistributedLongCounter 的结果容器，由调用者创建并在多次调用之间复用，以代替 DistributedAtomicInteger 每次返回的 AtomicValue&lt;Integer&gt;。
+ * 
+ * 除了结果之外，它还持有一次 CAS 所需的 Stat 和编码缓冲区，所以同一个实例不能被多个线程同时使用（每个线程各自持有一个即可）。
+ */
+public final class MutableLongValue {
+	
+	boolean succeeded;
+	
+	long preValue;
+	
+	long postValue;
+	
+	int attempts;
+	
+	final Stat stat = new Stat();
+	
+	final byte[] buffer = new byte[CounterBytes.SIZE];
+	
+	/**
+	 * @return 操作是否成功；CAS 重试次数用尽时为 false
+	 */
+	public boolean succeeded() {
+		return succeeded;
+	}
+	
+	public long preValue() {
+		return preValue;
+	}
+	
+	public long postValue() {
+		return postValue;
+	}
+	
+	/**
+	 * @return 本次操作尝试 CAS 的次数
+	 */
+	public int attempts() {
+		return attempts;
+	}
+	
+	void reset() {
+		succeeded = false;
+		preValue = 0;
+		postValue = 0;
+		attempts = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "MutableLongValue[succeeded=" + succeeded + ", preValue=" + preValue + ", postValue=" + postValue + ", attempts=" + attempts + "]";
+	}
+}
\ No newline at end of file
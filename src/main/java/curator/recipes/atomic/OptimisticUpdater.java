@@ -0,0 +1,281 @@
+package curator.recipes.atomic;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Function;
+
+/**
+ * 基于版本号的乐观“读-改-写”。
+ * 
+ * SetDataSample 演示了 setData().withVersion(stat.getVersion()) 在版本不匹配时抛出 BadVersionException，但没有重试；
+ * 而业务代码中常见的“失败就立刻重读重写”的循环，在多个编辑者同时修改同一个热点配置节点时会相互踩踏，形成活锁。OptimisticUpdater：
+ * 1、update(path, transform) 接收一个纯函数 transform（旧数据 -> 新数据，返回 null 表示不需要修改），失败时会被多次调用，不应有副作用；
+ * 2、冲突（BadVersion）时按“去相关抖动”（decorrelated jitter）退避：sleep = random(base, 上一次 sleep * 3)，不超过 maxSleep；
+ *    base 随该路径最近的冲突率增大（contention-adaptive），冲突越激烈的路径退避越久，让出服务端给正在提交的编辑者；
+ * 3、每次成功写入后记住写入的数据和 setData 返回的版本，下一次 update 直接以它作为第一次尝试的输入，省掉一次 getData；
+ *    只有在这份数据已经过期（BadVersion）时才重新读取，且这一次不退避、不算作冲突；transform 对这份数据返回 null（不需要修改）时，
+ *    先从服务端重新读取再判断一次，不会基于可能过期的数据跳过修改；
+ * 4、每个路径的尝试次数、冲突次数和冲突率可以通过 getMetrics() 获得。
+ * 
+ * 节点不存在时抛出 KeeperException.NoNodeException；超过 maxAttempts 次仍然冲突时返回 succeeded() == false 的结果。
+ */
+public class OptimisticUpdater {
+	
+	public static final int DEFAULT_MAX_ATTEMPTS = 50;
+	
+	public static final long DEFAULT_BASE_SLEEP_MICROS = 500;
+	
+	public static final long DEFAULT_MAX_SLEEP_MICROS = 200000;
+	
+	/*
+	 * 冲突率的指数移动平均系数。
+	 */
+	private static final double EWMA_ALPHA = 0.2;
+	
+	private final CuratorFramework client;
+	
+	private final int maxAttempts;
+	
+	private final long baseSleepMicros;
+	
+	private final long maxSleepMicros;
+	
+	private final ConcurrentMap<String, PathMetrics> metrics = new ConcurrentHashMap<String, PathMetrics>();
+	
+	public OptimisticUpdater(CuratorFramework client) {
+		this(client, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_SLEEP_MICROS, DEFAULT_MAX_SLEEP_MICROS, TimeUnit.MICROSECONDS);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param maxAttempts 每次 update 最多尝试 setData 的次数
+	 * @param baseSleep 没有竞争时的退避基数
+	 * @param maxSleep 单次退避的上限
+	 * @param unit baseSleep 和 maxSleep 的时间单位
+	 */
+	public OptimisticUpdater(CuratorFramework client, int maxAttempts, long baseSleep, long maxSleep, TimeUnit unit) {
+		if (maxAttempts <= 0) {
+			throw new IllegalArgumentException("maxAttempts must be greater than 0: " + maxAttempts);
+		}
+		
+		this.client = client;
+		this.maxAttempts = maxAttempts;
+		this.baseSleepMicros = Math.max(1, unit.toMicros(baseSleep));
+		this.maxSleepMicros = Math.max(baseSleepMicros, unit.toMicros(maxSleep));
+	}
+	
+	/**
+	 * 以 transform 更新 path 的数据，版本冲突时退避重试。
+	 */
+	public UpdateResult update(String path, Function<byte[], byte[]> transform) throws Exception {
+		PathMetrics pathMetrics = metricsFor(path);
+		pathMetrics.updates.incrementAndGet();
+		
+		byte[] current;
+		int version;
+		boolean fromCache;
+		
+		Known known = pathMetrics.known;
+		if (known != null) {
+			current = known.data;
+			version = known.version;
+			fromCache = true;
+		} else {
+			Stat stat = new Stat();
+			current = client.getData().storingStatIn(stat).forPath(path);
+			version = stat.getVersion();
+			fromCache = false;
+		}
+		
+		int conflicts = 0;
+		long sleepMicros = 0;
+		long totalSleepMicros = 0;
+		
+		for (int attempt = 1;; attempt++) {
+			byte[] next = transform.apply(current);
+			if (next == null && fromCache) {
+				// 缓存的数据可能已经过期，不能据此判断不需要修改：从服务端重新读取后再判断一次
+				fromCache = false;
+				Stat stat = new Stat();
+				current = client.getData().storingStatIn(stat).forPath(path);
+				version = stat.getVersion();
+				next = transform.apply(current);
+			}
+			if (next == null) {
+				pathMetrics.completed(conflicts);
+				return new UpdateResult(true, current, null, null, attempt - 1, conflicts, totalSleepMicros / 1000);
+			}
+			
+			pathMetrics.attempts.incrementAndGet();
+			try {
+				Stat stat = client.setData().withVersion(version).forPath(path, next);
+				pathMetrics.known = new Known(next, stat.getVersion());
+				pathMetrics.completed(conflicts);
+				return new UpdateResult(true, current, next, stat, attempt, conflicts, totalSleepMicros / 1000);
+			} catch (KeeperException.BadVersionException e) {
+				pathMetrics.known = null;
+				// 缓存的数据已经过期引起的 BadVersion 不算作竞争：不计入冲突次数和冲突率，立即重新读取，不退避
+				boolean staleCache = fromCache;
+				fromCache = false;
+				if (!staleCache) {
+					pathMetrics.conflicts.incrementAndGet();
+					conflicts++;
+				}
+				
+				if (attempt >= maxAttempts) {
+					pathMetrics.failures.incrementAndGet();
+					pathMetrics.completed(conflicts);
+					return new UpdateResult(false, current, null, null, attempt, conflicts, totalSleepMicros / 1000);
+				}
+				
+				if (!staleCache) {
+					sleepMicros = nextSleep(sleepMicros, pathMetrics.getContention());
+					totalSleepMicros += sleepMicros;
+					TimeUnit.MICROSECONDS.sleep(sleepMicros);
+				}
+				
+				Stat stat = new Stat();
+				current = client.getData().storingStatIn(stat).forPath(path);
+				version = stat.getVersion();
+			}
+		}
+	}
+	
+	/**
+	 * @return path 的统计，没有调用过 update(path) 时返回 null
+	 */
+	public PathMetrics getMetrics(String path) {
+		return metrics.get(path);
+	}
+	
+	/**
+	 * @return 所有路径的统计
+	 */
+	public Map<String, PathMetrics> getMetrics() {
+		return Collections.unmodifiableMap(new HashMap<String, PathMetrics>(metrics));
+	}
+	
+	/**
+	 * 去相关抖动：在 [base, previous * 3] 中随机选取，base 按竞争程度放大。
+	 */
+	private long nextSleep(long previousMicros, double contention) {
+		long base = (long) (baseSleepMicros * (1 + contention * 4));
+		long upper = Math.max(base + 1, Math.min(maxSleepMicros, previousMicros * 3));
+		return Math.min(maxSleepMicros, ThreadLocalRandom.current().nextLong(base, upper + 1));
+	}
+	
+	private PathMetrics metricsFor(String path) {
+		PathMetrics pathMetrics = metrics.get(path);
+		if (pathMetrics == null) {
+			PathMetrics newMetrics = new PathMetrics();
+			pathMetrics = metrics.putIfAbsent(path, newMetrics);
+			if (pathMetrics == null) {
+				pathMetrics = newMetrics;
+			}
+		}
+		return pathMetrics;
+	}
+	
+	/**
+	 * 单个路径的统计。
+	 */
+	public static class PathMetrics {
+		
+		private final AtomicLong updates = new AtomicLong();
+		
+		private final AtomicLong attempts = new AtomicLong();
+		
+		private final AtomicLong conflicts = new AtomicLong();
+		
+		private final AtomicLong failures = new AtomicLong();
+		
+		/*
+		 * 每次 update 的冲突次数的指数移动平均，由多个线程近似地更新，不要求精确。
+		 */
+		private volatile double contention;
+		
+		private volatile Known known;
+		
+		PathMetrics() {
+		}
+		
+		void completed(int conflicts) {
+			contention = contention + EWMA_ALPHA * (conflicts - contention);
+		}
+		
+		/**
+		 * @return update 调用次数
+		 */
+		public long getUpdates() {
+			return updates.get();
+		}
+		
+		/**
+		 * @return setData 尝试次数
+		 */
+		public long getAttempts() {
+			return attempts.get();
+		}
+		
+		/**
+		 * @return BadVersion 冲突次数，不包括缓存的数据过期引起的 BadVersion
+		 */
+		public long getConflicts() {
+			return conflicts.get();
+		}
+		
+		/**
+		 * @return 超过 maxAttempts 次仍然冲突而放弃的 update 次数
+		 */
+		public long getFailures() {
+			return failures.get();
+		}
+		
+		/**
+		 * @return 冲突率：冲突次数 / 尝试次数
+		 */
+		public double getConflictRate() {
+			long attemptCount = attempts.get();
+			return attemptCount == 0 ? 0 : (double) conflicts.get() / attemptCount;
+		}
+		
+		/**
+		 * @return 最近每次 update 平均遇到的冲突次数（指数移动平均）
+		 */
+		public double getContention() {
+			return contention;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("PathMetrics [updates=%d, attempts=%d, conflicts=%d, failures=%d, conflictRate=%.3f, contention=%.2f]",
+					getUpdates(), getAttempts(), getConflicts(), getFailures(), getConflictRate(), getContention());
+		}
+	}
+	
+	/**
+	 * 最近一次成功写入的数据和版本。
+	 */
+	private static final class Known {
+		
+		final byte[] data;
+		
+		final int version;
+		
+		Known(byte[] data, int version) {
+			this.data = data;
+			this.version = version;
+		}
+	}
+}
\ No newline at end of file
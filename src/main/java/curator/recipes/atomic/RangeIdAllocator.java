@@ -0,0 +1,239 @@
+package curator.recipes.atomic;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ThreadUtils;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * 按号段预留的分布式 ID 生成器。
+ * 
+ * RecipesLock 中每生成一个订单号都要获取一次分布式锁，再用 SimpleDateFormat 格式化当前时间，不仅慢，而且不同 JVM 在同一毫秒内
+ * 生成的订单号会重复。RangeIdAllocator 的做法是：
+ * 1、ZooKeeper 上的计数器节点保存“已经分配出去的最大 ID”，每次通过一次 CAS（getData + setData().withVersion()）预留一整段 ID；
+ * 2、号段在本地通过 AtomicLong 逐个分配，不加锁，也不访问服务端；
+ * 3、号段消耗到 3/4 时在后台线程中预取下一段，避免号段用完时调用线程阻塞在网络请求上；
+ * 4、号段大小根据消耗速度自适应：一段号在 targetRefillMillis 的一半时间内就用完时加倍，超过两倍时间才用完时减半，
+ *    并限制在 [minBlockSize, maxBlockSize] 之内。
+ * 
+ * 计数器节点的数据格式与 DistributedAtomicLong 相同（8 字节大端 long），两者可以作用在同一个节点上。
+ * 
+ * 注意，生成的 ID 全局唯一、单个 JVM 内递增，但不保证连续：进程退出时未用完的号段会被丢弃。
+ */
+public class RangeIdAllocator implements Closeable {
+	
+	public static final int DEFAULT_MIN_BLOCK_SIZE = 16;
+	
+	public static final int DEFAULT_MAX_BLOCK_SIZE = 65536;
+	
+	public static final long DEFAULT_TARGET_REFILL_MILLIS = 1000;
+	
+	private static final Block EMPTY = new Block(0, 0);
+	
+	private final CuratorFramework client;
+	
+	private final String path;
+	
+	private final int minBlockSize;
+	
+	private final int maxBlockSize;
+	
+	private final long targetRefillNanos;
+	
+	private final ExecutorService prefetchThread;
+	
+	private volatile Block current = EMPTY;
+	
+	/*
+	 * 以下字段只在 synchronized(this) 中访问。
+	 */
+	private Future<Block> prefetched;
+	
+	private int blockSize;
+	
+	private long lastRefillNanos;
+	
+	private final AtomicLong reservations = new AtomicLong();
+	
+	private final AtomicLong casFailures = new AtomicLong();
+	
+	public RangeIdAllocator(CuratorFramework client, String path) {
+		this(client, path, DEFAULT_MIN_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE, DEFAULT_TARGET_REFILL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 计数器节点路径，不存在时自动创建
+	 * @param minBlockSize 最小号段大小，也是初始号段大小
+	 * @param maxBlockSize 最大号段大小
+	 * @param targetRefill 期望的号段预留间隔
+	 * @param unit targetRefill 的时间单位
+	 */
+	public RangeIdAllocator(CuratorFramework client, String path, int minBlockSize, int maxBlockSize, long targetRefill, TimeUnit unit) {
+		if (minBlockSize <= 0 || maxBlockSize < minBlockSize) {
+			throw new IllegalArgumentException("Invalid block size range: [" + minBlockSize + ", " + maxBlockSize + "]");
+		}
+		
+		this.client = client;
+		this.path = path;
+		this.minBlockSize = minBlockSize;
+		this.maxBlockSize = maxBlockSize;
+		this.targetRefillNanos = unit.toNanos(targetRefill);
+		this.blockSize = minBlockSize;
+		this.prefetchThread = ThreadUtils.newSingleThreadExecutor("RangeIdAllocator");
+	}
+	
+	/**
+	 * @return 下一个 ID，从 1 开始
+	 */
+	public long nextId() throws Exception {
+		while (true) {
+			Block block = current;
+			long id = block.next.getAndIncrement();
+			
+			if (id < block.end) {
+				if (id == block.prefetchMark) {
+					prefetch(block);
+				}
+				return id;
+			}
+			
+			refill(block);
+		}
+	}
+	
+	/**
+	 * @return 当前的号段大小
+	 */
+	public synchronized int getBlockSize() {
+		return blockSize;
+	}
+	
+	/**
+	 * @return 向 ZooKeeper 预留号段的次数
+	 */
+	public long getReservations() {
+		return reservations.get();
+	}
+	
+	/**
+	 * @return 预留号段时 CAS 失败（与其它 JVM 冲突）的次数
+	 */
+	public long getCasFailures() {
+		return casFailures.get();
+	}
+	
+	@Override
+	public void close() {
+		prefetchThread.shutdownNow();
+	}
+	
+	private synchronized void prefetch(Block block) {
+		if (current != block || prefetched != null) {
+			return;
+		}
+		
+		final int size = blockSize;
+		prefetched = prefetchThread.submit(new Callable<Block>() {
+			@Override
+			public Block call() throws Exception {
+				return reserve(size);
+			}
+		});
+	}
+	
+	private synchronized void refill(Block exhausted) throws Exception {
+		// 其它线程已经换上了新的号段
+		if (current != exhausted) {
+			return;
+		}
+		
+		adjustBlockSize();
+		
+		Block block = null;
+		if (prefetched != null) {
+			try {
+				block = prefetched.get();
+			} catch (ExecutionException e) {
+				// 预取失败时在当前线程中重新预留，由当前线程抛出异常。
+			} finally {
+				prefetched = null;
+			}
+		}
+		
+		if (block == null) {
+			block = reserve(blockSize);
+		}
+		
+		current = block;
+	}
+	
+	private void adjustBlockSize() {
+		long now = System.nanoTime();
+		if (lastRefillNanos != 0) {
+			long elapsed = now - lastRefillNanos;
+			if (elapsed < targetRefillNanos / 2) {
+				blockSize = Math.min(blockSize * 2, maxBlockSize);
+			} else if (elapsed > targetRefillNanos * 2) {
+				blockSize = Math.max(blockSize / 2, minBlockSize);
+			}
+		}
+		lastRefillNanos = now;
+	}
+	
+	/**
+	 * 通过一次 CAS 把计数器加上 size，返回预留到的号段 [old + 1, old + size]。
+	 */
+	private Block reserve(int size) throws Exception {
+		Stat stat = new Stat();
+		
+		while (true) {
+			long value;
+			try {
+				value = CounterBytes.decode(client.getData().storingStatIn(stat).forPath(path));
+			} catch (KeeperException.NoNodeException e) {
+				try {
+					client.create().creatingParentsIfNeeded().forPath(path, CounterBytes.encode(size));
+					reservations.incrementAndGet();
+					return new Block(1, size + 1);
+				} catch (KeeperException.NodeExistsException ignore) {
+					continue;
+				}
+			}
+			
+			try {
+				client.setData().withVersion(stat.getVersion()).forPath(path, CounterBytes.encode(value + size));
+				reservations.incrementAndGet();
+				return new Block(value + 1, value + size + 1);
+			} catch (KeeperException.BadVersionException e) {
+				casFailures.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * 本地号段 [next, end)。
+	 */
+	private static final class Block {
+		
+		final AtomicLong next;
+		
+		final long end;
+		
+		final long prefetchMark;
+		
+		Block(long start, long end) {
+			this.next = new AtomicLong(start);
+			this.end = end;
+			this.prefetchMark = end > start ? start + (end - start) * 3 / 4 : -1;
+		}
+	}
+}
\ No newline at end of file
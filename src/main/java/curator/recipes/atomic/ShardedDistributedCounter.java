@@ -0,0 +1,197 @@
+package curator.recipes.atomic;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.utils.ThreadUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * 分片的分布式计数器。
+ * 
+ * RecipesDistAtomicInt 中所有 add() 都是对同一个节点做乐观重试（getData + setData().withVersion()），写入方越多，版本冲突越多，
+ * 吞吐量下降得越厉害。ShardedDistributedCounter 把计数分散到 path 下的 shardCount 个子节点（shard-0、shard-1……）上：
+ * 1、写：根据当前线程计算出一个分片，对该分片做 CAS；版本冲突时换到下一个分片重试，而不是在同一个热点节点上反复冲突；
+ * 2、读：get() 并行读取所有分片并求和；
+ * 3、缓存读：调用 start(interval, unit) 后，后台线程按固定间隔异步刷新总和，getCached() 直接返回最近一次的结果，不访问服务端。
+ * 
+ * 每个分片的数据格式与 DistributedAtomicLong 相同，分片节点在第一次写入时自动创建。
+ * 
+ * 注意，get() 读取各个分片的时刻不同，所以结果不是某一时刻的快照；并发写入时只保证最终一致。
+ */
+public class ShardedDistributedCounter implements Closeable {
+	
+	public static final int DEFAULT_SHARD_COUNT = 16;
+	
+	private static final String SHARD_PREFIX = "shard-";
+	
+	private final CuratorFramework client;
+	
+	private final String[] shardPaths;
+	
+	private final AtomicLong cached = new AtomicLong();
+	
+	private final AtomicLong casFailures = new AtomicLong();
+	
+	private final AtomicReference<ScheduledExecutorService> refresher = new AtomicReference<ScheduledExecutorService>();
+	
+	public ShardedDistributedCounter(CuratorFramework client, String path) {
+		this(client, path, DEFAULT_SHARD_COUNT);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 计数器根节点，分片节点创建在其下
+	 * @param shardCount 分片数，所有使用同一 path 的客户端必须一致
+	 */
+	public ShardedDistributedCounter(CuratorFramework client, String path, int shardCount) {
+		if (shardCount <= 0) {
+			throw new IllegalArgumentException("shardCount must be greater than 0: " + shardCount);
+		}
+		
+		this.client = client;
+		this.shardPaths = new String[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shardPaths[i] = ZKPaths.makePath(path, SHARD_PREFIX + i);
+		}
+	}
+	
+	/**
+	 * 启动缓存读模式，每隔 interval 异步刷新一次 getCached() 的结果。
+	 */
+	public void start(long interval, TimeUnit unit) {
+		ScheduledExecutorService executor = ThreadUtils.newSingleThreadScheduledExecutor("ShardedDistributedCounter");
+		if (!refresher.compareAndSet(null, executor)) {
+			executor.shutdown();
+			throw new IllegalStateException("Cached reads already started");
+		}
+		
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					cached.set(get());
+				} catch (Exception e) {
+					// 刷新失败时保留上一次的结果，等待下一次刷新。
+				}
+			}
+		}, 0, interval, unit);
+	}
+	
+	/**
+	 * 把 delta 累加到当前线程对应的分片上。
+	 */
+	public void add(long delta) throws Exception {
+		int shard = shardOf(Thread.currentThread());
+		Stat stat = new Stat();
+		
+		while (true) {
+			String shardPath = shardPaths[shard];
+			
+			long value;
+			try {
+				value = CounterBytes.decode(client.getData().storingStatIn(stat).forPath(shardPath));
+			} catch (KeeperException.NoNodeException e) {
+				try {
+					client.create().creatingParentsIfNeeded().forPath(shardPath, CounterBytes.encode(delta));
+					return;
+				} catch (KeeperException.NodeExistsException ignore) {
+					continue;
+				}
+			}
+			
+			try {
+				client.setData().withVersion(stat.getVersion()).forPath(shardPath, CounterBytes.encode(value + delta));
+				return;
+			} catch (KeeperException.BadVersionException e) {
+				casFailures.incrementAndGet();
+				shard = (shard + 1) % shardPaths.length;
+			}
+		}
+	}
+	
+	public void increment() throws Exception {
+		add(1);
+	}
+	
+	/**
+	 * 并行读取所有分片并求和。
+	 */
+	public long get() throws Exception {
+		final AtomicLong sum = new AtomicLong();
+		final AtomicInteger error = new AtomicInteger(KeeperException.Code.OK.intValue());
+		final CountDownLatch latch = new CountDownLatch(shardPaths.length);
+		
+		BackgroundCallback callback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				int resultCode = event.getResultCode();
+				if (resultCode == KeeperException.Code.OK.intValue()) {
+					sum.addAndGet(CounterBytes.decode(event.getData()));
+				} else if (resultCode != KeeperException.Code.NONODE.intValue()) {
+					// 分片还没有被写入过时视为 0
+					error.compareAndSet(KeeperException.Code.OK.intValue(), resultCode);
+				}
+				latch.countDown();
+			}
+		};
+		
+		for (String shardPath : shardPaths) {
+			client.getData().inBackground(callback).forPath(shardPath);
+		}
+		latch.await();
+		
+		if (error.get() != KeeperException.Code.OK.intValue()) {
+			throw KeeperException.create(KeeperException.Code.get(error.get()));
+		}
+		
+		long value = sum.get();
+		cached.set(value);
+		return value;
+	}
+	
+	/**
+	 * @return 最近一次 get() 或后台刷新得到的总和
+	 */
+	public long getCached() {
+		return cached.get();
+	}
+	
+	/**
+	 * @return add() 时发生版本冲突的次数
+	 */
+	public long getCasFailures() {
+		return casFailures.get();
+	}
+	
+	public int getShardCount() {
+		return shardPaths.length;
+	}
+	
+	@Override
+	public void close() {
+		ScheduledExecutorService executor = refresher.getAndSet(null);
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+	
+	private int shardOf(Thread thread) {
+		long id = thread.getId();
+		int hash = (int) (id ^ (id >>> 32));
+		// 打散连续的线程 id，避免集中在相邻分片
+		hash ^= (hash >>> 16);
+		hash *= 0x9e3779b9;
+		return (hash >>> 1) % shardPaths.length;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package curator.recipes.atomic;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * OptimisticUpdater.update() 的执行结果。
+ */
+public class UpdateResult {
+	
+	private final boolean succeeded;
+	
+	private final byte[] preValue;
+	
+	private final byte[] postValue;
+	
+	private final Stat stat;
+	
+	private final int attempts;
+	
+	private final int conflicts;
+	
+	private final long backoffMillis;
+	
+	UpdateResult(boolean succeeded, byte[] preValue, byte[] postValue, Stat stat, int attempts, int conflicts, long backoffMillis) {
+		this.succeeded = succeeded;
+		this.preValue = preValue;
+		this.postValue = postValue;
+		this.stat = stat;
+		this.attempts = attempts;
+		this.conflicts = conflicts;
+		this.backoffMillis = backoffMillis;
+	}
+	
+	/**
+	 * @return 是否写入成功；变换函数返回 null（不需要修改）时同样为 true
+	 */
+	public boolean succeeded() {
+		return succeeded;
+	}
+	
+	/**
+	 * @return 最后一次尝试时读到的数据
+	 */
+	public byte[] preValue() {
+		return preValue;
+	}
+	
+	/**
+	 * @return 写入的数据；不需要修改或者失败时为 null
+	 */
+	public byte[] postValue() {
+		return postValue;
+	}
+	
+	/**
+	 * @return setData 返回的 Stat；不需要修改或者失败时为 null
+	 */
+	public Stat getStat() {
+		return stat;
+	}
+	
+	/**
+	 * @return setData 的尝试次数
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+	
+	/**
+	 * @return BadVersion 冲突次数
+	 */
+	public int getConflicts() {
+		return conflicts;
+	}
+	
+	/**
+	 * @return 退避等待的总毫秒数
+	 */
+	public long getBackoffMillis() {
+		return backoffMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return "UpdateResult [succeeded=" + succeeded + ", attempts=" + attempts + ", conflicts=" + conflicts + ", backoffMillis="
+				+ backoffMillis + "]";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+package curator.recipes.atomic;
+
+import java.io.Closeable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.atomic.AtomicValue;
+import org.apache.curator.framework.recipes.atomic.DistributedAtomicInteger;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ThreadUtils;
+
+/**
+ * 写后合并（write-behind）的 DistributedAtomicInteger。
+ * 
+ * RecipesDistAtomicInt 中每次 add(8) 都是一次独立的 CAS 往返。对于统计类的计数，几百毫秒的延迟是可以接受的，WriteBehindCounter
+ * 先把增量累加到本地，再由后台线程一次性写入：
+ * 1、add() 只修改本地的 AtomicLong，不访问服务端；
+ * 2、每隔 flushInterval，或者本地累计的增量绝对值达到 flushThreshold 时，通过一次 DistributedAtomicInteger#add() 把累计值写入服务端；
+ * 3、写入失败（重试次数用尽或连接异常）时，把这部分增量加回本地，等待下一次写入，不会丢失；
+ * 4、连接进入 SUSPENDED 时立即尝试写入一次，close() 时同步写入剩余的增量。
+ * 
+ * 计数器节点与 DistributedAtomicInteger 完全兼容，可以和直接使用 DistributedAtomicInteger 的客户端共用同一个 path。
+ * 
+ * 注意，服务端看到的值会比实际值滞后最多一个 flushInterval；进程被强制终止时，尚未写入的增量会丢失。
+ */
+public class WriteBehindCounter implements Closeable {
+	
+	private final CuratorFramework client;
+	
+	private final DistributedAtomicInteger counter;
+	
+	private final long flushIntervalMillis;
+	
+	private final long flushThreshold;
+	
+	private final AtomicLong pending = new AtomicLong();
+	
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	
+	private final AtomicLong flushes = new AtomicLong();
+	
+	private final ScheduledExecutorService flushThread;
+	
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flushRequested.set(false);
+			try {
+				flush();
+			} catch (Exception e) {
+				// 增量已经加回本地，等待下一次写入。
+			}
+		}
+	};
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			if (newState == ConnectionState.SUSPENDED || newState == ConnectionState.RECONNECTED) {
+				requestFlush();
+			}
+		}
+	};
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 计数器节点路径
+	 * @param retryPolicy 写入时 DistributedAtomicInteger 使用的重试策略
+	 * @param flushInterval 写入间隔
+	 * @param unit flushInterval 的时间单位
+	 * @param flushThreshold 本地累计增量的绝对值达到该值时提前写入，0 表示只按间隔写入
+	 */
+	public WriteBehindCounter(CuratorFramework client, String path, RetryPolicy retryPolicy, long flushInterval, TimeUnit unit, long flushThreshold) {
+		if (flushInterval <= 0) {
+			throw new IllegalArgumentException("flushInterval must be greater than 0: " + flushInterval);
+		}
+		
+		this.client = client;
+		this.counter = new DistributedAtomicInteger(client, path, retryPolicy);
+		this.flushIntervalMillis = unit.toMillis(flushInterval);
+		this.flushThreshold = flushThreshold;
+		this.flushThread = ThreadUtils.newSingleThreadScheduledExecutor("WriteBehindCounter");
+	}
+	
+	public void start() {
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+		flushThread.scheduleWithFixedDelay(flushTask, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * 把 delta 累加到本地，不访问服务端。
+	 */
+	public void add(int delta) {
+		long total = pending.addAndGet(delta);
+		if (flushThreshold > 0 && Math.abs(total) >= flushThreshold) {
+			requestFlush();
+		}
+	}
+	
+	public void increment() {
+		add(1);
+	}
+	
+	/**
+	 * 立即把本地累计的增量写入服务端。
+	 * 
+	 * @return 是否全部写入成功；失败时增量已经加回本地
+	 */
+	public synchronized boolean flush() throws Exception {
+		long amount = pending.getAndSet(0);
+		
+		while (amount != 0) {
+			// DistributedAtomicInteger 只接受 int 增量，超出范围时分多次写入。
+			int delta = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, amount));
+			
+			AtomicValue<Integer> result;
+			try {
+				result = counter.add(delta);
+			} catch (Exception e) {
+				pending.addAndGet(amount);
+				throw e;
+			}
+			
+			if (!result.succeeded()) {
+				pending.addAndGet(amount);
+				return false;
+			}
+			
+			flushes.incrementAndGet();
+			amount -= delta;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return 服务端的值（不包含本地尚未写入的增量）
+	 */
+	public int getCommitted() throws Exception {
+		return counter.get().postValue();
+	}
+	
+	/**
+	 * @return 本地尚未写入服务端的增量
+	 */
+	public long getPending() {
+		return pending.get();
+	}
+	
+	/**
+	 * @return 写入服务端的次数
+	 */
+	public long getFlushes() {
+		return flushes.get();
+	}
+	
+	/**
+	 * 停止后台写入，并同步写入剩余的增量。
+	 */
+	@Override
+	public void close() {
+		client.getConnectionStateListenable().removeListener(connectionStateListener);
+		flushThread.shutdown();
+		
+		try {
+			flushThread.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+			flush();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void requestFlush() {
+		if (flushThread.isShutdown() || !flushRequested.compareAndSet(false, true)) {
+			return;
+		}
+		
+		try {
+			flushThread.execute(flushTask);
+		} catch (RejectedExecutionException e) {
+			// 已经关闭，剩余的增量由 close() 写入。
+		}
+	}
+}
\ No newline at end of file
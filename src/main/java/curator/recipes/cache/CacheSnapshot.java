@@ -0,0 +1,208 @@
+package curator.recipes.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * 缓存内容的本地快照文件，用于进程重启后的“热启动”。
+ * 
+ * 快照通过 MappedByteBuffer 读写：写入时先写到同目录下的临时文件，force() 之后再原子地重命名为目标文件，
+ * 所以进程在写入过程中崩溃也不会留下半个快照；读取时整个文件映射到内存中顺序解析，不经过 InputStream 的逐字节拷贝。
+ * 
+ * 文件格式（大端）：
+ * magic(int) formatVersion(int) crc32(long) | path | count(int) | count 个条目
+ * 每个条目：path、Stat 的 11 个字段、dataLength(int，-1 表示 null)、data；字符串为 length(int) + UTF-8 字节。
+ * crc32 覆盖 “|” 之后的全部内容。
+ * 
+ * 快照只是缓存的初始值，其中的数据可能已经过期，使用者需要根据 Stat 的 mzxid 与服务端对账（见 PipelinedChildrenCache）。
+ */
+public final class CacheSnapshot {
+	
+	private static final int MAGIC = 0x5A4B4353;
+	
+	private static final int FORMAT_VERSION = 1;
+	
+	private static final int HEADER_SIZE = 4 + 4 + 8;
+	
+	private static final int STAT_SIZE = 8 * 6 + 4 * 5;
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private CacheSnapshot() {
+	}
+	
+	/**
+	 * 把 path 下的 nodes 写入快照文件 file，覆盖已有的快照。
+	 */
+	public static void write(File file, String path, Collection<ChildData> nodes) throws IOException {
+		byte[] pathBytes = path.getBytes(UTF_8);
+		List<byte[]> nodePaths = new ArrayList<byte[]>(nodes.size());
+		long size = HEADER_SIZE + 4 + pathBytes.length + 4;
+		
+		for (ChildData node : nodes) {
+			byte[] nodePath = node.getPath().getBytes(UTF_8);
+			nodePaths.add(nodePath);
+			size += 4 + nodePath.length + STAT_SIZE + 4 + (node.getData() == null ? 0 : node.getData().length);
+		}
+		
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot too large: " + size + " bytes");
+		}
+		
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Cannot create directory " + parent);
+		}
+		
+		File temp = new File(parent, file.getName() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		try {
+			raf.setLength(size);
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			
+			buffer.position(HEADER_SIZE);
+			putBytes(buffer, pathBytes);
+			buffer.putInt(nodes.size());
+			
+			int i = 0;
+			for (ChildData node : nodes) {
+				putBytes(buffer, nodePaths.get(i++));
+				putStat(buffer, node.getStat());
+				
+				byte[] data = node.getData();
+				if (data == null) {
+					buffer.putInt(-1);
+				} else {
+					buffer.putInt(data.length);
+					buffer.put(data);
+				}
+			}
+			
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMAT_VERSION);
+			buffer.putLong(8, crc(buffer));
+			buffer.force();
+		} finally {
+			raf.close();
+		}
+		
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * 读取快照文件。
+	 * 
+	 * @return 快照中的节点；文件不存在、已损坏、格式版本不同或者不是 path 的快照时返回 null
+	 */
+	public static List<ChildData> read(File file, String path) throws IOException {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+		
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getLong(8) != crc(buffer)) {
+				return null;
+			}
+			
+			buffer.position(HEADER_SIZE);
+			if (!path.equals(getString(buffer))) {
+				return null;
+			}
+			
+			int count = buffer.getInt();
+			List<ChildData> nodes = new ArrayList<ChildData>(count);
+			for (int i = 0; i < count; i++) {
+				String nodePath = getString(buffer);
+				Stat stat = getStat(buffer);
+				
+				byte[] data = null;
+				int dataLength = buffer.getInt();
+				if (dataLength >= 0) {
+					data = new byte[dataLength];
+					buffer.get(data);
+				}
+				
+				nodes.add(new ChildData(nodePath, stat, data));
+			}
+			return nodes;
+		} catch (BufferUnderflowException e) {
+			return null;
+		} finally {
+			channel.close();
+		}
+	}
+	
+	private static long crc(ByteBuffer buffer) {
+		ByteBuffer body = buffer.duplicate();
+		body.position(HEADER_SIZE);
+		body.limit(body.capacity());
+		
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		while (body.hasRemaining()) {
+			int length = Math.min(chunk.length, body.remaining());
+			body.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+		return crc.getValue();
+	}
+	
+	private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+	
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+	
+	private static void putStat(ByteBuffer buffer, Stat stat) {
+		buffer.putLong(stat.getCzxid());
+		buffer.putLong(stat.getMzxid());
+		buffer.putLong(stat.getCtime());
+		buffer.putLong(stat.getMtime());
+		buffer.putLong(stat.getEphemeralOwner());
+		buffer.putLong(stat.getPzxid());
+		buffer.putInt(stat.getVersion());
+		buffer.putInt(stat.getCversion());
+		buffer.putInt(stat.getAversion());
+		buffer.putInt(stat.getDataLength());
+		buffer.putInt(stat.getNumChildren());
+	}
+	
+	private static Stat getStat(ByteBuffer buffer) {
+		Stat stat = new Stat();
+		stat.setCzxid(buffer.getLong());
+		stat.setMzxid(buffer.getLong());
+		stat.setCtime(buffer.getLong());
+		stat.setMtime(buffer.getLong());
+		stat.setEphemeralOwner(buffer.getLong());
+		stat.setPzxid(buffer.getLong());
+		stat.setVersion(buffer.getInt());
+		stat.setCversion(buffer.getInt());
+		stat.setAversion(buffer.getInt());
+		stat.setDataLength(buffer.getInt());
+		stat.setNumChildren(buffer.getInt());
+		return stat;
+	}
+}
\ No newline at end of file
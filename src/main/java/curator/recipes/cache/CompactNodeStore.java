@@ -0,0 +1,593 @@
+package curator.recipes.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * CompactTreeCache 的存储结构。
+ * 
+ * 每个节点占用一个整数下标（slot），节点的所有属性都按 slot 保存在并列的原始类型数组中，而不是为每个节点创建 ChildData、Stat 和完整路径字符串：
+ * 1、路径：每个 slot 只保存自己这一级的名字以及父节点的 slot，完整路径由公共前缀共享（即一棵前缀树）。
+ *    按（父节点 slot，名字）查找子节点使用一张开放寻址的 int 哈希表，查找过程直接在输入路径上比较，不创建子串；
+ * 2、Stat：11 个字段分别保存在 long[]/int[] 中；
+ * 3、数据：保存在堆外的 OffHeapArena 中，slot 只记录一个 long 地址，长度即 Stat 中的 dataLength。
+ * 
+ * 根节点固定占用 slot 0，名字为缓存的根路径。读操作加读锁，可以在任意线程调用；写操作加写锁。
+ */
+class CompactNodeStore {
+	
+	enum PutResult {
+		ADDED, UPDATED, UNCHANGED, NO_PARENT
+	}
+	
+	private static final int ROOT = 0;
+	
+	private static final int NONE = -1;
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final String rootPath;
+	
+	private final boolean cacheData;
+	
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private OffHeapArena arena = new OffHeapArena();
+	
+	private boolean rootPresent;
+	
+	private int size;
+	
+	private int nextSlot = 1;
+	
+	private int[] freeSlots = new int[16];
+	
+	private int freeCount;
+	
+	/*
+	 * 前缀树
+	 */
+	private String[] names;
+	
+	private int[] parents;
+	
+	private int[] firstChild;
+	
+	private int[] nextSibling;
+	
+	private int[] prevSibling;
+	
+	/*
+	 * （父节点 slot，名字）-> slot + 1，0 表示空位
+	 */
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+	
+	/*
+	 * Stat
+	 */
+	private long[] czxid;
+	
+	private long[] mzxid;
+	
+	private long[] ctime;
+	
+	private long[] mtime;
+	
+	private long[] pzxid;
+	
+	private long[] ephemeralOwner;
+	
+	private int[] version;
+	
+	private int[] cversion;
+	
+	private int[] aversion;
+	
+	private int[] dataLength;
+	
+	private int[] numChildren;
+	
+	/*
+	 * 数据在 OffHeapArena 中的地址
+	 */
+	private long[] dataAddress;
+	
+	CompactNodeStore(String rootPath, boolean cacheData) {
+		this.rootPath = rootPath;
+		this.cacheData = cacheData;
+		allocateArrays(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * 写入节点的 Stat 和数据。
+	 * 
+	 * @return ADDED：新节点；UPDATED：mzxid 发生变化；UNCHANGED：mzxid 没有变化（只更新 Stat）；NO_PARENT：父节点不在缓存中，忽略
+	 */
+	PutResult put(String path, Stat stat, byte[] data) {
+		lock.writeLock().lock();
+		try {
+			int slot;
+			boolean added = false;
+			
+			if (path.equals(rootPath)) {
+				slot = ROOT;
+				if (!rootPresent) {
+					rootPresent = true;
+					initSlot(ROOT, rootPath, NONE);
+					size++;
+					added = true;
+				}
+			} else {
+				int parent = find(path, true);
+				if (parent == NONE) {
+					return PutResult.NO_PARENT;
+				}
+				
+				int nameStart = path.lastIndexOf(ZKPaths.PATH_SEPARATOR) + 1;
+				slot = findChild(parent, path, nameStart, path.length());
+				if (slot == NONE) {
+					slot = insertChild(parent, path.substring(nameStart));
+					added = true;
+				}
+			}
+			
+			if (!added && mzxid[slot] == stat.getMzxid()) {
+				// 数据没有变化，只有 cversion、numChildren 等字段可能变化
+				writeStat(slot, stat, dataLength[slot]);
+				return PutResult.UNCHANGED;
+			}
+			
+			if (!added) {
+				arena.free(dataAddress[slot], dataLength[slot]);
+			}
+			
+			dataAddress[slot] = cacheData ? arena.allocate(data) : OffHeapArena.NULL_ADDRESS;
+			writeStat(slot, stat, stat.getDataLength());
+			
+			compactIfNeeded();
+			
+			return added ? PutResult.ADDED : PutResult.UPDATED;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 删除 path 及其所有子孙节点。
+	 * 
+	 * @return 被删除的节点，子节点排在父节点之前；path 不在缓存中时返回空列表
+	 */
+	List<ChildData> remove(String path) {
+		lock.writeLock().lock();
+		try {
+			int slot = find(path, false);
+			if (slot == NONE) {
+				return new ArrayList<ChildData>(0);
+			}
+			
+			List<ChildData> removed = new ArrayList<ChildData>();
+			removeSubtree(slot, removed);
+			return removed;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	ChildData get(String path) {
+		lock.readLock().lock();
+		try {
+			int slot = find(path, false);
+			return slot == NONE ? null : toChildData(slot, path);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return 子节点名 -> ChildData，path 不在缓存中时返回 null
+	 */
+	Map<String, ChildData> getChildren(String path) {
+		lock.readLock().lock();
+		try {
+			int slot = find(path, false);
+			if (slot == NONE) {
+				return null;
+			}
+			
+			Map<String, ChildData> children = new HashMap<String, ChildData>();
+			for (int child = firstChild[slot]; child != NONE; child = nextSibling[child]) {
+				children.put(names[child], toChildData(child, ZKPaths.makePath(path, names[child])));
+			}
+			return children;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return 子节点名，path 不在缓存中时返回 null
+	 */
+	List<String> getChildNames(String path) {
+		lock.readLock().lock();
+		try {
+			int slot = find(path, false);
+			if (slot == NONE) {
+				return null;
+			}
+			
+			List<String> children = new ArrayList<String>();
+			for (int child = firstChild[slot]; child != NONE; child = nextSibling[child]) {
+				children.add(names[child]);
+			}
+			return children;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return 缓存中所有节点的完整路径，父节点排在子节点之前
+	 */
+	List<String> getPaths() {
+		lock.readLock().lock();
+		try {
+			List<String> paths = new ArrayList<String>(size);
+			if (rootPresent) {
+				collectPaths(ROOT, rootPath, paths);
+			}
+			return paths;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return 堆外已分配的字节数
+	 */
+	long getOffHeapCapacity() {
+		lock.readLock().lock();
+		try {
+			return arena.getCapacity();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	void clear() {
+		lock.writeLock().lock();
+		try {
+			arena.release();
+			rootPresent = false;
+			size = 0;
+			nextSlot = 1;
+			freeCount = 0;
+			table = new int[INITIAL_CAPACITY * 2];
+			names = null;
+			allocateArrays(INITIAL_CAPACITY);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 在前缀树中查找 path，不创建任何子串。
+	 * 
+	 * @param parentOnly true 表示查找 path 的父节点
+	 * @return slot，不存在时返回 NONE
+	 */
+	private int find(String path, boolean parentOnly) {
+		if (!rootPresent) {
+			return NONE;
+		}
+		
+		int end = path.length();
+		if (parentOnly) {
+			end = path.lastIndexOf('/');
+			if (end == 0) {
+				// "/a" 的父节点是 "/"
+				end = 1;
+			}
+		}
+		
+		int rootLength = rootPath.length();
+		if (end < rootLength || !path.startsWith(rootPath)) {
+			return NONE;
+		}
+		
+		if (end == rootLength) {
+			return ROOT;
+		}
+		
+		int start = rootLength;
+		if (rootLength > 1) {
+			if (path.charAt(start) != '/') {
+				// 例如根节点为 /a，path 为 /ab
+				return NONE;
+			}
+			start++;
+		}
+		
+		int slot = ROOT;
+		while (slot != NONE && start < end) {
+			int next = path.indexOf('/', start);
+			if (next < 0 || next > end) {
+				next = end;
+			}
+			
+			slot = findChild(slot, path, start, next);
+			start = next + 1;
+		}
+		
+		return slot;
+	}
+	
+	private int findChild(int parent, String path, int start, int end) {
+		int length = end - start;
+		int mask = table.length - 1;
+		
+		for (int i = hash(parent, path, start, end) & mask; table[i] != 0; i = (i + 1) & mask) {
+			int slot = table[i] - 1;
+			if (parents[slot] == parent && names[slot].length() == length && path.regionMatches(start, names[slot], 0, length)) {
+				return slot;
+			}
+		}
+		
+		return NONE;
+	}
+	
+	private int insertChild(int parent, String name) {
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			if (nextSlot == names.length) {
+				allocateArrays(names.length * 2);
+			}
+			slot = nextSlot++;
+		}
+		
+		initSlot(slot, name, parent);
+		
+		// 挂到父节点的子节点链表头部
+		int head = firstChild[parent];
+		nextSibling[slot] = head;
+		if (head != NONE) {
+			prevSibling[head] = slot;
+		}
+		firstChild[parent] = slot;
+		
+		size++;
+		if (size * 2 > table.length) {
+			// rehash 遍历所有已初始化的槽位，新槽位已经在其中，不能再插入一次
+			rehash(table.length * 2);
+		} else {
+			tableInsert(slot);
+		}
+		
+		return slot;
+	}
+	
+	private void removeSubtree(int slot, List<ChildData> removed) {
+		// 后序遍历：先删除子节点，再删除自己
+		while (firstChild[slot] != NONE) {
+			removeSubtree(firstChild[slot], removed);
+		}
+		
+		removed.add(toChildData(slot, pathOf(slot)));
+		arena.free(dataAddress[slot], dataLength[slot]);
+		
+		if (slot == ROOT) {
+			rootPresent = false;
+			size--;
+			return;
+		}
+		
+		int parent = parents[slot];
+		int prev = prevSibling[slot];
+		int next = nextSibling[slot];
+		if (prev != NONE) {
+			nextSibling[prev] = next;
+		} else {
+			firstChild[parent] = next;
+		}
+		if (next != NONE) {
+			prevSibling[next] = prev;
+		}
+		
+		tableRemove(slot);
+		names[slot] = null;
+		size--;
+		
+		if (freeCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		}
+		freeSlots[freeCount++] = slot;
+	}
+	
+	private void tableInsert(int slot) {
+		int mask = table.length - 1;
+		int i = hash(slot) & mask;
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		table[i] = slot + 1;
+	}
+	
+	/**
+	 * 线性探测的删除：删除后把同一探测序列中后面的元素前移，保证查找不会提前遇到空位。
+	 */
+	private void tableRemove(int slot) {
+		int mask = table.length - 1;
+		int i = hash(slot) & mask;
+		while (table[i] != slot + 1) {
+			i = (i + 1) & mask;
+		}
+		table[i] = 0;
+		
+		for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+			int home = hash(table[j] - 1) & mask;
+			boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+			if (!between) {
+				table[i] = table[j];
+				table[j] = 0;
+				i = j;
+			}
+		}
+	}
+	
+	private void rehash(int tableSize) {
+		table = new int[tableSize];
+		for (int slot = 1; slot < nextSlot; slot++) {
+			if (names[slot] != null) {
+				tableInsert(slot);
+			}
+		}
+	}
+	
+	private int hash(int slot) {
+		return mix(parents[slot] * 31 + names[slot].hashCode());
+	}
+	
+	/**
+	 * 与 hash(int) 的结果一致，等价于对 path.substring(start, end) 计算 String#hashCode()。
+	 */
+	private static int hash(int parent, String path, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + path.charAt(i);
+		}
+		return mix(parent * 31 + h);
+	}
+	
+	private static int mix(int h) {
+		h *= 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+	
+	private void initSlot(int slot, String name, int parent) {
+		names[slot] = name;
+		parents[slot] = parent;
+		firstChild[slot] = NONE;
+		nextSibling[slot] = NONE;
+		prevSibling[slot] = NONE;
+		dataAddress[slot] = OffHeapArena.NULL_ADDRESS;
+		dataLength[slot] = 0;
+	}
+	
+	private void writeStat(int slot, Stat stat, int length) {
+		czxid[slot] = stat.getCzxid();
+		mzxid[slot] = stat.getMzxid();
+		ctime[slot] = stat.getCtime();
+		mtime[slot] = stat.getMtime();
+		pzxid[slot] = stat.getPzxid();
+		ephemeralOwner[slot] = stat.getEphemeralOwner();
+		version[slot] = stat.getVersion();
+		cversion[slot] = stat.getCversion();
+		aversion[slot] = stat.getAversion();
+		dataLength[slot] = length;
+		numChildren[slot] = stat.getNumChildren();
+	}
+	
+	private ChildData toChildData(int slot, String path) {
+		Stat stat = new Stat(czxid[slot], mzxid[slot], ctime[slot], mtime[slot], version[slot], cversion[slot], aversion[slot],
+				ephemeralOwner[slot], dataLength[slot], numChildren[slot], pzxid[slot]);
+		return new ChildData(path, stat, arena.read(dataAddress[slot], dataLength[slot]));
+	}
+	
+	private String pathOf(int slot) {
+		if (slot == ROOT) {
+			return rootPath;
+		}
+		
+		List<String> parts = new ArrayList<String>();
+		for (int current = slot; current != ROOT; current = parents[current]) {
+			parts.add(names[current]);
+		}
+		
+		StringBuilder path = new StringBuilder(rootPath);
+		for (int i = parts.size() - 1; i >= 0; i--) {
+			if (path.charAt(path.length() - 1) != '/') {
+				path.append('/');
+			}
+			path.append(parts.get(i));
+		}
+		return path.toString();
+	}
+	
+	private void collectPaths(int slot, String path, List<String> paths) {
+		paths.add(path);
+		for (int child = firstChild[slot]; child != NONE; child = nextSibling[child]) {
+			collectPaths(child, ZKPaths.makePath(path, names[child]), paths);
+		}
+	}
+	
+	/**
+	 * 浪费的堆外空间过多时，把存活的数据复制到新的 OffHeapArena 中。
+	 */
+	private void compactIfNeeded() {
+		if (!arena.shouldCompact()) {
+			return;
+		}
+		
+		OffHeapArena compacted = new OffHeapArena(arena.getChunkSize());
+		for (int slot = 0; slot < nextSlot; slot++) {
+			boolean present = slot == ROOT ? rootPresent : names[slot] != null;
+			if (present && dataAddress[slot] != OffHeapArena.NULL_ADDRESS) {
+				dataAddress[slot] = compacted.allocate(arena.read(dataAddress[slot], dataLength[slot]));
+			}
+		}
+		
+		arena.release();
+		arena = compacted;
+	}
+	
+	/**
+	 * names 为 null 时重新分配所有数组，否则把所有数组扩容到 capacity。
+	 */
+	private void allocateArrays(int capacity) {
+		boolean fresh = names == null;
+		
+		names = fresh ? new String[capacity] : Arrays.copyOf(names, capacity);
+		parents = grow(parents, capacity, fresh);
+		firstChild = grow(firstChild, capacity, fresh);
+		nextSibling = grow(nextSibling, capacity, fresh);
+		prevSibling = grow(prevSibling, capacity, fresh);
+		czxid = grow(czxid, capacity, fresh);
+		mzxid = grow(mzxid, capacity, fresh);
+		ctime = grow(ctime, capacity, fresh);
+		mtime = grow(mtime, capacity, fresh);
+		pzxid = grow(pzxid, capacity, fresh);
+		ephemeralOwner = grow(ephemeralOwner, capacity, fresh);
+		version = grow(version, capacity, fresh);
+		cversion = grow(cversion, capacity, fresh);
+		aversion = grow(aversion, capacity, fresh);
+		dataLength = grow(dataLength, capacity, fresh);
+		numChildren = grow(numChildren, capacity, fresh);
+		dataAddress = grow(dataAddress, capacity, fresh);
+	}
+	
+	private static int[] grow(int[] array, int capacity, boolean fresh) {
+		return fresh ? new int[capacity] : Arrays.copyOf(array, capacity);
+	}
+	
+	private static long[] grow(long[] array, int capacity, boolean fresh) {
+		return fresh ? new long[capacity] : Arrays.copyOf(array, capacity);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,338 @@
+package curator.recipes.cache;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.listen.Listenable;
+import org.apache.curator.framework.listen.ListenerContainer;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+
+import com.google.common.base.Function;
+
+/**
+ * 面向超大子树的紧凑型 TreeCache。
+ * 
+ * NodeCacheSample 和 PathChildrenCacheSample 中的 Cache 为每个节点保存一个完整的 ChildData：路径字符串、Stat 对象以及 byte[] 数据，
+ * 百万级节点的注册表会占用数 GB 的堆内存。CompactTreeCache 监听 path 下的整棵子树，语义与 Curator 的 TreeCache 相同
+ * （同样使用 TreeCacheListener 和 TreeCacheEvent），但节点保存在 CompactNodeStore 中：
+ * 1、路径以前缀树的形式保存，每个节点只保存自己这一级的名字；
+ * 2、Stat 的各个字段保存在原始类型数组中；
+ * 3、节点数据保存在堆外内存中。
+ * 
+ * getCurrentData()/getCurrentChildren() 每次调用都会从紧凑结构中重新组装出 ChildData，适合“常驻数据量大、读取频率适中”的场景。
+ * 
+ * 事件：
+ * NODE_ADDED / NODE_UPDATED / NODE_REMOVED：节点新增、数据变更（mzxid 变化）、删除，删除子树时每个子孙节点各触发一次；
+ * INITIALIZED：启动后第一次把整棵子树加载完成；
+ * CONNECTION_SUSPENDED / CONNECTION_RECONNECTED / CONNECTION_LOST：连接状态变化，重新连接后会重新同步整棵子树。
+ * 
+ * 所有的服务端回调和 watch 通知都在 Curator 的事件线程中按顺序处理，监听器也在该线程中被调用。
+ */
+public class CompactTreeCache implements Closeable {
+	
+	private final CuratorFramework client;
+	
+	private final String path;
+	
+	private final CompactNodeStore store;
+	
+	private final ListenerContainer<TreeCacheListener> listeners = new ListenerContainer<TreeCacheListener>();
+	
+	private final AtomicBoolean started = new AtomicBoolean();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	private final AtomicBoolean initialized = new AtomicBoolean();
+	
+	/*
+	 * 尚未返回的后台请求数，第一次降为 0 时发布 INITIALIZED。
+	 */
+	private final AtomicInteger outstanding = new AtomicInteger();
+	
+	private final CuratorWatcher watcher = new CuratorWatcher() {
+		@Override
+		public void process(WatchedEvent event) throws Exception {
+			if (closed.get() || event.getPath() == null) {
+				return;
+			}
+			
+			switch (event.getType()) {
+			case NodeCreated:
+			case NodeDataChanged:
+				fetchData(event.getPath());
+				break;
+			case NodeChildrenChanged:
+				fetchChildren(event.getPath());
+				break;
+			case NodeDeleted:
+				removed(event.getPath());
+				if (event.getPath().equals(path)) {
+					checkExists(path);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	private final BackgroundCallback callback = new BackgroundCallback() {
+		@Override
+		public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+			try {
+				if (!closed.get()) {
+					process(event);
+				}
+			} finally {
+				if (outstanding.decrementAndGet() == 0 && !closed.get() && initialized.compareAndSet(false, true)) {
+					publish(new TreeCacheEvent(TreeCacheEvent.Type.INITIALIZED, null));
+				}
+			}
+		}
+	};
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			switch (newState) {
+			case SUSPENDED:
+				publish(new TreeCacheEvent(TreeCacheEvent.Type.CONNECTION_SUSPENDED, null));
+				break;
+			case LOST:
+				publish(new TreeCacheEvent(TreeCacheEvent.Type.CONNECTION_LOST, null));
+				break;
+			case RECONNECTED:
+				publish(new TreeCacheEvent(TreeCacheEvent.Type.CONNECTION_RECONNECTED, null));
+				resync();
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 子树的根节点
+	 * @param cacheData 是否缓存节点数据，false 时只缓存节点和 Stat
+	 */
+	public CompactTreeCache(CuratorFramework client, String path, boolean cacheData) {
+		this.client = client;
+		this.path = path;
+		this.store = new CompactNodeStore(path, cacheData);
+	}
+	
+	public CompactTreeCache start() throws Exception {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Cache has already been started");
+		}
+		
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+		fetchData(path);
+		return this;
+	}
+	
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			client.getConnectionStateListenable().removeListener(connectionStateListener);
+			listeners.clear();
+			store.clear();
+		}
+	}
+	
+	public Listenable<TreeCacheListener> getListenable() {
+		return listeners;
+	}
+	
+	/**
+	 * @return fullPath 的当前数据，不在缓存中时返回 null
+	 */
+	public ChildData getCurrentData(String fullPath) {
+		return store.get(fullPath);
+	}
+	
+	/**
+	 * @return 子节点名 -> ChildData，fullPath 不在缓存中时返回 null
+	 */
+	public Map<String, ChildData> getCurrentChildren(String fullPath) {
+		return store.getChildren(fullPath);
+	}
+	
+	/**
+	 * @return 缓存的节点数
+	 */
+	public int size() {
+		return store.size();
+	}
+	
+	/**
+	 * @return 节点数据占用的堆外内存字节数
+	 */
+	public long getOffHeapBytes() {
+		return store.getOffHeapCapacity();
+	}
+	
+	private void process(CuratorEvent event) throws Exception {
+		String eventPath = event.getPath();
+		int resultCode = event.getResultCode();
+		
+		if (resultCode == KeeperException.Code.NONODE.intValue()) {
+			removed(eventPath);
+			if (eventPath.equals(path)) {
+				// 根节点不存在时注册 exists watch，等待它被创建
+				checkExists(path);
+			}
+			return;
+		}
+		
+		if (resultCode != KeeperException.Code.OK.intValue()) {
+			// 连接类错误：重新连接后会通过 resync() 重新同步
+			return;
+		}
+		
+		switch (event.getType()) {
+		case EXISTS:
+			if (event.getStat() != null) {
+				fetchData(eventPath);
+			}
+			break;
+		case GET_DATA:
+			switch (store.put(eventPath, event.getStat(), event.getData())) {
+			case ADDED:
+				publish(TreeCacheEvent.Type.NODE_ADDED, eventPath);
+				fetchChildren(eventPath);
+				break;
+			case UPDATED:
+				publish(TreeCacheEvent.Type.NODE_UPDATED, eventPath);
+				break;
+			default:
+				break;
+			}
+			break;
+		case CHILDREN:
+			childrenChanged(eventPath, event.getChildren());
+			break;
+		default:
+			break;
+		}
+	}
+	
+	private void childrenChanged(String parentPath, List<String> children) throws Exception {
+		List<String> cached = store.getChildNames(parentPath);
+		if (cached == null) {
+			return;
+		}
+		
+		Set<String> current = new HashSet<String>(children);
+		for (String name : cached) {
+			if (!current.contains(name)) {
+				removed(ZKPaths.makePath(parentPath, name));
+			}
+		}
+		
+		Set<String> known = new HashSet<String>(cached);
+		for (String name : children) {
+			if (!known.contains(name)) {
+				fetchData(ZKPaths.makePath(parentPath, name));
+			}
+		}
+	}
+	
+	private void removed(String removedPath) {
+		for (ChildData data : store.remove(removedPath)) {
+			publish(new TreeCacheEvent(TreeCacheEvent.Type.NODE_REMOVED, data));
+		}
+	}
+	
+	/**
+	 * 重新连接后，会话可能已经重建、watch 可能已经丢失，对缓存中的每个节点重新读取数据和子节点列表。
+	 */
+	private void resync() {
+		if (closed.get()) {
+			return;
+		}
+		
+		List<String> paths = store.getPaths();
+		try {
+			if (paths.isEmpty()) {
+				fetchData(path);
+				return;
+			}
+			
+			for (String cachedPath : paths) {
+				fetchData(cachedPath);
+				fetchChildren(cachedPath);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void fetchData(String fullPath) throws Exception {
+		outstanding.incrementAndGet();
+		try {
+			client.getData().usingWatcher(watcher).inBackground(callback).forPath(fullPath);
+		} catch (Exception e) {
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	private void fetchChildren(String fullPath) throws Exception {
+		outstanding.incrementAndGet();
+		try {
+			client.getChildren().usingWatcher(watcher).inBackground(callback).forPath(fullPath);
+		} catch (Exception e) {
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	private void checkExists(String fullPath) throws Exception {
+		outstanding.incrementAndGet();
+		try {
+			client.checkExists().usingWatcher(watcher).inBackground(callback).forPath(fullPath);
+		} catch (Exception e) {
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	private void publish(TreeCacheEvent.Type type, String fullPath) {
+		ChildData data = store.get(fullPath);
+		if (data != null) {
+			publish(new TreeCacheEvent(type, data));
+		}
+	}
+	
+	private void publish(final TreeCacheEvent event) {
+		listeners.forEach(new Function<TreeCacheListener, Void>() {
+			@Override
+			public Void apply(TreeCacheListener listener) {
+				try {
+					listener.childEvent(client, event);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				return null;
+			}
+		});
+	}
+}
\ No newline at end of file
@@ -0,0 +1,212 @@
+package curator.recipes.cache;
+
+import java.io.Closeable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.curator.utils.ThreadUtils;
+
+/**
+ * 合并通知的 NodeCacheListener。
+ * 
+ * NodeCacheSample 中节点每变化一次就回调一次 nodeChanged()，而且是在 Curator 的事件线程中执行的；节点每秒被更新几百次时，
+ * 慢的监听器会拖住事件线程，后面的通知在队列中无限堆积。DebouncedNodeCacheListener 本身很轻：nodeChanged() 只记下
+ * cache.getCurrentData() 的最新值，然后在自己的单线程中把最新值交给 Listener：
+ * 1、window：收到第一个通知后再等待 window 才投递，这期间的通知合并为一次（只投递最后一个 ChildData）；
+ * 2、minInterval：相邻两次投递之间至少间隔 minInterval，即投递频率不超过 1 / minInterval；
+ * 两者可以同时使用，为 0 表示不限制。投递期间到达的通知同样会被合并，Listener 不会被并发调用。
+ * 
+ * 用法：
+ * DebouncedNodeCacheListener listener = DebouncedNodeCacheListener.withMaxRate(cache, delegate, 10);
+ * cache.getListenable().addListener(listener);
+ * ...
+ * listener.close();
+ * 
+ * 节点被删除时投递的 ChildData 为 null（与 NodeCache.getCurrentData() 相同）。
+ */
+public class DebouncedNodeCacheListener implements NodeCacheListener, Closeable {
+	
+	/**
+	 * 接收合并后的通知。
+	 */
+	public interface Listener {
+		
+		/**
+		 * @param data 节点的最新数据，节点不存在时为 null
+		 */
+		void nodeChanged(ChildData data) throws Exception;
+	}
+	
+	private final NodeCache cache;
+	
+	private final Listener listener;
+	
+	private final long windowNanos;
+	
+	private final long minIntervalNanos;
+	
+	private final ScheduledExecutorService deliveryThread;
+	
+	/*
+	 * 尚未投递的最新数据，被替换一次计为合并一次。
+	 */
+	private final AtomicReference<Latest> latest = new AtomicReference<Latest>();
+	
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	private final AtomicLong received = new AtomicLong();
+	
+	private final AtomicLong delivered = new AtomicLong();
+	
+	private final AtomicLong merged = new AtomicLong();
+	
+	private final AtomicLong dropped = new AtomicLong();
+	
+	private volatile long lastDeliveryNanos;
+	
+	private final Runnable deliveryTask = new Runnable() {
+		@Override
+		public void run() {
+			// 先清除标志再取值：取值之后到达的通知会重新调度一次投递
+			scheduled.set(false);
+			
+			Latest data = latest.getAndSet(null);
+			if (data == null || closed.get()) {
+				return;
+			}
+			
+			lastDeliveryNanos = System.nanoTime();
+			delivered.incrementAndGet();
+			try {
+				listener.nodeChanged(data.data);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	};
+	
+	/**
+	 * @param cache 被监听的 NodeCache
+	 * @param listener 接收合并后通知的监听器
+	 * @param window 收到第一个通知后等待的时间，0 表示立即投递
+	 * @param minInterval 相邻两次投递的最小间隔，0 表示不限制
+	 * @param unit window 和 minInterval 的时间单位
+	 */
+	public DebouncedNodeCacheListener(NodeCache cache, Listener listener, long window, long minInterval, TimeUnit unit) {
+		if (window < 0 || minInterval < 0) {
+			throw new IllegalArgumentException("window and minInterval must not be negative");
+		}
+		
+		this.cache = cache;
+		this.listener = listener;
+		this.windowNanos = unit.toNanos(window);
+		this.minIntervalNanos = unit.toNanos(minInterval);
+		this.lastDeliveryNanos = System.nanoTime() - minIntervalNanos;
+		this.deliveryThread = ThreadUtils.newSingleThreadScheduledExecutor("DebouncedNodeCacheListener");
+	}
+	
+	/**
+	 * 收到第一个通知后等待 window，合并这期间的所有通知。
+	 */
+	public static DebouncedNodeCacheListener withWindow(NodeCache cache, Listener listener, long window, TimeUnit unit) {
+		return new DebouncedNodeCacheListener(cache, listener, window, 0, unit);
+	}
+	
+	/**
+	 * 每秒最多投递 maxPerSecond 次，空闲后的第一个通知立即投递。
+	 */
+	public static DebouncedNodeCacheListener withMaxRate(NodeCache cache, Listener listener, double maxPerSecond) {
+		if (maxPerSecond <= 0) {
+			throw new IllegalArgumentException("maxPerSecond must be greater than 0: " + maxPerSecond);
+		}
+		return new DebouncedNodeCacheListener(cache, listener, 0, (long) (TimeUnit.SECONDS.toNanos(1) / maxPerSecond), TimeUnit.NANOSECONDS);
+	}
+	
+	@Override
+	public void nodeChanged() throws Exception {
+		received.incrementAndGet();
+		if (closed.get()) {
+			dropped.incrementAndGet();
+			return;
+		}
+		
+		if (latest.getAndSet(new Latest(cache.getCurrentData())) != null) {
+			merged.incrementAndGet();
+		}
+		
+		if (!scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		
+		long delay = Math.max(windowNanos, lastDeliveryNanos + minIntervalNanos - System.nanoTime());
+		try {
+			deliveryThread.schedule(deliveryTask, Math.max(0, delay), TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// 已经关闭
+			scheduled.set(false);
+		}
+	}
+	
+	/**
+	 * @return 收到的 nodeChanged() 通知数
+	 */
+	public long getReceivedCount() {
+		return received.get();
+	}
+	
+	/**
+	 * @return 投递给 Listener 的次数
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+	
+	/**
+	 * @return 被后来的通知替换、没有单独投递的通知数
+	 */
+	public long getMergedCount() {
+		return merged.get();
+	}
+	
+	/**
+	 * @return 关闭之后到达、或者关闭时尚未投递而被丢弃的通知数
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	/**
+	 * 从 NodeCache 中移除自己并停止投递，尚未投递的最新数据会被丢弃。
+	 */
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			cache.getListenable().removeListener(this);
+			deliveryThread.shutdownNow();
+			if (latest.getAndSet(null) != null) {
+				dropped.incrementAndGet();
+			}
+		}
+	}
+	
+	/*
+	 * ChildData 可能为 null（节点不存在），用一层包装与“没有待投递的数据”区分开。
+	 */
+	private static final class Latest {
+		
+		final ChildData data;
+		
+		Latest(ChildData data) {
+			this.data = data;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,397 @@
+package curator.recipes.cache;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.listen.Listenable;
+import org.apache.curator.framework.listen.ListenerContainer;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * 延迟加载数据的 PathChildrenCache。
+ * 
+ * PathChildrenCacheSample 中的 PathChildrenCache(client, path, true) 会读取并常驻每个子节点的数据，而大多数使用者只会读取其中
+ * 一小部分热点节点。LazyDataChildrenCache 把“子节点列表”和“子节点数据”分开：
+ * 1、常驻的只有子节点列表以及每个子节点的 Stat：启动时只对每个子节点调用 checkExists()（同时注册 exists watch），不传输数据；
+ * 2、第一次调用 getData() 时才从服务端读取数据，放入一个按字节数限制容量的 LRU 中，超出 maxPayloadBytes 时淘汰最久未使用的数据；
+ * 3、exists watch 在数据变更时同样会触发，此时把 LRU 中对应的数据作废，并更新 Stat。LRU 中的每份数据都记录了读取时的 mzxid，
+ *    与当前 Stat 的 mzxid 不一致时视为未命中，所以即使 watch 通知和 getData() 并发，也不会读到旧数据。
+ * 
+ * 事件语义与 PathChildrenCache 相同（CHILD_ADDED/CHILD_UPDATED/CHILD_REMOVED/INITIALIZED 以及连接状态事件），
+ * 但事件中 ChildData 的数据总是 null，需要数据时调用 getData()。
+ */
+public class LazyDataChildrenCache implements Closeable {
+	
+	public static final long DEFAULT_MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+	
+	private final CuratorFramework client;
+	
+	private final String path;
+	
+	/*
+	 * 子节点完整路径 -> Stat
+	 */
+	private final ConcurrentMap<String, Stat> children = new ConcurrentHashMap<String, Stat>();
+	
+	private final Cache<String, Payload> payloads;
+	
+	private final ListenerContainer<PathChildrenCacheListener> listeners = new ListenerContainer<PathChildrenCacheListener>();
+	
+	private final AtomicBoolean started = new AtomicBoolean();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	private final AtomicBoolean initialized = new AtomicBoolean();
+	
+	private final AtomicInteger outstanding = new AtomicInteger();
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	private final CuratorWatcher watcher = new CuratorWatcher() {
+		@Override
+		public void process(WatchedEvent event) throws Exception {
+			String eventPath = event.getPath();
+			if (closed.get() || eventPath == null) {
+				return;
+			}
+			
+			if (eventPath.equals(path)) {
+				if (event.getType() == EventType.NodeCreated || event.getType() == EventType.NodeChildrenChanged) {
+					refreshChildren();
+				}
+				return;
+			}
+			
+			switch (event.getType()) {
+			case NodeDataChanged:
+				payloads.invalidate(eventPath);
+				refreshStat(eventPath);
+				break;
+			case NodeDeleted:
+				removed(eventPath);
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	private final BackgroundCallback callback = new BackgroundCallback() {
+		@Override
+		public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+			try {
+				if (!closed.get()) {
+					process(event);
+				}
+			} finally {
+				if (outstanding.decrementAndGet() == 0 && !closed.get() && initialized.compareAndSet(false, true)) {
+					publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.INITIALIZED, null));
+				}
+			}
+		}
+	};
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			switch (newState) {
+			case SUSPENDED:
+				publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CONNECTION_SUSPENDED, null));
+				break;
+			case LOST:
+				publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CONNECTION_LOST, null));
+				break;
+			case RECONNECTED:
+				publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CONNECTION_RECONNECTED, null));
+				try {
+					refreshChildren();
+					for (String childPath : children.keySet()) {
+						refreshStat(childPath);
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	public LazyDataChildrenCache(CuratorFramework client, String path) {
+		this(client, path, DEFAULT_MAX_PAYLOAD_BYTES);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 父节点路径
+	 * @param maxPayloadBytes LRU 中缓存的数据总字节数上限
+	 */
+	public LazyDataChildrenCache(CuratorFramework client, String path, long maxPayloadBytes) {
+		this.client = client;
+		this.path = path;
+		this.payloads = CacheBuilder.newBuilder()
+		.maximumWeight(maxPayloadBytes)
+		.weigher(new Weigher<String, Payload>() {
+			@Override
+			public int weigh(String key, Payload value) {
+				return value.data == null ? 0 : value.data.length;
+			}
+		})
+		.build();
+	}
+	
+	public void start() throws Exception {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Cache has already been started");
+		}
+		
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+		refreshChildren();
+	}
+	
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			client.getConnectionStateListenable().removeListener(connectionStateListener);
+			listeners.clear();
+			children.clear();
+			payloads.invalidateAll();
+		}
+	}
+	
+	public Listenable<PathChildrenCacheListener> getListenable() {
+		return listeners;
+	}
+	
+	/**
+	 * @return 所有子节点（按路径排序），ChildData 中不包含数据
+	 */
+	public List<ChildData> getCurrentData() {
+		List<ChildData> result = new ArrayList<ChildData>(children.size());
+		for (Map.Entry<String, Stat> child : children.entrySet()) {
+			result.add(new ChildData(child.getKey(), child.getValue(), null));
+		}
+		Collections.sort(result);
+		return result;
+	}
+	
+	/**
+	 * @return fullPath 的 Stat，不包含数据；不是当前子节点时返回 null
+	 */
+	public ChildData getCurrentData(String fullPath) {
+		Stat stat = children.get(fullPath);
+		return stat == null ? null : new ChildData(fullPath, stat, null);
+	}
+	
+	/**
+	 * 读取子节点数据：LRU 命中时直接返回，否则从服务端读取并放入 LRU。
+	 * 
+	 * @return 节点数据；fullPath 不是当前子节点，或者刚刚被删除时返回 null
+	 */
+	public byte[] getData(String fullPath) throws Exception {
+		Stat stat = children.get(fullPath);
+		if (stat == null) {
+			return null;
+		}
+		
+		Payload payload = payloads.getIfPresent(fullPath);
+		if (payload != null && payload.mzxid == stat.getMzxid()) {
+			hits.incrementAndGet();
+			return payload.data;
+		}
+		
+		misses.incrementAndGet();
+		
+		Stat loadedStat = new Stat();
+		byte[] data;
+		try {
+			data = client.getData().storingStatIn(loadedStat).forPath(fullPath);
+		} catch (KeeperException.NoNodeException e) {
+			return null;
+		}
+		
+		// 只缓存不比当前 Stat 旧的数据；watch 通知到达之前读到的新数据同样可以缓存，下一次 getData() 时以 mzxid 是否一致为准。
+		Stat current = children.get(fullPath);
+		if (current != null && loadedStat.getMzxid() >= current.getMzxid()) {
+			payloads.put(fullPath, new Payload(loadedStat.getMzxid(), data));
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * @return LRU 命中次数
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return 需要访问服务端的 getData() 次数
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return LRU 中缓存的数据份数
+	 */
+	public long getCachedPayloads() {
+		return payloads.size();
+	}
+	
+	private void process(CuratorEvent event) throws Exception {
+		String eventPath = event.getPath();
+		int resultCode = event.getResultCode();
+		
+		if (resultCode == KeeperException.Code.NONODE.intValue()) {
+			if (eventPath.equals(path)) {
+				// 父节点不存在时注册 exists watch，等待它被创建
+				refreshStat(path);
+			} else {
+				removed(eventPath);
+			}
+			return;
+		}
+		
+		if (resultCode != KeeperException.Code.OK.intValue()) {
+			return;
+		}
+		
+		switch (event.getType()) {
+		case CHILDREN:
+			childrenChanged(event.getChildren());
+			break;
+		case EXISTS:
+			if (eventPath.equals(path)) {
+				if (event.getStat() != null) {
+					refreshChildren();
+				}
+			} else if (event.getStat() == null) {
+				removed(eventPath);
+			} else {
+				statChanged(eventPath, event.getStat());
+			}
+			break;
+		default:
+			break;
+		}
+	}
+	
+	private void childrenChanged(List<String> names) throws Exception {
+		Set<String> current = new HashSet<String>(names.size());
+		for (String name : names) {
+			current.add(ZKPaths.makePath(path, name));
+		}
+		
+		for (String childPath : children.keySet()) {
+			if (!current.contains(childPath)) {
+				removed(childPath);
+			}
+		}
+		
+		for (String childPath : current) {
+			if (!children.containsKey(childPath)) {
+				refreshStat(childPath);
+			}
+		}
+	}
+	
+	private void statChanged(String childPath, Stat stat) {
+		Stat old = children.put(childPath, stat);
+		if (old == null) {
+			publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_ADDED, new ChildData(childPath, stat, null)));
+		} else if (old.getMzxid() != stat.getMzxid()) {
+			payloads.invalidate(childPath);
+			publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED, new ChildData(childPath, stat, null)));
+		}
+	}
+	
+	private void removed(String childPath) {
+		Stat old = children.remove(childPath);
+		payloads.invalidate(childPath);
+		if (old != null) {
+			publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_REMOVED, new ChildData(childPath, old, null)));
+		}
+	}
+	
+	private void refreshChildren() throws Exception {
+		outstanding.incrementAndGet();
+		try {
+			client.getChildren().usingWatcher(watcher).inBackground(callback).forPath(path);
+		} catch (Exception e) {
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	/**
+	 * 读取节点的 Stat，同时注册 exists watch（节点创建、数据变更和删除都会触发）。
+	 */
+	private void refreshStat(String fullPath) throws Exception {
+		outstanding.incrementAndGet();
+		try {
+			client.checkExists().usingWatcher(watcher).inBackground(callback).forPath(fullPath);
+		} catch (Exception e) {
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	private void publish(final PathChildrenCacheEvent event) {
+		listeners.forEach(new Function<PathChildrenCacheListener, Void>() {
+			@Override
+			public Void apply(PathChildrenCacheListener listener) {
+				try {
+					listener.childEvent(client, event);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				return null;
+			}
+		});
+	}
+	
+	private static final class Payload {
+		
+		final long mzxid;
+		
+		final byte[] data;
+		
+		Payload(long mzxid, byte[] data) {
+			this.mzxid = mzxid;
+			this.data = data;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+package curator.recipes.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外的节点数据区。
+ * 
+ * 节点数据依次追加到若干个 DirectByteBuffer（chunk）中，每份数据用一个 long 地址表示：高 32 位是 chunk 下标，低 32 位是 chunk 内偏移。
+ * 数据被覆盖或删除时只记录浪费的字节数，不回收空间，由 CompactNodeStore 在浪费过多时把存活的数据复制到一个新的 OffHeapArena 中。
+ * 
+ * 超过 chunkSize 的数据单独占用一个 chunk。
+ * 
+ * 该类不是线程安全的，由调用者加锁。
+ */
+class OffHeapArena {
+	
+	static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+	
+	static final long NULL_ADDRESS = -1;
+	
+	private final int chunkSize;
+	
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	
+	private ByteBuffer current;
+	
+	private int currentIndex;
+	
+	private long capacity;
+	
+	private long used;
+	
+	private long wasted;
+	
+	OffHeapArena() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+	
+	OffHeapArena(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * 复制 data 到堆外。
+	 * 
+	 * @return 数据地址，data 为 null 时返回 NULL_ADDRESS
+	 */
+	long allocate(byte[] data) {
+		if (data == null) {
+			return NULL_ADDRESS;
+		}
+		
+		int index;
+		if (data.length > chunkSize) {
+			index = newChunk(data.length);
+		} else {
+			if (current == null || current.remaining() < data.length) {
+				currentIndex = newChunk(chunkSize);
+				current = chunks.get(currentIndex);
+			}
+			index = currentIndex;
+		}
+		
+		ByteBuffer chunk = chunks.get(index);
+		int offset = chunk.position();
+		chunk.put(data);
+		used += data.length;
+		
+		return ((long) index << 32) | offset;
+	}
+	
+	/**
+	 * @return address 处长度为 length 的数据的副本
+	 */
+	byte[] read(long address, int length) {
+		if (address == NULL_ADDRESS) {
+			return null;
+		}
+		
+		byte[] data = new byte[length];
+		ByteBuffer view = chunks.get((int) (address >>> 32)).duplicate();
+		view.position((int) address);
+		view.get(data);
+		return data;
+	}
+	
+	/**
+	 * 标记 address 处长度为 length 的数据已经不再使用。
+	 */
+	void free(long address, int length) {
+		if (address != NULL_ADDRESS) {
+			wasted += length;
+		}
+	}
+	
+	/**
+	 * @return 已经分配的堆外内存
+	 */
+	long getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * @return 存活数据占用的字节数
+	 */
+	long getLiveBytes() {
+		return used - wasted;
+	}
+	
+	/**
+	 * @return 是否值得把存活数据复制到新的 OffHeapArena 中：浪费的空间超过一个 chunk，并且超过存活数据的大小
+	 */
+	boolean shouldCompact() {
+		return wasted > chunkSize && wasted > used - wasted;
+	}
+	
+	int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * 释放所有 chunk 的引用，DirectByteBuffer 占用的内存在下一次 GC 时回收。
+	 */
+	void release() {
+		chunks.clear();
+		current = null;
+		capacity = 0;
+		used = 0;
+		wasted = 0;
+	}
+	
+	/**
+	 * @return 新 chunk 的下标
+	 */
+	private int newChunk(int size) {
+		chunks.add(ByteBuffer.allocateDirect(size));
+		capacity += size;
+		return chunks.size() - 1;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,584 @@
+package curator.recipes.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.listen.Listenable;
+import org.apache.curator.framework.listen.ListenerContainer;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ThreadUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Function;
+
+/**
+ * 初始加载流水线化的 PathChildrenCache。
+ * 
+ * PathChildrenCacheSample 中以 StartMode.BUILD_INITIAL_CACHE 启动的 PathChildrenCache 会逐个同步读取子节点的数据，每个子节点一次网络往返，
+ * 目录下有几万个子节点时重启一次需要几十秒。PipelinedChildrenCache 的 start() 同样阻塞到初始数据加载完成，但是：
+ * 1、对所有子节点异步发出 getData()（同时注册数据 watch），同时在途的请求数不超过 maxInFlight，窗口已满时 start() 阻塞等待（背压）；
+ * 2、初始加载期间不发布 CHILD_ADDED 事件，全部加载完成后只发布一个 INITIALIZED 事件，
+ *    事件的 getInitialData() 返回完整的初始快照（与 StartMode.POST_INITIALIZED_EVENT 的 INITIALIZED 事件相同）；
+ * 3、因连接错误没有读到的子节点在窗口排空后再同步重试一次（使用客户端的重试策略），不存在的子节点直接跳过。
+ * 
+ * 初始化之后的行为与 PathChildrenCache 相同：子节点增删和数据变更通过 watch 发布 CHILD_ADDED/CHILD_UPDATED/CHILD_REMOVED；
+ * 重新连接后按同样的窗口与服务端对账。
+ * 
+ * 所有加载和对账都在缓存自己的单个后台线程中依次执行，同一时刻只有一轮在使用窗口。Curator 的连接状态线程只负责提交对账请求，
+ * 不会因为同步的 getChildren() 和排空窗口而推迟其它监听器收到 SUSPENDED/LOST；尚未开始执行的对账请求会被合并。
+ * 
+ * 对账：缓存中已有的子节点只调用 checkExists()（响应中只有 Stat，同时注册 exists watch），mzxid 没有变化时保留已有的数据，
+ * 只有 mzxid 变化的子节点和新增的子节点才通过 getData() 重新读取。
+ * 
+ * 热启动：指定 snapshotFile 时，close() 会把缓存内容写入本地快照文件（见 CacheSnapshot）；下一次 start() 时如果快照可用，
+ * 先把快照装入缓存后立即返回，getCurrentData() 马上可以读到（可能稍旧的）数据，再由后台线程与服务端对账，
+ * 对账完成后发布 INITIALIZED 事件。重启时只有真正变化过的子节点需要传输数据，大大减轻了批量重启对集群的冲击。
+ */
+public class PipelinedChildrenCache implements Closeable {
+	
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+	
+	private final CuratorFramework client;
+	
+	private final String path;
+	
+	private final int maxInFlight;
+	
+	private final Semaphore window;
+	
+	private final File snapshotFile;
+	
+	private final ExecutorService reloadThread;
+	
+	/*
+	 * 已经提交、尚未开始执行的对账请求，期间的重复请求直接合并。
+	 */
+	private final AtomicBoolean reloadPending = new AtomicBoolean();
+	
+	private final Runnable reloadTask = new Runnable() {
+		@Override
+		public void run() {
+			reloadPending.set(false);
+			try {
+				initialize();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				// 连接类错误：重新连接后会再次对账并发布 INITIALIZED
+				e.printStackTrace();
+			}
+		}
+	};
+	
+	private final ConcurrentMap<String, ChildData> children = new ConcurrentHashMap<String, ChildData>();
+	
+	private final ListenerContainer<PathChildrenCacheListener> listeners = new ListenerContainer<PathChildrenCacheListener>();
+	
+	private final AtomicBoolean started = new AtomicBoolean();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	/*
+	 * 发布 INITIALIZED 事件之前，数据变化只更新 children，不发布事件。
+	 */
+	private final AtomicBoolean initialized = new AtomicBoolean();
+	
+	private final CuratorWatcher watcher = new CuratorWatcher() {
+		@Override
+		public void process(WatchedEvent event) throws Exception {
+			String eventPath = event.getPath();
+			if (closed.get() || eventPath == null) {
+				return;
+			}
+			
+			if (eventPath.equals(path)) {
+				if (event.getType() == EventType.NodeCreated || event.getType() == EventType.NodeChildrenChanged) {
+					refreshChildren();
+				}
+				return;
+			}
+			
+			switch (event.getType()) {
+			case NodeDataChanged:
+				fetchData(eventPath);
+				break;
+			case NodeDeleted:
+				removed(eventPath);
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	/*
+	 * 初始化之后由 watch 触发的后台请求使用该回调，不占用窗口。
+	 */
+	private final BackgroundCallback callback = new BackgroundCallback() {
+		@Override
+		public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+			if (!closed.get()) {
+				process(event);
+			}
+		}
+	};
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			switch (newState) {
+			case SUSPENDED:
+				publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CONNECTION_SUSPENDED, null));
+				break;
+			case LOST:
+				publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CONNECTION_LOST, null));
+				break;
+			case RECONNECTED:
+				publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CONNECTION_RECONNECTED, null));
+				requestReload();
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	public PipelinedChildrenCache(CuratorFramework client, String path) {
+		this(client, path, DEFAULT_MAX_IN_FLIGHT);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 父节点路径
+	 * @param maxInFlight 加载子节点数据时同时在途的最大 getData() 请求数
+	 */
+	public PipelinedChildrenCache(CuratorFramework client, String path, int maxInFlight) {
+		this(client, path, maxInFlight, null);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 父节点路径
+	 * @param maxInFlight 加载子节点数据时同时在途的最大 getData() 请求数
+	 * @param snapshotFile 热启动使用的本地快照文件，为 null 时不读写快照
+	 */
+	public PipelinedChildrenCache(CuratorFramework client, String path, int maxInFlight, File snapshotFile) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("maxInFlight must be greater than 0: " + maxInFlight);
+		}
+		
+		this.client = client;
+		this.path = path;
+		this.maxInFlight = maxInFlight;
+		this.window = new Semaphore(maxInFlight);
+		this.snapshotFile = snapshotFile;
+		this.reloadThread = ThreadUtils.newSingleThreadExecutor("PipelinedChildrenCache");
+	}
+	
+	/**
+	 * 加载所有子节点的数据，阻塞到加载完成，然后发布 INITIALIZED 事件。
+	 * 
+	 * 快照可用时装入快照后立即返回，对账在后台线程中进行，对账完成后发布 INITIALIZED 事件。
+	 */
+	public void start() throws Exception {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Cache has already been started");
+		}
+		
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+		
+		List<ChildData> snapshot = snapshotFile == null ? null : CacheSnapshot.read(snapshotFile, path);
+		if (snapshot == null) {
+			// 同样在后台线程中加载，避免和重新连接触发的对账同时使用窗口
+			Future<?> future = reloadThread.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					initialize();
+					return null;
+				}
+			});
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+			return;
+		}
+		
+		for (ChildData data : snapshot) {
+			children.put(data.getPath(), data);
+		}
+		
+		requestReload();
+	}
+	
+	/**
+	 * 关闭缓存；指定了 snapshotFile 并且已经完成初始化时，先把缓存内容写入快照。
+	 */
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			client.getConnectionStateListenable().removeListener(connectionStateListener);
+			// 中断正在进行的对账（可能阻塞在窗口上），closed 已经设置，回调和剩余的请求都会直接返回
+			reloadThread.shutdownNow();
+			if (snapshotFile != null && initialized.get()) {
+				try {
+					writeSnapshot();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			listeners.clear();
+			children.clear();
+		}
+	}
+	
+	public Listenable<PathChildrenCacheListener> getListenable() {
+		return listeners;
+	}
+	
+	/**
+	 * @return 所有子节点（按路径排序）
+	 */
+	public List<ChildData> getCurrentData() {
+		List<ChildData> result = new ArrayList<ChildData>(children.values());
+		Collections.sort(result);
+		return result;
+	}
+	
+	/**
+	 * @return fullPath 的当前数据，不是当前子节点时返回 null
+	 */
+	public ChildData getCurrentData(String fullPath) {
+		return children.get(fullPath);
+	}
+	
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+	
+	/**
+	 * @return 是否已经与服务端完成第一次对账（已经发布 INITIALIZED 事件）
+	 */
+	public boolean isInitialized() {
+		return initialized.get();
+	}
+	
+	/**
+	 * 把当前缓存内容写入 snapshotFile，close() 时会自动调用，也可以定期调用以防进程异常退出。
+	 */
+	public void writeSnapshot() throws IOException {
+		if (snapshotFile == null) {
+			throw new IllegalStateException("snapshotFile is not specified");
+		}
+		
+		CacheSnapshot.write(snapshotFile, path, getCurrentData());
+	}
+	
+	/**
+	 * 提交一次对账。已经有尚未开始执行的对账时直接返回，它会读到最新的状态。
+	 */
+	private void requestReload() {
+		if (closed.get() || !reloadPending.compareAndSet(false, true)) {
+			return;
+		}
+		
+		try {
+			reloadThread.execute(reloadTask);
+		} catch (RejectedExecutionException e) {
+			// 已经关闭
+			reloadPending.set(false);
+		}
+	}
+	
+	private void initialize() throws Exception {
+		rebuild();
+		
+		if (!closed.get() && initialized.compareAndSet(false, true)) {
+			final List<ChildData> initialData = getCurrentData();
+			publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.INITIALIZED, null) {
+				@Override
+				public List<ChildData> getInitialData() {
+					return initialData;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * 同步读取子节点列表（同时注册子节点 watch），删除已经不存在的子节点，再与服务端对账。
+	 */
+	private void rebuild() throws Exception {
+		List<String> names;
+		try {
+			names = client.getChildren().usingWatcher(watcher).forPath(path);
+		} catch (KeeperException.NoNodeException e) {
+			// 父节点不存在时注册 exists watch，等待它被创建
+			client.checkExists().usingWatcher(watcher).inBackground(callback).forPath(path);
+			names = Collections.emptyList();
+		}
+		
+		List<String> childPaths = new ArrayList<String>(names.size());
+		for (String name : names) {
+			childPaths.add(ZKPaths.makePath(path, name));
+		}
+		
+		Set<String> current = new HashSet<String>(childPaths);
+		for (String childPath : children.keySet()) {
+			if (!current.contains(childPath)) {
+				removed(childPath);
+			}
+		}
+		
+		reconcile(childPaths);
+	}
+	
+	/**
+	 * 缓存中已有的子节点按窗口调用 checkExists()，mzxid 一致时只更新 Stat；mzxid 变化的子节点和缓存中没有的子节点交给 load() 重新读取。
+	 */
+	private void reconcile(List<String> childPaths) throws Exception {
+		final Queue<String> changed = new ConcurrentLinkedQueue<String>();
+		
+		BackgroundCallback existsCallback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				try {
+					if (closed.get()) {
+						return;
+					}
+					
+					String childPath = event.getPath();
+					int resultCode = event.getResultCode();
+					if (resultCode == KeeperException.Code.NONODE.intValue()) {
+						removed(childPath);
+						return;
+					}
+					
+					ChildData cached = children.get(childPath);
+					Stat stat = event.getStat();
+					if (resultCode == KeeperException.Code.OK.intValue() && cached != null && cached.getStat().getMzxid() == stat.getMzxid()) {
+						children.put(childPath, new ChildData(childPath, stat, cached.getData()));
+					} else {
+						changed.add(childPath);
+					}
+				} finally {
+					window.release();
+				}
+			}
+		};
+		
+		for (String childPath : childPaths) {
+			if (closed.get()) {
+				return;
+			}
+			
+			if (!children.containsKey(childPath)) {
+				changed.add(childPath);
+				continue;
+			}
+			
+			window.acquire();
+			try {
+				client.checkExists().usingWatcher(watcher).inBackground(existsCallback).forPath(childPath);
+			} catch (Exception e) {
+				window.release();
+				changed.add(childPath);
+			}
+		}
+		
+		window.acquire(maxInFlight);
+		window.release(maxInFlight);
+		
+		load(new ArrayList<String>(changed));
+	}
+	
+	/**
+	 * 流水线加载 childPaths 的数据：每发出一个 getData() 占用窗口中的一个位置，在回调中释放；最后排空窗口，并同步重试失败的子节点。
+	 */
+	private void load(List<String> childPaths) throws Exception {
+		final Queue<String> failed = new ConcurrentLinkedQueue<String>();
+		
+		BackgroundCallback loadCallback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				try {
+					int resultCode = event.getResultCode();
+					if (closed.get()) {
+						return;
+					}
+					
+					if (resultCode == KeeperException.Code.NONODE.intValue()) {
+						removed(event.getPath());
+					} else if (resultCode == KeeperException.Code.OK.intValue()) {
+						dataLoaded(event.getPath(), event.getStat(), event.getData());
+					} else {
+						failed.add(event.getPath());
+					}
+				} finally {
+					window.release();
+				}
+			}
+		};
+		
+		for (String childPath : childPaths) {
+			if (closed.get()) {
+				break;
+			}
+			
+			window.acquire();
+			try {
+				client.getData().usingWatcher(watcher).inBackground(loadCallback).forPath(childPath);
+			} catch (Exception e) {
+				window.release();
+				failed.add(childPath);
+			}
+		}
+		
+		window.acquire(maxInFlight);
+		window.release(maxInFlight);
+		
+		for (String childPath : failed) {
+			if (closed.get()) {
+				break;
+			}
+			
+			Stat stat = new Stat();
+			try {
+				byte[] data = client.getData().storingStatIn(stat).usingWatcher(watcher).forPath(childPath);
+				dataLoaded(childPath, stat, data);
+			} catch (KeeperException.NoNodeException e) {
+				removed(childPath);
+			}
+		}
+	}
+	
+	private void process(CuratorEvent event) throws Exception {
+		String eventPath = event.getPath();
+		int resultCode = event.getResultCode();
+		
+		if (resultCode == KeeperException.Code.NONODE.intValue()) {
+			if (eventPath.equals(path)) {
+				client.checkExists().usingWatcher(watcher).inBackground(callback).forPath(path);
+			} else {
+				removed(eventPath);
+			}
+			return;
+		}
+		
+		if (resultCode != KeeperException.Code.OK.intValue()) {
+			// 连接类错误：重新连接后会通过 rebuild() 重新加载
+			return;
+		}
+		
+		switch (event.getType()) {
+		case CHILDREN:
+			childrenChanged(event.getChildren());
+			break;
+		case GET_DATA:
+			dataLoaded(eventPath, event.getStat(), event.getData());
+			break;
+		case EXISTS:
+			if (event.getStat() != null) {
+				refreshChildren();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+	
+	private void childrenChanged(List<String> names) throws Exception {
+		Set<String> current = new HashSet<String>(names.size());
+		for (String name : names) {
+			current.add(ZKPaths.makePath(path, name));
+		}
+		
+		for (String childPath : children.keySet()) {
+			if (!current.contains(childPath)) {
+				removed(childPath);
+			}
+		}
+		
+		for (String childPath : current) {
+			if (!children.containsKey(childPath)) {
+				fetchData(childPath);
+			}
+		}
+	}
+	
+	private void dataLoaded(String childPath, Stat stat, byte[] data) {
+		ChildData newData = new ChildData(childPath, stat, data);
+		ChildData old = children.put(childPath, newData);
+		if (!initialized.get()) {
+			return;
+		}
+		
+		if (old == null) {
+			publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_ADDED, newData));
+		} else if (old.getStat().getMzxid() != stat.getMzxid()) {
+			publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED, newData));
+		}
+	}
+	
+	private void removed(String childPath) {
+		ChildData old = children.remove(childPath);
+		if (old != null && initialized.get()) {
+			publish(new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_REMOVED, old));
+		}
+	}
+	
+	private void refreshChildren() throws Exception {
+		client.getChildren().usingWatcher(watcher).inBackground(callback).forPath(path);
+	}
+	
+	private void fetchData(String childPath) throws Exception {
+		client.getData().usingWatcher(watcher).inBackground(callback).forPath(childPath);
+	}
+	
+	private void publish(final PathChildrenCacheEvent event) {
+		listeners.forEach(new Function<PathChildrenCacheListener, Void>() {
+			@Override
+			public Void apply(PathChildrenCacheListener listener) {
+				try {
+					listener.childEvent(client, event);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				return null;
+			}
+		});
+	}
+}
\ No newline at end of file
@@ -0,0 +1,246 @@
+package curator.recipes.cache;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * 基于 watch 的 getData() 读穿透缓存。
+ * 
+ * GetDataSample 中每次 getData().storingStatIn(stat) 都要访问一次服务端，而配置类节点往往每秒被读取成千上万次、却很少变化。
+ * ReadThroughDataCache 在本地缓存节点的数据和 Stat：
+ * 1、未命中时调用 getData().storingStatIn(stat).usingWatcher(watcher)，在读取的同时为该路径注册一个 watch，然后放入缓存；
+ * 2、命中时不访问服务端；
+ * 3、watch 收到 NodeDataChanged/NodeDeleted 时作废该路径，下一次读取重新从服务端加载并重新注册 watch，所以每个缓存中的路径只有一个 watch；
+ * 4、缓存的条目数不超过 maximumSize，超过 idleTime 没有被读取的条目会被淘汰。
+ * 
+ * 连接 SUSPENDED/LOST 期间 watch 通知可能丢失，缓存中的数据无法保证是最新的：此时清空缓存，并且在重新连接之前所有读取都直接访问服务端
+ * （由客户端的重试策略决定失败行为），不会返回可能已经过期的数据。
+ * 
+ * 注意：ZooKeeper 3.4 无法撤销已经注册的 watch，被淘汰的路径上的 watch 仍然保留到下一次变更时触发，触发后只是作废一个已经不存在的条目。
+ * 返回的 byte[] 是缓存中的同一个数组，调用者不要修改它。
+ */
+public class ReadThroughDataCache implements Closeable {
+	
+	public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+	
+	public static final long DEFAULT_IDLE_TIME_SECONDS = 600;
+	
+	private final CuratorFramework client;
+	
+	private final Cache<String, Entry> entries;
+	
+	private final AtomicBoolean started = new AtomicBoolean();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	/*
+	 * 连接处于 SUSPENDED/LOST 时为 false，此时不读写缓存。
+	 */
+	private volatile boolean connected = true;
+	
+	/*
+	 * 每次作废（单个路径或者全部）时先递增 epoch 再移除条目。未命中时在访问服务端之前记下 epoch，先放入缓存，再检查 epoch：
+	 * 已经变化则移除刚放入的条目；没有变化，则之后发生的作废一定在放入之后才移除条目。这样 watch 通知无论在放入之前还是之后被处理，
+	 * 都不会把已经过期的数据留在缓存中（watch 已经触发过，不会再有通知来作废它）。
+	 */
+	private final AtomicLong epoch = new AtomicLong();
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	private final CuratorWatcher watcher = new CuratorWatcher() {
+		@Override
+		public void process(WatchedEvent event) throws Exception {
+			if (event.getPath() == null) {
+				return;
+			}
+			
+			switch (event.getType()) {
+			case NodeDataChanged:
+			case NodeDeleted:
+				invalidate(event.getPath());
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			switch (newState) {
+			case SUSPENDED:
+			case LOST:
+				connected = false;
+				invalidateAll();
+				break;
+			case CONNECTED:
+			case RECONNECTED:
+				invalidateAll();
+				connected = true;
+				break;
+			default:
+				break;
+			}
+		}
+	};
+	
+	public ReadThroughDataCache(CuratorFramework client) {
+		this(client, DEFAULT_MAXIMUM_SIZE, DEFAULT_IDLE_TIME_SECONDS, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param maximumSize 缓存的最大路径数
+	 * @param idleTime 条目在最后一次读取之后保留的时间
+	 * @param unit idleTime 的时间单位
+	 */
+	public ReadThroughDataCache(CuratorFramework client, long maximumSize, long idleTime, TimeUnit unit) {
+		this.client = client;
+		this.entries = CacheBuilder.newBuilder()
+		.maximumSize(maximumSize)
+		.expireAfterAccess(idleTime, unit)
+		.build();
+	}
+	
+	public ReadThroughDataCache start() {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Cache has already been started");
+		}
+		
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+		return this;
+	}
+	
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			client.getConnectionStateListenable().removeListener(connectionStateListener);
+			invalidateAll();
+		}
+	}
+	
+	/**
+	 * 读取节点数据，节点不存在时抛出 KeeperException.NoNodeException。
+	 */
+	public byte[] getData(String path) throws Exception {
+		return getData(path, null);
+	}
+	
+	/**
+	 * 读取节点数据，并把节点的 Stat 复制到 stat 中（与 getData().storingStatIn(stat) 相同）。
+	 * 
+	 * @param stat 为 null 时不返回 Stat
+	 */
+	public byte[] getData(String path, Stat stat) throws Exception {
+		if (!started.get() || closed.get()) {
+			throw new IllegalStateException("Cache is not started or has been closed");
+		}
+		
+		if (!connected) {
+			misses.incrementAndGet();
+			return stat == null ? client.getData().forPath(path) : client.getData().storingStatIn(stat).forPath(path);
+		}
+		
+		Entry entry = entries.getIfPresent(path);
+		if (entry != null) {
+			hits.incrementAndGet();
+			copyStat(entry.stat, stat);
+			return entry.data;
+		}
+		
+		misses.incrementAndGet();
+		
+		long expectedEpoch = epoch.get();
+		Stat loadedStat = new Stat();
+		byte[] data = client.getData().storingStatIn(loadedStat).usingWatcher(watcher).forPath(path);
+		
+		if (connected && epoch.get() == expectedEpoch) {
+			entries.put(path, new Entry(data, loadedStat));
+			if (!connected || epoch.get() != expectedEpoch) {
+				entries.invalidate(path);
+			}
+		}
+		
+		copyStat(loadedStat, stat);
+		return data;
+	}
+	
+	/**
+	 * 作废 path 的缓存，下一次读取时重新从服务端加载。
+	 */
+	public void invalidate(String path) {
+		epoch.incrementAndGet();
+		entries.invalidate(path);
+	}
+	
+	public void invalidateAll() {
+		epoch.incrementAndGet();
+		entries.invalidateAll();
+	}
+	
+	/**
+	 * @return 命中次数
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return 访问服务端的次数（包括连接中断期间的直接读取）
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return 当前缓存的路径数
+	 */
+	public long size() {
+		return entries.size();
+	}
+	
+	private static void copyStat(Stat from, Stat to) {
+		if (to == null) {
+			return;
+		}
+		
+		to.setCzxid(from.getCzxid());
+		to.setMzxid(from.getMzxid());
+		to.setCtime(from.getCtime());
+		to.setMtime(from.getMtime());
+		to.setVersion(from.getVersion());
+		to.setCversion(from.getCversion());
+		to.setAversion(from.getAversion());
+		to.setEphemeralOwner(from.getEphemeralOwner());
+		to.setDataLength(from.getDataLength());
+		to.setNumChildren(from.getNumChildren());
+		to.setPzxid(from.getPzxid());
+	}
+	
+	private static final class Entry {
+		
+		final byte[] data;
+		
+		final Stat stat;
+		
+		Entry(byte[] data, Stat stat) {
+			this.data = data;
+			this.stat = stat;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,293 @@
+package curator.recipes.locks;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.utils.ThreadUtils;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * 两级分布式互斥锁：先在 JVM 内部排队，再竞争 ZooKeeper 上的 InterProcessMutex。
+ * 
+ * RecipesLock 中 300 个线程共用一个 InterProcessMutex，每个线程都会在锁节点下创建自己的临时顺序节点并注册 watch，
+ * 对服务端来说就是同一个进程里的 300 个竞争者。TwoLevelMutex 的做法是：
+ * 1、同一 JVM 中的线程先在一个公平的本地锁（ReentrantLock(true)）上排队；
+ * 2、只有排在队首、拿到本地锁的线程才去获取 ZooKeeper 锁；
+ * 3、释放时如果本地还有等待者，并且连续移交次数没有超过 fairnessLimit，就不释放 ZooKeeper 锁，而是直接移交给下一个本地线程。
+ *    超过 fairnessLimit 后必须释放一次 ZooKeeper 锁，让其它进程有机会获取，避免饿死。
+ * 
+ * 由于 InterProcessMutex 只能由获取它的线程释放，ZooKeeper 锁的获取和释放统一交给一个专门的后台线程执行，本地线程之间移交时不涉及该线程。
+ * 
+ * 注意，与 InterProcessMutex 一样，会话断开后需要调用者自行处理锁的失效；连接断开期间不会再向本地线程移交 ZooKeeper 锁。
+ */
+public class TwoLevelMutex implements InterProcessLock, Closeable {
+	
+	public static final int DEFAULT_FAIRNESS_LIMIT = 64;
+	
+	private final CuratorFramework client;
+	
+	private final InterProcessMutex globalLock;
+	
+	private final ReentrantLock localLock = new ReentrantLock(true);
+	
+	private final int fairnessLimit;
+	
+	private final ExecutorService globalLockThread;
+	
+	/*
+	 * 以下两个字段只在持有 localLock 时修改。
+	 */
+	private volatile boolean globalHeld;
+	
+	private int handoffs;
+	
+	private final AtomicLong globalAcquisitions = new AtomicLong();
+	
+	private final AtomicLong totalHandoffs = new AtomicLong();
+	
+	public TwoLevelMutex(CuratorFramework client, String path) {
+		this(client, path, DEFAULT_FAIRNESS_LIMIT);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param path 锁节点路径
+	 * @param fairnessLimit 不释放 ZooKeeper 锁、连续在本地线程之间移交的最大次数，0 表示每次都释放
+	 */
+	public TwoLevelMutex(CuratorFramework client, String path, int fairnessLimit) {
+		if (fairnessLimit < 0) {
+			throw new IllegalArgumentException("fairnessLimit must not be negative: " + fairnessLimit);
+		}
+		
+		this.client = client;
+		this.globalLock = new InterProcessMutex(client, path);
+		this.fairnessLimit = fairnessLimit;
+		this.globalLockThread = ThreadUtils.newSingleThreadExecutor("TwoLevelMutex");
+	}
+	
+	@Override
+	public void acquire() throws Exception {
+		if (!acquire(-1, null)) {
+			throw new IllegalStateException("Lost connection while trying to acquire lock");
+		}
+	}
+	
+	/**
+	 * @param time 等待时间，unit 为 null 时一直等待
+	 * @param unit 时间单位
+	 * @return 是否获取到锁
+	 */
+	@Override
+	public boolean acquire(long time, TimeUnit unit) throws Exception {
+		long startNanos = System.nanoTime();
+		
+		try {
+			if (unit == null) {
+				localLock.lockInterruptibly();
+			} else if (!localLock.tryLock(time, unit)) {
+				releaseIfIdle();
+				return false;
+			}
+		} catch (InterruptedException e) {
+			releaseIfIdle();
+			throw e;
+		}
+		
+		// 重入，或者 ZooKeeper 锁已经由上一个本地线程移交过来。
+		if (localLock.getHoldCount() > 1 || globalHeld) {
+			return true;
+		}
+		
+		boolean acquired = false;
+		try {
+			long remaining = unit == null ? -1 : unit.toNanos(time) - (System.nanoTime() - startNanos);
+			acquired = acquireGlobal(remaining);
+		} finally {
+			if (!acquired) {
+				localLock.unlock();
+			}
+		}
+		
+		if (acquired) {
+			globalHeld = true;
+			handoffs = 0;
+			globalAcquisitions.incrementAndGet();
+		}
+		
+		return acquired;
+	}
+	
+	@Override
+	public void release() throws Exception {
+		if (!localLock.isHeldByCurrentThread()) {
+			throw new IllegalMonitorStateException("You do not own the lock");
+		}
+		
+		boolean handedOff = false;
+		try {
+			if (localLock.getHoldCount() > 1) {
+				return;
+			}
+			
+			if (localLock.hasQueuedThreads() && handoffs < fairnessLimit && client.getZookeeperClient().isConnected()) {
+				handoffs++;
+				totalHandoffs.incrementAndGet();
+				handedOff = true;
+				return;
+			}
+			
+			globalHeld = false;
+			handoffs = 0;
+			releaseGlobal();
+		} finally {
+			localLock.unlock();
+			
+			/*
+			 * 决定移交之后、unlock 之前，唯一的等待者可能已经超时或被中断放弃，它调用的 releaseIfIdle() 因为本地锁还在当前线程手里而 tryLock 失败。
+			 * unlock 之后再检查一次：没有等待者时重新提交 releaseIfIdle()，否则 ZooKeeper 锁会一直留在本进程，却没有任何线程持有或等待它。
+			 */
+			if (handedOff && !localLock.hasQueuedThreads()) {
+				releaseIfIdle();
+			}
+		}
+	}
+	
+	/**
+	 * @return 当前 JVM 中是否有线程持有（或正在移交）ZooKeeper 锁
+	 */
+	@Override
+	public boolean isAcquiredInThisProcess() {
+		return globalHeld;
+	}
+	
+	/**
+	 * @return 真正向 ZooKeeper 获取锁的次数
+	 */
+	public long getGlobalAcquisitions() {
+		return globalAcquisitions.get();
+	}
+	
+	/**
+	 * @return 不经过 ZooKeeper、直接在本地线程之间移交锁的次数
+	 */
+	public long getHandoffs() {
+		return totalHandoffs.get();
+	}
+	
+	/**
+	 * 关闭后台线程。调用前应确保当前 JVM 中没有线程持有该锁。
+	 */
+	@Override
+	public void close() {
+		globalLockThread.shutdown();
+	}
+	
+	/**
+	 * 在后台线程中获取 ZooKeeper 锁。
+	 * 
+	 * @param nanos 等待时间，-1 表示一直等待
+	 */
+	private boolean acquireGlobal(final long nanos) throws Exception {
+		if (nanos == 0 || (nanos < 0 && nanos != -1)) {
+			return false;
+		}
+		
+		Future<Boolean> future = globalLockThread.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				if (nanos == -1) {
+					globalLock.acquire();
+					return true;
+				}
+				return globalLock.acquire(nanos, TimeUnit.NANOSECONDS);
+			}
+		});
+		
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			/*
+			 * 调用线程被中断：取消后台的获取操作；如果后台线程恰好已经拿到了 ZooKeeper 锁，则立即释放，避免锁泄漏。
+			 */
+			future.cancel(true);
+			Uninterruptibles.getUninterruptibly(globalLockThread.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					if (globalLock.isAcquiredInThisProcess()) {
+						globalLock.release();
+					}
+					return null;
+				}
+			}));
+			throw e;
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+	
+	private void releaseGlobal() throws Exception {
+		try {
+			globalLockThread.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					globalLock.release();
+					return null;
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+	
+	/**
+	 * 本地等待者超时或被中断、放弃等待时调用，移交后发现没有等待者的持有者也会调用。上一个持有者可能因为看到了这个等待者而把 ZooKeeper 锁留给了它，
+	 * 如果此时本地锁空闲且没有其它等待者，就由后台线程释放 ZooKeeper 锁。
+	 * 
+	 * 持有 ZooKeeper 锁时释放本地锁的只有 release() 中的移交分支，它在 unlock 之后会重新检查，所以这里 tryLock 失败时可以交给当前持有者处理。
+	 */
+	private void releaseIfIdle() {
+		if (!globalHeld) {
+			return;
+		}
+		
+		globalLockThread.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (!localLock.tryLock()) {
+					// 本地锁被其它线程持有，由它负责释放。
+					return;
+				}
+				
+				try {
+					if (globalHeld && !localLock.hasQueuedThreads()) {
+						globalHeld = false;
+						handoffs = 0;
+						globalLock.release();
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					localLock.unlock();
+				}
+			}
+		});
+	}
+	
+	private static Exception unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof Exception) {
+			return (Exception) cause;
+		}
+		throw new RuntimeException(cause);
+	}
+}
\ No newline at end of file
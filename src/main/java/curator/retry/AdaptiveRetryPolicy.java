@@ -0,0 +1,183 @@
+package curator.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+import org.apache.curator.drivers.TracerDriver;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+
+/**
+ * 带抖动、重试预算和熔断的 RetryPolicy，用于替代 new ExponentialBackoffRetry(1000, 3)。
+ * 
+ * ExponentialBackoffRetry 的 sleep 时间只在 [base, base * 2^(retryCount + 1)] 中选取，并且每个客户端的重试互不知晓：
+ * 集群抖动时所有实例几乎同时失败、按相近的节奏重试，再在几乎同一时刻放弃。AdaptiveRetryPolicy 每次重试依次经过：
+ * 1、maxRetries：与 ExponentialBackoffRetry 相同，限制单个操作的重试次数；
+ * 2、CircuitBreaker：连续失败达到阈值后熔断，openDuration 内所有重试立即放弃，之后只放行一次试探；
+ * 3、RetryBudget：进程范围内的重试次数不超过请求数的一定比例，默认所有 AdaptiveRetryPolicy 共享 RetryBudget.global()；
+ * 4、去相关抖动（decorrelated jitter）：sleep = random(base, min(maxSleep, base * 3^(retryCount + 1)))。
+ *    同一个 RetryPolicy 被所有操作共享，无法按操作保存上一次的 sleep，这里用 base * 3^(retryCount + 1) 作为它的上界。
+ * 
+ * 预算需要知道请求总数，熔断器需要知道操作成功，两者都来自 install(client)：它把策略设置到客户端上，并通过 Curator 的
+ * TracerDriver（每个前台操作成功完成、每个后台操作完成时都会调用 addTrace）统计请求和成功，连接恢复同样视为成功。
+ * 后台操作无论成败都会提交 trace，无法从中区分成功，所以后台操作的成功不会报告给熔断器：只使用后台操作（inBackground）的客户端
+ * 熔断之后只能通过连接恢复（CONNECTED / RECONNECTED）回到 CLOSED。
+ * 
+ * 用法：
+ * CuratorFramework client = CuratorFrameworkFactory.newClient(connectString, new ExponentialBackoffRetry(1000, 3));
+ * new AdaptiveRetryPolicy(1000, 30000, 3).install(client);
+ * client.start();
+ */
+public class AdaptiveRetryPolicy implements RetryPolicy {
+	
+	private static final String FOREGROUND_TRACE_SUFFIX = "-Foreground";
+	
+	private static final String BACKGROUND_TRACE_SUFFIX = "-Background";
+	
+	private final long baseSleepMs;
+	
+	private final long maxSleepMs;
+	
+	private final int maxRetries;
+	
+	private final RetryBudget budget;
+	
+	private final CircuitBreaker circuitBreaker;
+	
+	private final AtomicLong allowed = new AtomicLong();
+	
+	private final AtomicLong exhausted = new AtomicLong();
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			if (newState == ConnectionState.CONNECTED || newState == ConnectionState.RECONNECTED) {
+				circuitBreaker.onSuccess();
+			}
+		}
+	};
+	
+	/**
+	 * 使用 RetryBudget.global() 和默认的熔断器。
+	 * 
+	 * @param baseSleepMs 最短 sleep 时间
+	 * @param maxSleepMs 最长 sleep 时间
+	 * @param maxRetries 单个操作的最大重试次数
+	 */
+	public AdaptiveRetryPolicy(long baseSleepMs, long maxSleepMs, int maxRetries) {
+		this(baseSleepMs, maxSleepMs, maxRetries, RetryBudget.global(), new CircuitBreaker());
+	}
+	
+	public AdaptiveRetryPolicy(long baseSleepMs, long maxSleepMs, int maxRetries, RetryBudget budget, CircuitBreaker circuitBreaker) {
+		if (baseSleepMs <= 0 || maxSleepMs < baseSleepMs) {
+			throw new IllegalArgumentException("Illegal sleep range: baseSleepMs=" + baseSleepMs + ", maxSleepMs=" + maxSleepMs);
+		}
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("maxRetries must not be negative: " + maxRetries);
+		}
+		
+		this.baseSleepMs = baseSleepMs;
+		this.maxSleepMs = maxSleepMs;
+		this.maxRetries = maxRetries;
+		this.budget = budget;
+		this.circuitBreaker = circuitBreaker;
+	}
+	
+	/**
+	 * 把策略设置为 client 的重试策略，并统计 client 的请求、成功和连接恢复。client 原有的 TracerDriver 仍然会收到所有调用。
+	 */
+	public void install(CuratorFramework client) {
+		final TracerDriver delegate = client.getZookeeperClient().getTracerDriver();
+		client.getZookeeperClient().setTracerDriver(new TracerDriver() {
+			@Override
+			public void addTrace(String name, long time, TimeUnit unit) {
+				if (name.endsWith(FOREGROUND_TRACE_SUFFIX)) {
+					// 前台操作只在成功完成时提交 trace
+					budget.recordRequest();
+					circuitBreaker.onSuccess();
+				} else if (name.endsWith(BACKGROUND_TRACE_SUFFIX)) {
+					// 后台操作无论成败都会提交 trace，只计入请求数
+					budget.recordRequest();
+				}
+				delegate.addTrace(name, time, unit);
+			}
+			
+			@Override
+			public void addCount(String name, int increment) {
+				delegate.addCount(name, increment);
+			}
+		});
+		client.getZookeeperClient().setRetryPolicy(this);
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+	}
+	
+	@Override
+	public boolean allowRetry(int retryCount, long elapsedTimeMs, RetrySleeper sleeper) {
+		circuitBreaker.onFailure();
+		
+		if (retryCount >= maxRetries) {
+			exhausted.incrementAndGet();
+			return false;
+		}
+		
+		if (!circuitBreaker.allowRetry()) {
+			return false;
+		}
+		if (!budget.tryAcquireRetry()) {
+			// 没有发出重试，HALF_OPEN 时占用的试探名额必须归还，否则熔断器会一直拒绝重试
+			circuitBreaker.releaseProbe();
+			return false;
+		}
+		
+		try {
+			sleeper.sleepFor(nextSleepMs(retryCount), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		
+		allowed.incrementAndGet();
+		return true;
+	}
+	
+	long nextSleepMs(int retryCount) {
+		long upper = baseSleepMs;
+		for (int i = 0; i <= retryCount && upper < maxSleepMs; i++) {
+			upper *= 3;
+		}
+		upper = Math.min(upper, maxSleepMs);
+		return upper <= baseSleepMs ? baseSleepMs : ThreadLocalRandom.current().nextLong(baseSleepMs, upper + 1);
+	}
+	
+	public RetryBudget getBudget() {
+		return budget;
+	}
+	
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	
+	/**
+	 * @return 允许的重试次数
+	 */
+	public long getAllowedCount() {
+		return allowed.get();
+	}
+	
+	/**
+	 * @return 因达到 maxRetries 而放弃的次数
+	 */
+	public long getExhaustedCount() {
+		return exhausted.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "AdaptiveRetryPolicy [allowed=" + getAllowedCount() + ", exhausted=" + getExhaustedCount() + ", " + circuitBreaker + ", "
+				+ budget + "]";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package curator.retry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * AdaptiveRetryPolicy 使用的熔断器。
+ * 
+ * 1、CLOSED：正常重试；连续 failureThreshold 次失败（中间没有任何成功）后进入 OPEN；
+ * 2、OPEN：所有重试立即被拒绝，不再 sleep、不再向集群发送请求，持续 openDuration；
+ * 3、HALF_OPEN：openDuration 之后只放行一次试探性的重试，之后再有失败则重新进入 OPEN，有成功则回到 CLOSED。
+ * 
+ * 失败由 AdaptiveRetryPolicy.allowRetry() 报告；成功由前台操作完成和连接恢复（CONNECTED / RECONNECTED）报告，
+ * 见 AdaptiveRetryPolicy.install()。后台操作的成功无法报告，只使用后台操作的客户端只能通过连接恢复离开 OPEN / HALF_OPEN。
+ */
+public class CircuitBreaker {
+	
+	public static final int DEFAULT_FAILURE_THRESHOLD = 20;
+	
+	public static final long DEFAULT_OPEN_DURATION_MS = 5000;
+	
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+	
+	private final int failureThreshold;
+	
+	private final long openDurationNanos;
+	
+	private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+	
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	
+	private final AtomicBoolean probing = new AtomicBoolean();
+	
+	private final AtomicLong openedNanos = new AtomicLong();
+	
+	private final AtomicLong openCount = new AtomicLong();
+	
+	private final AtomicLong rejected = new AtomicLong();
+	
+	public CircuitBreaker() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION_MS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * @param failureThreshold 进入 OPEN 所需的连续失败次数
+	 * @param openDuration OPEN 状态的持续时间
+	 * @param unit openDuration 的时间单位
+	 */
+	public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+		if (failureThreshold <= 0) {
+			throw new IllegalArgumentException("failureThreshold must be greater than 0: " + failureThreshold);
+		}
+		
+		this.failureThreshold = failureThreshold;
+		this.openDurationNanos = unit.toNanos(openDuration);
+	}
+	
+	/**
+	 * 报告一次失败。
+	 */
+	public void onFailure() {
+		int failures = consecutiveFailures.incrementAndGet();
+		State current = state.get();
+		if (current == State.HALF_OPEN && probing.get()) {
+			// 试探失败；试探名额已经归还（没有发出试探）时不重新熔断，等待下一次试探
+			open(current);
+		} else if (current == State.CLOSED && failures >= failureThreshold) {
+			open(current);
+		}
+	}
+	
+	/**
+	 * 报告一次成功。
+	 */
+	public void onSuccess() {
+		consecutiveFailures.set(0);
+		if (state.get() != State.CLOSED) {
+			state.set(State.CLOSED);
+			probing.set(false);
+		}
+	}
+	
+	/**
+	 * @return 是否允许重试；OPEN 时拒绝，HALF_OPEN 时只允许一次试探
+	 */
+	public boolean allowRetry() {
+		State current = state.get();
+		if (current == State.CLOSED) {
+			return true;
+		}
+		
+		if (current == State.OPEN && System.nanoTime() - openedNanos.get() >= openDurationNanos
+				&& state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+			probing.set(false);
+			current = State.HALF_OPEN;
+		}
+		
+		if (current == State.HALF_OPEN && probing.compareAndSet(false, true)) {
+			return true;
+		}
+		
+		rejected.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * allowRetry() 放行之后最终没有发出重试（例如被 RetryBudget 拒绝）时调用：HALF_OPEN 时归还试探名额，让下一次重试可以试探。
+	 */
+	public void releaseProbe() {
+		if (state.get() == State.HALF_OPEN) {
+			probing.set(false);
+		}
+	}
+	
+	private void open(State expected) {
+		openedNanos.set(System.nanoTime());
+		if (state.compareAndSet(expected, State.OPEN)) {
+			openCount.incrementAndGet();
+		}
+	}
+	
+	public State getState() {
+		return state.get();
+	}
+	
+	/**
+	 * @return 当前的连续失败次数
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures.get();
+	}
+	
+	/**
+	 * @return 进入 OPEN 的次数
+	 */
+	public long getOpenCount() {
+		return openCount.get();
+	}
+	
+	/**
+	 * @return 被拒绝的重试次数
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "CircuitBreaker [state=" + getState() + ", consecutiveFailures=" + getConsecutiveFailures() + ", openCount=" + getOpenCount()
+				+ ", rejected=" + getRejected() + "]";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package curator.retry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 重试预算：最近 window 内的重试次数不超过 minRetriesPerSecond * window + ratio * 请求数。
+ * 
+ * 每个客户端各自的 ExponentialBackoffRetry(1000, 3) 只限制单个操作的重试次数；集群抖动时所有操作同时失败、同时重试，重试流量
+ * 叠加在正在恢复的集群上。重试预算在进程范围内限制重试占请求的比例（例如 10%）：预算用完之后的失败直接返回，不再重试。
+ * minRetriesPerSecond 保证请求很少时仍然可以重试。
+ * 
+ * 按秒分桶的滑动窗口，计数不加锁，桶轮换时与并发的计数之间可能相差几个，预算是近似的。
+ * 请求数由 AdaptiveRetryPolicy.install() 通过 Curator 的 TracerDriver 统计，也可以自己调用 recordRequest()。
+ */
+public class RetryBudget {
+	
+	public static final double DEFAULT_RATIO = 0.1;
+	
+	public static final int DEFAULT_MIN_RETRIES_PER_SECOND = 10;
+	
+	public static final int DEFAULT_WINDOW_SECONDS = 10;
+	
+	private static final long START_NANOS = System.nanoTime();
+	
+	private static final RetryBudget GLOBAL = new RetryBudget(DEFAULT_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND, DEFAULT_WINDOW_SECONDS);
+	
+	private final double ratio;
+	
+	private final int minRetriesPerSecond;
+	
+	private final int windowSeconds;
+	
+	private final AtomicLongArray bucketSeconds;
+	
+	private final AtomicLongArray requests;
+	
+	private final AtomicLongArray retries;
+	
+	private final AtomicLong rejected = new AtomicLong();
+	
+	/**
+	 * @param ratio 重试次数占请求数的最大比例
+	 * @param minRetriesPerSecond 不受比例限制、每秒总可以进行的重试次数
+	 * @param windowSeconds 滑动窗口的秒数
+	 */
+	public RetryBudget(double ratio, int minRetriesPerSecond, int windowSeconds) {
+		if (ratio < 0 || minRetriesPerSecond < 0 || windowSeconds <= 0) {
+			throw new IllegalArgumentException("Illegal retry budget: ratio=" + ratio + ", minRetriesPerSecond=" + minRetriesPerSecond
+					+ ", windowSeconds=" + windowSeconds);
+		}
+		
+		this.ratio = ratio;
+		this.minRetriesPerSecond = minRetriesPerSecond;
+		this.windowSeconds = windowSeconds;
+		this.bucketSeconds = new AtomicLongArray(windowSeconds);
+		this.requests = new AtomicLongArray(windowSeconds);
+		this.retries = new AtomicLongArray(windowSeconds);
+	}
+	
+	/**
+	 * @return 进程范围内共享的重试预算（10%，每秒至少 10 次，10 秒窗口）
+	 */
+	public static RetryBudget global() {
+		return GLOBAL;
+	}
+	
+	/**
+	 * 记录一次请求。
+	 */
+	public void recordRequest() {
+		requests.incrementAndGet(bucket(currentSecond()));
+	}
+	
+	/**
+	 * 预算允许时占用一次重试。
+	 * 
+	 * @return 是否允许重试
+	 */
+	public boolean tryAcquireRetry() {
+		long now = currentSecond();
+		int index = bucket(now);
+		
+		long requestCount = 0;
+		long retryCount = 0;
+		for (int i = 0; i < windowSeconds; i++) {
+			if (bucketSeconds.get(i) > now - windowSeconds) {
+				requestCount += requests.get(i);
+				retryCount += retries.get(i);
+			}
+		}
+		
+		if (retryCount >= (long) minRetriesPerSecond * windowSeconds + (long) (ratio * requestCount)) {
+			rejected.incrementAndGet();
+			return false;
+		}
+		
+		retries.incrementAndGet(index);
+		return true;
+	}
+	
+	/**
+	 * @return 窗口内的请求数
+	 */
+	public long getRequests() {
+		return sum(requests);
+	}
+	
+	/**
+	 * @return 窗口内的重试数
+	 */
+	public long getRetries() {
+		return sum(retries);
+	}
+	
+	/**
+	 * @return 因预算用完而被拒绝的重试次数（累计）
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+	
+	private long sum(AtomicLongArray counts) {
+		long now = currentSecond();
+		long total = 0;
+		for (int i = 0; i < windowSeconds; i++) {
+			if (bucketSeconds.get(i) > now - windowSeconds) {
+				total += counts.get(i);
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * @return second 所在的桶，桶属于更早的秒时先清零
+	 */
+	private int bucket(long second) {
+		int index = (int) (second % windowSeconds);
+		long bucketSecond = bucketSeconds.get(index);
+		if (bucketSecond != second && bucketSeconds.compareAndSet(index, bucketSecond, second)) {
+			requests.set(index, 0);
+			retries.set(index, 0);
+		}
+		return index;
+	}
+	
+	private static long currentSecond() {
+		return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - START_NANOS);
+	}
+	
+	@Override
+	public String toString() {
+		return "RetryBudget [ratio=" + ratio + ", minRetriesPerSecond=" + minRetriesPerSecond + ", windowSeconds=" + windowSeconds
+				+ ", requests=" + getRequests() + ", retries=" + getRetries() + ", rejected=" + getRejected() + "]";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,225 @@
+package curator.utils;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * 带记忆功能的 EnsurePath。
+ * 
+ * EnsurePathDemo 中提到的 EnsurePath 以及 creatingParentsIfNeeded() 每次调用都会到服务端检查一遍父节点，即使这些节点就是当前 JVM
+ * 刚刚创建的。EnsurePathCache 把已经确认存在的路径记录在一棵并发的路径前缀树（trie）中：
+ * 1、第一次 ensure(path) 时，逐级创建不存在的节点，并对每一级节点注册一个 exists watch；
+ * 2、之后再 ensure 同一路径（或其任意祖先路径）时，直接命中本地缓存，不产生任何网络请求。
+ * 
+ * 缓存的失效：
+ * 1、某个被记录的节点被删除（watch 收到 NodeDeleted）时，从 trie 中摘掉该节点及其整棵子树；
+ * 2、会话过期（ConnectionState.LOST）时，服务端上的 watch 全部丢失，清空整个缓存。
+ * 
+ * trie 的每个节点用 ConcurrentHashMap 保存子节点，读路径上不加锁；摘除子树通过 ConcurrentMap#remove(key, value) 原子完成。
+ * 
+ * 通过 EnsurePathCache.forClient(client) 获取进程内与该客户端绑定的唯一实例。
+ */
+public class EnsurePathCache implements Closeable {
+	
+	private static final ConcurrentMap<CuratorFramework, EnsurePathCache> INSTANCES = new ConcurrentHashMap<CuratorFramework, EnsurePathCache>();
+	
+	private final CuratorFramework client;
+	
+	private final PathNode root = new PathNode();
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	private final CuratorWatcher watcher = new CuratorWatcher() {
+		@Override
+		public void process(WatchedEvent event) throws Exception {
+			String path = event.getPath();
+			if (path == null) {
+				return;
+			}
+			
+			if (event.getType() == EventType.NodeDeleted) {
+				invalidate(path);
+			} else if (event.getType() == EventType.NodeDataChanged && isKnown(path)) {
+				// exists watch 在数据变更时也会触发，节点仍然存在，重新注册 watch 即可。
+				client.checkExists().usingWatcher(this).inBackground().forPath(path);
+			}
+		}
+	};
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			if (newState == ConnectionState.LOST) {
+				clear();
+			}
+		}
+	};
+	
+	/**
+	 * 获取与 client 绑定的进程内唯一实例，不存在时创建。
+	 */
+	public static EnsurePathCache forClient(CuratorFramework client) {
+		EnsurePathCache cache = INSTANCES.get(client);
+		if (cache == null) {
+			EnsurePathCache newCache = new EnsurePathCache(client);
+			cache = INSTANCES.putIfAbsent(client, newCache);
+			if (cache == null) {
+				cache = newCache;
+				cache.start();
+			}
+		}
+		return cache;
+	}
+	
+	private EnsurePathCache(CuratorFramework client) {
+		this.client = client;
+		this.root.exists = true;
+	}
+	
+	private void start() {
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+	}
+	
+	/**
+	 * 确保 path 及其所有父节点存在（不存在的节点以空数据、持久节点的方式创建）。已知存在的路径不会访问服务端。
+	 */
+	public void ensure(String path) throws Exception {
+		PathNode node = root;
+		String current = "";
+		boolean missed = false;
+		
+		for (String part : ZKPaths.split(path)) {
+			current = current + ZKPaths.PATH_SEPARATOR + part;
+			node = node.child(part);
+			
+			if (node.exists) {
+				continue;
+			}
+			
+			missed = true;
+			node.exists = createAndWatch(current);
+			if (!node.exists) {
+				throw new KeeperException.NoNodeException(current);
+			}
+		}
+		
+		if (missed) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return path 是否已经被记录为存在
+	 */
+	public boolean isKnown(String path) {
+		PathNode node = root;
+		for (String part : ZKPaths.split(path)) {
+			node = node.children.get(part);
+			if (node == null || !node.exists) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 从缓存中摘除 path 及其所有子孙路径。
+	 */
+	public void invalidate(String path) {
+		PathNode parent = root;
+		PathNode node = root;
+		String name = null;
+		
+		for (String part : ZKPaths.split(path)) {
+			parent = node;
+			name = part;
+			node = node.children.get(part);
+			if (node == null) {
+				return;
+			}
+		}
+		
+		if (name != null) {
+			node.exists = false;
+			parent.children.remove(name, node);
+		}
+	}
+	
+	/**
+	 * 清空整个缓存。
+	 */
+	public void clear() {
+		root.children.clear();
+	}
+	
+	/**
+	 * @return 完全命中缓存、没有访问服务端的 ensure 调用次数
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return 至少有一级节点需要访问服务端的 ensure 调用次数
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	@Override
+	public void close() {
+		INSTANCES.remove(client, this);
+		client.getConnectionStateListenable().removeListener(connectionStateListener);
+		clear();
+	}
+	
+	/**
+	 * @return 节点最终是否存在
+	 */
+	private boolean createAndWatch(String path) throws Exception {
+		try {
+			client.create().withMode(CreateMode.PERSISTENT).forPath(path, new byte[0]);
+		} catch (KeeperException.NodeExistsException e) {
+			// 其它客户端已经创建了该节点。
+		}
+		
+		Stat stat = client.checkExists().usingWatcher(watcher).forPath(path);
+		return stat != null;
+	}
+	
+	private static final class PathNode {
+		
+		final ConcurrentMap<String, PathNode> children = new ConcurrentHashMap<String, PathNode>();
+		
+		volatile boolean exists;
+		
+		PathNode child(String name) {
+			PathNode child = children.get(name);
+			if (child == null) {
+				PathNode newChild = new PathNode();
+				child = children.putIfAbsent(name, newChild);
+				if (child == null) {
+					child = newChild;
+				}
+			}
+			return child;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,345 @@
+package curator.watch;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ThreadUtils;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+
+/**
+ * 客户端的 watch 多路复用器：每个路径只向服务端注册一个 watch，再把事件分发给任意多个本地监听器。
+ * 
+ * 每个 NodeCache、每次带 watch 的 getData() 都会各自注册 watch；上千个监听器关注相互重叠的路径时，服务端的 watch 表和重新连接时
+ * 需要恢复的 watch 数量都会随监听器的数量增长。WatchMultiplexer：
+ * 1、addListener(path, listener) 时，如果该路径还没有 watch，通过 checkExists().usingWatcher() 注册一个 exists watch
+ *    （节点的创建、数据变更和删除都会触发）；同一路径的其它监听器只加入本地的监听器列表；
+ * 2、监听器列表是 ConcurrentHashMap + CopyOnWriteArrayList，分发事件时不加锁；
+ * 3、watch 是一次性的：事件到达后先分发给该路径的所有监听器，再为仍有监听器的路径重新注册 watch；
+ *    本地记录已经注册了 watch 的路径，每个路径同时只有一个 exists 请求在服务端挂着 watch，不会为同一路径重复发出 exists 请求；
+ * 4、重新连接后如果会话已经变化（旧会话过期，服务端的 watch 全部丢失），按有界窗口流水线地为所有路径重新注册 watch，
+ *    并向每个监听器发送一个 EventType.None、带有路径的事件，提示它们重新读取数据；会话没有变化时 ZooKeeper 客户端会自动恢复 watch。
+ *    批量重新注册在多路复用器自己的后台线程中进行，不占用 Curator 的连接状态线程，多次重新连接的请求在开始执行前会被合并。
+ * 
+ * watch 事件在 ZooKeeper 的 EventThread 中分发，重新连接后的 EventType.None 事件在上述后台线程中分发，监听器都应当尽快返回。
+ * removeListener() 之后已经注册的 watch 无法撤销（ZooKeeper 3.4），触发时发现没有监听器就不再重新注册。
+ */
+public class WatchMultiplexer implements Closeable {
+	
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+	
+	private final CuratorFramework client;
+	
+	private final int maxInFlight;
+	
+	private final ConcurrentMap<String, CopyOnWriteArrayList<CuratorWatcher>> listeners = new ConcurrentHashMap<String, CopyOnWriteArrayList<CuratorWatcher>>();
+	
+	/*
+	 * 已经在服务端注册了 watch 的路径。Curator 通过 NamespaceWatcherMap 为同一个 CuratorWatcher 复用同一个包装对象，
+	 * ZooKeeper 客户端对同一路径上的同一个 Watcher 只保留一份，重复注册并不会收到重复的通知；
+	 * 这里记录的作用是避免为已经有 watch 的路径重复发出 exists 请求（每次都是一次网络往返）。
+	 */
+	private final ConcurrentMap<String, Boolean> armed = new ConcurrentHashMap<String, Boolean>();
+	
+	private final AtomicBoolean started = new AtomicBoolean();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	private final AtomicLong dispatched = new AtomicLong();
+	
+	private final AtomicLong registrations = new AtomicLong();
+	
+	private volatile long sessionId;
+	
+	private final ExecutorService rearmThread = ThreadUtils.newSingleThreadExecutor("WatchMultiplexer");
+	
+	/*
+	 * 已经提交、尚未开始执行的批量重新注册，期间的重复请求直接合并。
+	 */
+	private final AtomicBoolean rearmPending = new AtomicBoolean();
+	
+	private final Runnable rearmTask = new Runnable() {
+		@Override
+		public void run() {
+			rearmPending.set(false);
+			try {
+				rearmAll();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	};
+	
+	private final CuratorWatcher watcher = new CuratorWatcher() {
+		@Override
+		public void process(WatchedEvent event) throws Exception {
+			String path = event.getPath();
+			if (path == null) {
+				if (event.getState() == KeeperState.Expired) {
+					armed.clear();
+				}
+				return;
+			}
+			
+			armed.remove(path);
+			if (closed.get()) {
+				return;
+			}
+			
+			dispatch(path, event);
+			arm(path);
+		}
+	};
+	
+	private final BackgroundCallback armCallback = new BackgroundCallback() {
+		@Override
+		public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+			int resultCode = event.getResultCode();
+			// 节点不存在时 exists watch 同样注册成功，等待节点被创建
+			if (resultCode != KeeperException.Code.OK.intValue() && resultCode != KeeperException.Code.NONODE.intValue()) {
+				armed.remove(event.getPath());
+			}
+		}
+	};
+	
+	private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+		@Override
+		public void stateChanged(CuratorFramework client, ConnectionState newState) {
+			if (newState != ConnectionState.RECONNECTED || closed.get() || !rearmPending.compareAndSet(false, true)) {
+				return;
+			}
+			
+			try {
+				rearmThread.execute(rearmTask);
+			} catch (RejectedExecutionException e) {
+				// 已经关闭
+				rearmPending.set(false);
+			}
+		}
+	};
+	
+	public WatchMultiplexer(CuratorFramework client) {
+		this(client, DEFAULT_MAX_IN_FLIGHT);
+	}
+	
+	/**
+	 * @param client Curator 客户端
+	 * @param maxInFlight 重新连接后批量注册 watch 时同时在途的最大请求数
+	 */
+	public WatchMultiplexer(CuratorFramework client, int maxInFlight) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("maxInFlight must be greater than 0: " + maxInFlight);
+		}
+		
+		this.client = client;
+		this.maxInFlight = maxInFlight;
+	}
+	
+	public WatchMultiplexer start() throws Exception {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("WatchMultiplexer has already been started");
+		}
+		
+		sessionId = client.getZookeeperClient().getZooKeeper().getSessionId();
+		client.getConnectionStateListenable().addListener(connectionStateListener);
+		return this;
+	}
+	
+	/**
+	 * 取消所有监听器。已经注册的 watch 触发时会被忽略。
+	 */
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			client.getConnectionStateListenable().removeListener(connectionStateListener);
+			// 中断正在进行的批量重新注册（可能阻塞在窗口上）
+			rearmThread.shutdownNow();
+			listeners.clear();
+		}
+	}
+	
+	/**
+	 * 为 path 添加监听器，path 还没有 watch 时注册一个。
+	 */
+	public void addListener(String path, CuratorWatcher listener) throws Exception {
+		CopyOnWriteArrayList<CuratorWatcher> pathListeners = listeners.get(path);
+		if (pathListeners == null) {
+			CopyOnWriteArrayList<CuratorWatcher> newListeners = new CopyOnWriteArrayList<CuratorWatcher>();
+			pathListeners = listeners.putIfAbsent(path, newListeners);
+			if (pathListeners == null) {
+				pathListeners = newListeners;
+			}
+		}
+		
+		pathListeners.add(listener);
+		
+		// removeListener() 可能刚好把这个列表（当时为空）移除了，此时重新放入一个新列表
+		while (listeners.get(path) != pathListeners) {
+			pathListeners.remove(listener);
+			CopyOnWriteArrayList<CuratorWatcher> newListeners = new CopyOnWriteArrayList<CuratorWatcher>();
+			newListeners.add(listener);
+			pathListeners = listeners.putIfAbsent(path, newListeners);
+			if (pathListeners == null) {
+				pathListeners = newListeners;
+			} else {
+				pathListeners.add(listener);
+			}
+		}
+		
+		arm(path);
+	}
+	
+	/**
+	 * 移除监听器，path 没有监听器之后不再重新注册 watch。
+	 */
+	public void removeListener(String path, CuratorWatcher listener) {
+		CopyOnWriteArrayList<CuratorWatcher> pathListeners = listeners.get(path);
+		if (pathListeners != null && pathListeners.remove(listener) && pathListeners.isEmpty()) {
+			listeners.remove(path, pathListeners);
+		}
+	}
+	
+	/**
+	 * @return 有监听器的路径数
+	 */
+	public int getPathCount() {
+		return listeners.size();
+	}
+	
+	/**
+	 * @return 当前在服务端注册了 watch 的路径数
+	 */
+	public int getArmedCount() {
+		return armed.size();
+	}
+	
+	/**
+	 * @return 所有路径上的监听器总数
+	 */
+	public int getListenerCount() {
+		int count = 0;
+		for (List<CuratorWatcher> pathListeners : listeners.values()) {
+			count += pathListeners.size();
+		}
+		return count;
+	}
+	
+	/**
+	 * @return 向服务端注册 watch 的次数
+	 */
+	public long getRegistrationCount() {
+		return registrations.get();
+	}
+	
+	/**
+	 * @return 分发给监听器的事件数（一个 watch 事件分发给 n 个监听器计为 n）
+	 */
+	public long getDispatchedCount() {
+		return dispatched.get();
+	}
+	
+	private void dispatch(String path, WatchedEvent event) {
+		List<CuratorWatcher> pathListeners = listeners.get(path);
+		if (pathListeners == null) {
+			return;
+		}
+		
+		for (CuratorWatcher listener : pathListeners) {
+			dispatched.incrementAndGet();
+			try {
+				listener.process(event);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * path 仍有监听器、并且还没有 watch 时注册一个。
+	 */
+	private void arm(String path) throws Exception {
+		if (closed.get() || !listeners.containsKey(path) || armed.putIfAbsent(path, Boolean.TRUE) != null) {
+			return;
+		}
+		
+		registrations.incrementAndGet();
+		try {
+			client.checkExists().usingWatcher(watcher).inBackground(armCallback).forPath(path);
+		} catch (Exception e) {
+			armed.remove(path);
+			throw e;
+		}
+	}
+	
+	/**
+	 * 会话变化时清空注册记录，按窗口为所有路径重新注册 watch，并通知监听器；会话没有变化时只补上注册失败的路径。在 rearmThread 中执行。
+	 */
+	private void rearmAll() throws Exception {
+		long currentSessionId = client.getZookeeperClient().getZooKeeper().getSessionId();
+		boolean sessionChanged = currentSessionId != sessionId;
+		if (sessionChanged) {
+			sessionId = currentSessionId;
+			armed.clear();
+		}
+		
+		final Semaphore window = new Semaphore(maxInFlight);
+		BackgroundCallback windowCallback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				try {
+					armCallback.processResult(client, event);
+				} finally {
+					window.release();
+				}
+			}
+		};
+		
+		List<String> paths = new ArrayList<String>(listeners.keySet());
+		for (String path : paths) {
+			if (closed.get()) {
+				return;
+			}
+			
+			if (armed.putIfAbsent(path, Boolean.TRUE) != null) {
+				continue;
+			}
+			
+			window.acquire();
+			registrations.incrementAndGet();
+			try {
+				client.checkExists().usingWatcher(watcher).inBackground(windowCallback).forPath(path);
+			} catch (Exception e) {
+				window.release();
+				armed.remove(path);
+			}
+		}
+		
+		window.acquire(maxInFlight);
+		window.release(maxInFlight);
+		
+		if (sessionChanged) {
+			for (String path : paths) {
+				dispatch(path, new WatchedEvent(EventType.None, KeeperState.SyncConnected, path));
+			}
+		}
+	}
+}
\ No newline at end of file